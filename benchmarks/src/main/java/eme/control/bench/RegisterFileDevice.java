@@ -0,0 +1,73 @@
+package eme.control.bench;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+import java.io.IOException;
+
+/**
+ * I2C device returning fixed register contents, so benchmarks measure driver code and not a device model.
+ */
+public class RegisterFileDevice implements I2CDevice {
+    private final int address;
+    private final byte[] registers = new byte[256];
+
+    public RegisterFileDevice(int address) {
+        this.address = address;
+    }
+
+    public void set(int register, int value) {
+        registers[register & 0xFF] = (byte) value;
+    }
+
+    public void setWord(int register, int value) {
+        set(register, value >> 8);
+        set(register + 1, value);
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public int read(int register) throws IOException {
+        return registers[register & 0xFF] & 0xFF;
+    }
+
+    public int read(int register, byte[] buffer, int offset, int size) throws IOException {
+        System.arraycopy(registers, register & 0xFF, buffer, offset, size);
+        return size;
+    }
+
+    public int read() throws IOException {
+        return 0;
+    }
+
+    public int read(byte[] buffer, int offset, int size) throws IOException {
+        return read(0, buffer, offset, size);
+    }
+
+    public int read(byte[] writeBuffer, int writeOffset, int writeSize,
+                    byte[] readBuffer, int readOffset, int readSize) throws IOException {
+        return read(writeBuffer[writeOffset], readBuffer, readOffset, readSize);
+    }
+
+    public void write(int register, byte value) throws IOException {
+        set(register, value);
+    }
+
+    public void write(int register, byte[] buffer, int offset, int size) throws IOException {
+        System.arraycopy(buffer, offset, registers, register & 0xFF, size);
+    }
+
+    public void write(int register, byte[] buffer) throws IOException {
+        write(register, buffer, 0, buffer.length);
+    }
+
+    public void write(byte b) throws IOException {
+    }
+
+    public void write(byte[] buffer, int offset, int size) throws IOException {
+    }
+
+    public void write(byte[] buffer) throws IOException {
+    }
+}
@@ -0,0 +1,75 @@
+package eme.control.dev.input.accel;
+
+import eme.control.bench.RegisterFileDevice;
+import eme.control.sim.SimulatedI2CBus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_XOUT0;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_XOUT0;
+import static eme.control.dev.input.accel.Mpu6050.MPU6050_I2C_ADDRESS;
+import static eme.control.dev.input.accel.Mpu6050.TEMP_OUT0;
+
+/**
+ * Driver side cost of the sensor reads against a register file device, i.e. without bus time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Mpu6050Benchmark {
+    private Mpu6050 chip;
+    private final Mpu6050Sample sample = new Mpu6050Sample();
+
+    @Setup
+    public void setUp() throws IOException {
+        RegisterFileDevice device = new RegisterFileDevice(MPU6050_I2C_ADDRESS);
+        device.setWord(ACCEL_XOUT0, 1200);
+        device.setWord(ACCEL_XOUT0 + 2, -3400);
+        device.setWord(ACCEL_XOUT0 + 4, 16000);
+        device.setWord(TEMP_OUT0, -4000);
+        device.setWord(GYRO_XOUT0, 25);
+        device.setWord(GYRO_XOUT0 + 2, -13);
+        device.setWord(GYRO_XOUT0 + 4, 7);
+        chip = new Mpu6050(new SimulatedI2CBus().attach(device));
+        chip.init(MPU6050_I2C_ADDRESS);
+    }
+
+    @Benchmark
+    public int readI2cWord() throws IOException {
+        return chip.readI2cWord(ACCEL_XOUT0 + 2);
+    }
+
+    @Benchmark
+    public float[] getAcceleration() throws IOException {
+        return chip.getAcceleration();
+    }
+
+    @Benchmark
+    public double getRoll() throws IOException {
+        return chip.getRoll();
+    }
+
+    @Benchmark
+    public double getPitch() throws IOException {
+        return chip.getPitch();
+    }
+
+    @Benchmark
+    public Mpu6050Sample readSample() throws IOException {
+        return chip.readSample(sample);
+    }
+}
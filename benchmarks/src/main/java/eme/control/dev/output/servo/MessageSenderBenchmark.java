@@ -0,0 +1,43 @@
+package eme.control.dev.output.servo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageSenderBenchmark {
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MessageSender.MESSAGE_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private int pulse = MessageSender.MIN_PULSE_DURATION;
+
+    private int nextPulse() {
+        pulse = pulse == MessageSender.MAX_PULSE_DURATION ? MessageSender.MIN_PULSE_DURATION : pulse + 1;
+        return pulse;
+    }
+
+    @Benchmark
+    public byte[] createSetServoMessage() {
+        return MessageSender.createSetServoMessage(nextPulse());
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        buffer.clear();
+        MessageSender.encode(buffer, 8, MessageSender.SERVO_GPIO, nextPulse());
+        return buffer;
+    }
+}
@@ -0,0 +1,87 @@
+package eme.control.track;
+
+import eme.control.dev.input.accel.Mpu6050;
+import eme.control.dev.input.accel.Mpu6050Sample;
+import eme.control.dev.output.servo.MessageSender;
+import eme.control.dev.output.servo.ResponseCallback;
+import eme.control.sim.MountModel;
+import eme.control.sim.PigpiodSimulator;
+import eme.control.sim.SimulatedI2CBus;
+import eme.control.sim.SimulatedMpu6050;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static eme.control.dev.input.accel.Mpu6050.MPU6050_I2C_ADDRESS;
+
+/**
+ * One sample -> decide -> send control iteration against the simulated MPU-6050 and a zero latency
+ * loopback pigpiod, either waiting for the reply or pipelining commands.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ControlIterationBenchmark {
+    private PigpiodSimulator pigpiod;
+    private MessageSender sender;
+    private Mpu6050 chip;
+    private PidController pid;
+    private final Mpu6050Sample sample = new Mpu6050Sample();
+    private final SetpointSource setpoint = new FixedSetpoint(5);
+    private final ResponseCallback ignore = new ResponseCallback() {
+        public void onResponse(int command, int result) {
+        }
+
+        public void onFailure(IOException e) {
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        MountModel mount = new MountModel();
+        pigpiod = new PigpiodSimulator(0, 0, 0).attach(MessageSender.SERVO_GPIO, mount);
+        pigpiod.start();
+        sender = new MessageSender("localhost", pigpiod.getPort(), MessageSender.SERVO_GPIO);
+        chip = new Mpu6050(new SimulatedI2CBus().attach(new SimulatedMpu6050(mount)));
+        chip.init(MPU6050_I2C_ADDRESS);
+        pid = new PidController(4, 6, 0.2, MessageSender.MIN_PULSE_DURATION, MessageSender.MAX_PULSE_DURATION,
+                400, PidController.ACTION.REVERSE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sender.close();
+        pigpiod.stop();
+    }
+
+    private int decide() throws IOException {
+        chip.readSample(sample);
+        return (int) Math.round(pid.update(setpoint.getSetpoint(), sample.getRoll(), 0.02));
+    }
+
+    @Benchmark
+    public int roundTrip() throws Exception {
+        return sender.setServoPulse(decide()).get();
+    }
+
+    @Benchmark
+    public int pipelined() throws IOException {
+        int pulse = decide();
+        sender.setServoPulse(MessageSender.SERVO_GPIO, pulse, ignore);
+        return pulse;
+    }
+}
@@ -0,0 +1,74 @@
+package eme.control.track;
+
+import eme.control.dev.output.servo.MessageSender;
+import eme.control.dev.output.servo.ServoCalibration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The decision of the tracking loop on its own: {@link PidController#update} with and without feed-forward,
+ * and a whole {@link TrackingLoop#tick} over a calibrated axis with a no-op output.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrackingLoopBenchmark {
+    private PidController pid;
+    private TrackingLoop loop;
+    private double roll = -10;
+    private int pulse;
+
+    @Setup
+    public void setUp() {
+        pid = new PidController(4, 6, 0.2, MessageSender.MIN_PULSE_DURATION, MessageSender.MAX_PULSE_DURATION,
+                400, PidController.ACTION.REVERSE);
+        loop = new TrackingLoop(new MeasurementSource() {
+            public double read() {
+                return roll;
+            }
+        }, new FixedSetpoint(0.5), new PidController(4, 6, 0.2, -150, 150, 400, PidController.ACTION.REVERSE),
+                new ServoOutput() {
+                    public void setPulse(int pulse) {
+                        TrackingLoopBenchmark.this.pulse = pulse;
+                    }
+                }, 20);
+        loop.setCalibration(new ServoCalibration(new int[]{500, 1200, 1900}, new double[]{90, 0, -90}));
+        loop.reset(MessageSender.MID_POSITION);
+    }
+
+    private double nextRoll() {
+        roll = roll > 10 ? -10 : roll + 0.37;
+        return roll;
+    }
+
+    @Benchmark
+    public double pidUpdate() {
+        return pid.update(0.5, nextRoll(), 0.02);
+    }
+
+    @Benchmark
+    public double pidUpdateFeedForward() {
+        return pid.update(0.5, nextRoll(), 0.02, 12.5);
+    }
+
+    @Benchmark
+    public int trackingTick() throws IOException {
+        nextRoll();
+        loop.tick(0.02);
+        return pulse;
+    }
+}
@@ -0,0 +1,360 @@
+package eme.control.dev.bus;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CDevice;
+import eme.control.metrics.ControlMetrics;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sole owner of an {@link I2CBus}. Every transfer runs on the "i2c-bus" thread: queued requests in priority
+ * order, interleaved with periodic polls registered per device. Drivers keep their usual code by getting
+ * their devices from {@link #getBus(PRIORITY)}, whose calls are forwarded here and block until done.
+ */
+public class I2CBusScheduler implements Runnable {
+    private static final Logger log = Logger.getLogger(I2CBusScheduler.class);
+
+    public static final int CLOCK_100KHZ = 100000;
+    public static final int CLOCK_400KHZ = 400000;
+    public static final int MAX_ADDRESS = 0x7F;
+    public static final long REPORT_INTERVAL_MS = 10000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Lower ordinal runs first when several transfers are due.
+     */
+    public enum PRIORITY {CONTROL, SENSOR, BACKGROUND}
+
+    private final I2CBus bus;
+    private final int clockHz;
+    private final MeteredDevice[] devices = new MeteredDevice[MAX_ADDRESS + 1];
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Request> queue = new PriorityQueue<Request>(16, new Comparator<Request>() {
+        public int compare(Request a, Request b) {
+            int byPriority = a.priority.compareTo(b.priority);
+            return byPriority != 0 ? byPriority : Long.compare(a.sequence, b.sequence);
+        }
+    });
+    private final List<Poll> pollList = new ArrayList<Poll>();
+    private volatile Poll[] polls = new Poll[0];
+    private long requestSequence;
+
+    private volatile boolean running;
+    private volatile Thread thread;
+    private volatile long statsStart = System.nanoTime();
+
+    public I2CBusScheduler(I2CBus bus, int clockHz) {
+        this.bus = bus;
+        this.clockHz = clockHz;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        statsStart = System.nanoTime();
+        thread = new Thread(this, "i2c-bus");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("start: bus " + bus.getBusNumber() + " at " + clockHz / 1000 + "kHz");
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        //under the lock, so no request is queued after failPending below has drained the queue
+        lock.lock();
+        try {
+            running = false;
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending(new IOException("bus scheduler stopped"));
+        log.info("stop: " + report());
+    }
+
+    /**
+     * @return a view of the bus whose devices forward every call to the bus thread at the given priority
+     */
+    public I2CBus getBus(final PRIORITY priority) {
+        return new I2CBus() {
+            public I2CDevice getDevice(int address) throws IOException {
+                if (address < 0 || address > MAX_ADDRESS) {
+                    throw new IOException("invalid I2C address 0x" + Integer.toHexString(address));
+                }
+                return new ScheduledDevice(I2CBusScheduler.this, address, priority);
+            }
+
+            public int getBusNumber() {
+                return bus.getBusNumber();
+            }
+
+            public void close() {
+                //the scheduler owns the bus
+            }
+        };
+    }
+
+    /**
+     * Runs the transaction on the bus thread and waits for it.
+     */
+    public void execute(int address, PRIORITY priority, I2CTransaction transaction) throws IOException {
+        execute(new Request(address, priority), transaction);
+    }
+
+    /**
+     * Same as {@link #execute(int, PRIORITY, I2CTransaction)} with a request reused by one caller at a time,
+     * so a device handle does not allocate per transfer.
+     */
+    void execute(Request request, I2CTransaction transaction) throws IOException {
+        if (Thread.currentThread() == thread) {
+            transaction.execute(device(request.address));
+            return;
+        }
+        long start = System.nanoTime();
+        request.transaction = transaction;
+        request.waiter = Thread.currentThread();
+        request.error = null;
+        request.done = false;
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IOException("bus scheduler not running");
+            }
+            request.sequence = requestSequence++;
+            queue.add(request);
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (!request.done) {
+            LockSupport.park(request);
+            if (Thread.interrupted()) {
+                interrupted = true;
+            }
+        }
+        ControlMetrics.I2C_REQUEST.recordSince(start);
+        request.transaction = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (request.error != null) {
+            throw request.error;
+        }
+    }
+
+    /**
+     * Runs the transaction every period on the bus thread; a poll that falls a whole period behind is
+     * counted as an overrun and rescheduled from now instead of bursting to catch up.
+     */
+    public void schedule(int address, PRIORITY priority, long periodMs, I2CTransaction transaction) {
+        Poll poll = new Poll(address, priority, TimeUnit.MILLISECONDS.toNanos(periodMs), transaction);
+        poll.nextDue = System.nanoTime();
+        lock.lock();
+        try {
+            pollList.add(poll);
+            polls = pollList.toArray(new Poll[pollList.size()]);
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    public void run() {
+        long reportDue = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL_MS);
+        while (running) {
+            long now = System.nanoTime();
+            Poll[] current = polls;
+            Poll due = null;
+            long nextDue = now + IDLE_PARK_NANOS;
+            for (Poll poll : current) {
+                if (poll.nextDue - now <= 0) {
+                    if (due == null || poll.priority.compareTo(due.priority) < 0) {
+                        due = poll;
+                    }
+                } else if (poll.nextDue - nextDue < 0) {
+                    nextDue = poll.nextDue;
+                }
+            }
+
+            Request request = null;
+            lock.lock();
+            try {
+                Request head = queue.peek();
+                if (head != null && (due == null || head.priority.compareTo(due.priority) <= 0)) {
+                    request = queue.poll();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (request != null) {
+                run(request);
+            } else if (due != null) {
+                run(due, now);
+            } else if (now - reportDue >= 0) {
+                reportDue = now + TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL_MS);
+                if (log.isDebugEnabled()) {
+                    log.debug("run: " + report());
+                }
+            } else {
+                LockSupport.parkNanos(this, Math.min(nextDue, reportDue) - now);
+            }
+        }
+    }
+
+    private void run(Request request) {
+        try {
+            request.transaction.execute(device(request.address));
+        } catch (IOException e) {
+            countError(request.address);
+            request.error = e;
+        } catch (RuntimeException e) {
+            countError(request.address);
+            request.error = new IOException(e);
+        }
+        request.done = true;
+        LockSupport.unpark(request.waiter);
+    }
+
+    private void run(Poll poll, long now) {
+        poll.nextDue += poll.periodNanos;
+        if (poll.nextDue - now <= 0) {
+            poll.nextDue = now + poll.periodNanos;
+            MeteredDevice device = devices[poll.address];
+            if (device != null) {
+                device.getStats().overrun();
+            }
+        }
+        try {
+            poll.transaction.execute(device(poll.address));
+        } catch (Exception e) {
+            countError(poll.address);
+            if (poll.failures++ % 100 == 0) {
+                log.warn("run: poll of 0x" + Integer.toHexString(poll.address) + " failed " + poll.failures + " times", e);
+            }
+        }
+    }
+
+    private MeteredDevice device(int address) throws IOException {
+        MeteredDevice device = devices[address];
+        if (device == null) {
+            device = new MeteredDevice(bus.getDevice(address));
+            devices[address] = device;
+        }
+        return device;
+    }
+
+    private void countError(int address) {
+        MeteredDevice device = devices[address];
+        if (device != null) {
+            device.getStats().error();
+        }
+    }
+
+    private void failPending(IOException error) {
+        lock.lock();
+        try {
+            Request request;
+            while ((request = queue.poll()) != null) {
+                request.error = error;
+                request.done = true;
+                LockSupport.unpark(request.waiter);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return usage of a device so far, null if it was never accessed
+     */
+    public I2CDeviceStats getStats(int address) {
+        MeteredDevice device = devices[address];
+        return device == null ? null : device.getStats();
+    }
+
+    /**
+     * @return share of the bus bandwidth used by the device since start, 0..1
+     */
+    public double getUtilisation(int address) {
+        I2CDeviceStats stats = getStats(address);
+        return stats == null ? 0 : stats.getUtilisation(System.nanoTime() - statsStart, clockHz);
+    }
+
+    public int getClockHz() {
+        return clockHz;
+    }
+
+    public String report() {
+        long elapsed = System.nanoTime() - statsStart;
+        StringBuilder sb = new StringBuilder("bus utilisation at ").append(clockHz / 1000).append("kHz:");
+        double total = 0;
+        for (MeteredDevice device : devices) {
+            if (device == null) {
+                continue;
+            }
+            I2CDeviceStats stats = device.getStats();
+            double utilisation = stats.getUtilisation(elapsed, clockHz);
+            total += utilisation;
+            sb.append(" 0x").append(Integer.toHexString(stats.getAddress()))
+                    .append("=").append(String.format("%.1f%%", utilisation * 100))
+                    .append(" (").append(stats.getTransfers()).append(" transfers, ")
+                    .append(stats.getErrors()).append(" errors, ")
+                    .append(stats.getOverruns()).append(" overruns)");
+        }
+        return sb.append(" total=").append(String.format("%.1f%%", total * 100)).toString();
+    }
+
+    /**
+     * One queued transaction. Reusable once its caller returned from execute.
+     */
+    static class Request {
+        final int address;
+        final PRIORITY priority;
+        I2CTransaction transaction;
+        Thread waiter;
+        long sequence;
+        volatile boolean done;
+        IOException error;
+
+        Request(int address, PRIORITY priority) {
+            this.address = address;
+            this.priority = priority;
+        }
+    }
+
+    private static class Poll {
+        final int address;
+        final PRIORITY priority;
+        final long periodNanos;
+        final I2CTransaction transaction;
+        long nextDue;
+        long failures;
+
+        Poll(int address, PRIORITY priority, long periodNanos, I2CTransaction transaction) {
+            this.address = address;
+            this.priority = priority;
+            this.periodNanos = periodNanos;
+            this.transaction = transaction;
+        }
+    }
+}
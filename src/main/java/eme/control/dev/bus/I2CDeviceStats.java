@@ -0,0 +1,77 @@
+package eme.control.dev.bus;
+
+/**
+ * Per device bus usage, written by the bus thread only.
+ */
+public class I2CDeviceStats {
+    private final int address;
+    private volatile long transfers;
+    private volatile long bytes;
+    private volatile long bits;
+    private volatile long busyNanos;
+    private volatile long errors;
+    private volatile long overruns;
+
+    I2CDeviceStats(int address) {
+        this.address = address;
+    }
+
+    void transfer(int payloadBytes, long frameBits, long nanos) {
+        transfers++;
+        bytes += payloadBytes;
+        bits += frameBits;
+        busyNanos += nanos;
+    }
+
+    void error() {
+        errors++;
+    }
+
+    void overrun() {
+        overruns++;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public long getTransfers() {
+        return transfers;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return bits clocked on the wire including start, address, ack and stop overhead
+     */
+    public long getBits() {
+        return bits;
+    }
+
+    /**
+     * @return wall time spent inside the driver calls, includes kernel and clock stretching overhead
+     */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return polls which started later than a full period behind their schedule
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return share of the bus bandwidth used over the given time, 0..1
+     */
+    public double getUtilisation(long elapsedNanos, int clockHz) {
+        return elapsedNanos <= 0 ? 0 : bits * 1e9 / clockHz / elapsedNanos;
+    }
+}
@@ -0,0 +1,12 @@
+package eme.control.dev.bus;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+import java.io.IOException;
+
+/**
+ * A group of operations run back to back on the bus thread, without another device getting in between.
+ */
+public interface I2CTransaction {
+    void execute(I2CDevice device) throws IOException;
+}
@@ -0,0 +1,106 @@
+package eme.control.dev.bus;
+
+import com.pi4j.io.i2c.I2CDevice;
+import eme.control.metrics.ControlMetrics;
+
+import java.io.IOException;
+
+/**
+ * The real device as seen by the bus thread, counting the traffic of every call.
+ */
+class MeteredDevice implements I2CDevice {
+    private final I2CDevice device;
+    private final I2CDeviceStats stats;
+
+    MeteredDevice(I2CDevice device) {
+        this.device = device;
+        this.stats = new I2CDeviceStats(device.getAddress());
+    }
+
+    I2CDeviceStats getStats() {
+        return stats;
+    }
+
+    //start, address byte and stop around the payload, 9 clocks per byte with ack
+    private static long frame(int payloadBytes) {
+        return 2 + 9 * (1 + payloadBytes);
+    }
+
+    private void count(int payloadBytes, long bits, long start) {
+        long nanos = System.nanoTime() - start;
+        stats.transfer(payloadBytes, bits, nanos);
+        ControlMetrics.I2C_TRANSFER.record(nanos);
+    }
+
+    public int getAddress() {
+        return device.getAddress();
+    }
+
+    public void write(byte b) throws IOException {
+        long start = System.nanoTime();
+        device.write(b);
+        count(1, frame(1), start);
+    }
+
+    public void write(byte[] buffer, int offset, int size) throws IOException {
+        long start = System.nanoTime();
+        device.write(buffer, offset, size);
+        count(size, frame(size), start);
+    }
+
+    public void write(byte[] buffer) throws IOException {
+        write(buffer, 0, buffer.length);
+    }
+
+    public void write(int address, byte b) throws IOException {
+        long start = System.nanoTime();
+        device.write(address, b);
+        count(2, frame(2), start);
+    }
+
+    public void write(int address, byte[] buffer, int offset, int size) throws IOException {
+        long start = System.nanoTime();
+        device.write(address, buffer, offset, size);
+        count(1 + size, frame(1 + size), start);
+    }
+
+    public void write(int address, byte[] buffer) throws IOException {
+        write(address, buffer, 0, buffer.length);
+    }
+
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int result = device.read();
+        count(1, frame(1), start);
+        return result;
+    }
+
+    public int read(byte[] buffer, int offset, int size) throws IOException {
+        long start = System.nanoTime();
+        int result = device.read(buffer, offset, size);
+        count(size, frame(size), start);
+        return result;
+    }
+
+    public int read(int address) throws IOException {
+        long start = System.nanoTime();
+        int result = device.read(address);
+        count(2, frame(1) + frame(1), start);
+        return result;
+    }
+
+    public int read(int address, byte[] buffer, int offset, int size) throws IOException {
+        long start = System.nanoTime();
+        int result = device.read(address, buffer, offset, size);
+        count(1 + size, frame(1) + frame(size), start);
+        return result;
+    }
+
+    public int read(byte[] writeBuffer, int writeOffset, int writeSize, byte[] readBuffer, int readOffset, int readSize)
+            throws IOException {
+        long start = System.nanoTime();
+        int result = device.read(writeBuffer, writeOffset, writeSize, readBuffer, readOffset, readSize);
+        count(writeSize + readSize, frame(writeSize) + frame(readSize), start);
+        return result;
+    }
+}
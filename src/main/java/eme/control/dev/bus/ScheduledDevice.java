@@ -0,0 +1,161 @@
+package eme.control.dev.bus;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+import java.io.IOException;
+
+/**
+ * Driver side handle of a device; each call becomes one request on the bus thread. The request and the
+ * operation it carries are reused, so a transfer does not allocate; calls on one handle are serialised.
+ */
+class ScheduledDevice implements I2CDevice {
+    private final I2CBusScheduler scheduler;
+    private final int address;
+    private final I2CBusScheduler.Request request;
+    private final Operation operation = new Operation();
+
+    ScheduledDevice(I2CBusScheduler scheduler, int address, I2CBusScheduler.PRIORITY priority) {
+        this.scheduler = scheduler;
+        this.address = address;
+        this.request = new I2CBusScheduler.Request(address, priority);
+    }
+
+    private enum KIND {
+        WRITE_BYTE, WRITE, WRITE_REGISTER_BYTE, WRITE_REGISTER,
+        READ_BYTE, READ, READ_REGISTER_BYTE, READ_REGISTER, WRITE_READ
+    }
+
+    /**
+     * The arguments of the current call, run on the bus thread.
+     */
+    private static class Operation implements I2CTransaction {
+        KIND kind;
+        int register;
+        byte b;
+        byte[] buffer;
+        int offset, size;
+        byte[] readBuffer;
+        int readOffset, readSize;
+        int result;
+
+        public void execute(I2CDevice device) throws IOException {
+            switch (kind) {
+                case WRITE_BYTE:
+                    device.write(b);
+                    break;
+                case WRITE:
+                    device.write(buffer, offset, size);
+                    break;
+                case WRITE_REGISTER_BYTE:
+                    device.write(register, b);
+                    break;
+                case WRITE_REGISTER:
+                    device.write(register, buffer, offset, size);
+                    break;
+                case READ_BYTE:
+                    result = device.read();
+                    break;
+                case READ:
+                    result = device.read(buffer, offset, size);
+                    break;
+                case READ_REGISTER_BYTE:
+                    result = device.read(register);
+                    break;
+                case READ_REGISTER:
+                    result = device.read(register, buffer, offset, size);
+                    break;
+                case WRITE_READ:
+                    result = device.read(buffer, offset, size, readBuffer, readOffset, readSize);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown operation " + kind);
+            }
+        }
+    }
+
+    //callers hold the monitor
+    private int call(KIND kind) throws IOException {
+        operation.kind = kind;
+        operation.result = 0;
+        try {
+            scheduler.execute(request, operation);
+            return operation.result;
+        } finally {
+            operation.buffer = null;
+            operation.readBuffer = null;
+        }
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public synchronized void write(byte b) throws IOException {
+        operation.b = b;
+        call(KIND.WRITE_BYTE);
+    }
+
+    public synchronized void write(byte[] buffer, int offset, int size) throws IOException {
+        operation.buffer = buffer;
+        operation.offset = offset;
+        operation.size = size;
+        call(KIND.WRITE);
+    }
+
+    public void write(byte[] buffer) throws IOException {
+        write(buffer, 0, buffer.length);
+    }
+
+    public synchronized void write(int register, byte b) throws IOException {
+        operation.register = register;
+        operation.b = b;
+        call(KIND.WRITE_REGISTER_BYTE);
+    }
+
+    public synchronized void write(int register, byte[] buffer, int offset, int size) throws IOException {
+        operation.register = register;
+        operation.buffer = buffer;
+        operation.offset = offset;
+        operation.size = size;
+        call(KIND.WRITE_REGISTER);
+    }
+
+    public void write(int register, byte[] buffer) throws IOException {
+        write(register, buffer, 0, buffer.length);
+    }
+
+    public synchronized int read() throws IOException {
+        return call(KIND.READ_BYTE);
+    }
+
+    public synchronized int read(byte[] buffer, int offset, int size) throws IOException {
+        operation.buffer = buffer;
+        operation.offset = offset;
+        operation.size = size;
+        return call(KIND.READ);
+    }
+
+    public synchronized int read(int register) throws IOException {
+        operation.register = register;
+        return call(KIND.READ_REGISTER_BYTE);
+    }
+
+    public synchronized int read(int register, byte[] buffer, int offset, int size) throws IOException {
+        operation.register = register;
+        operation.buffer = buffer;
+        operation.offset = offset;
+        operation.size = size;
+        return call(KIND.READ_REGISTER);
+    }
+
+    public synchronized int read(byte[] writeBuffer, int writeOffset, int writeSize,
+                                 byte[] readBuffer, int readOffset, int readSize) throws IOException {
+        operation.buffer = writeBuffer;
+        operation.offset = writeOffset;
+        operation.size = writeSize;
+        operation.readBuffer = readBuffer;
+        operation.readOffset = readOffset;
+        operation.readSize = readSize;
+        return call(KIND.WRITE_READ);
+    }
+}
@@ -62,6 +62,55 @@ public class Mpu6050 {
     public static final int ACCEL_CONFIG = 0x1C;
     public static final int GYRO_CONFIG = 0x1B;
 
+    public static final int SMPLRT_DIV = 0x19;
+    public static final int CONFIG = 0x1A;
+    public static final int FIFO_EN = 0x23;
+    public static final int INT_PIN_CFG = 0x37;
+    public static final int INT_ENABLE = 0x38;
+    public static final int INT_STATUS = 0x3A;
+    public static final int USER_CTRL = 0x6A;
+    public static final int FIFO_COUNTH = 0x72;
+    public static final int FIFO_R_W = 0x74;
+
+    //FIFO_EN bits; with all of them set a FIFO frame has the same layout as the burst block
+    public static final int FIFO_EN_TEMP = 0x80;
+    public static final int FIFO_EN_XG = 0x40;
+    public static final int FIFO_EN_YG = 0x20;
+    public static final int FIFO_EN_ZG = 0x10;
+    public static final int FIFO_EN_ACCEL = 0x08;
+    public static final int FIFO_EN_ALL = FIFO_EN_TEMP | FIFO_EN_XG | FIFO_EN_YG | FIFO_EN_ZG | FIFO_EN_ACCEL;
+
+    public static final int USER_CTRL_FIFO_EN = 0x40;
+    public static final int USER_CTRL_FIFO_RESET = 0x04;
+    public static final int INT_STATUS_FIFO_OFLOW = 0x10;
+    public static final int INT_STATUS_DATA_RDY = 0x01;
+    public static final int INT_ENABLE_DATA_RDY = 0x01;
+    public static final int FIFO_SIZE = 1024;
+
+    //gyroscope output rate the SMPLRT_DIV divides, depends on the DLPF being enabled
+    public static final int GYRO_OUTPUT_RATE_DLPF_OFF = 8000;
+    public static final int GYRO_OUTPUT_RATE_DLPF_ON = 1000;
+    public static final int DLPF_CFG_OFF = 0x00;
+    public static final int DLPF_CFG_188HZ = 0x01;
+    public static final int DLPF_CFG_98HZ = 0x02;
+    public static final int DLPF_CFG_42HZ = 0x03;
+    public static final int DLPF_CFG_20HZ = 0x04;
+    public static final int DLPF_CFG_10HZ = 0x05;
+    public static final int DLPF_CFG_5HZ = 0x06;
+
+    //ACCEL_XOUT0..GYRO_ZOUT1 block, read in one transaction
+    public static final int BURST_LENGTH = 14;
+    private static final int BURST_ACCEL_OFFSET = 0;
+    private static final int BURST_TEMP_OFFSET = 6;
+    private static final int BURST_GYRO_OFFSET = 8;
+
+    private final byte[] burst = new byte[BURST_LENGTH];
+    private final byte[] word = new byte[2];
+    private long sequence;
+    private final Mpu6050Sample sample = new Mpu6050Sample();
+    private float accelScaleModifier = ACCEL_SCALE_MODIFIER_2G;
+    private float gyroScaleModifier = GYRO_SCALE_MODIFIER_250DEG;
+
     public Mpu6050(I2CBus bus) {
         this.bus = bus;
     }
@@ -75,6 +124,8 @@ public class Mpu6050 {
         log.debug("init: setting power mgmt");
         dev.write(PWR_MGMT_1, (byte) 0x00);
 
+        accelScaleModifier = getAccScaleModifier(readAccelerationRange(true));
+        gyroScaleModifier = getGyroScaleModifier(readGyroRange(true));
         log.debug("init: device initialized");
     }
 
@@ -99,6 +150,131 @@ public class Mpu6050 {
         }
     }
 
+    /**
+     * Reads the whole ACCEL_XOUT0..GYRO_ZOUT1 block with a single I2C transaction
+     * and decodes it into the given sample. No allocation takes place.
+     *
+     * @param target sample to be overwritten
+     * @return the same sample, for chaining
+     */
+    public Mpu6050Sample readSample(Mpu6050Sample target) throws IOException {
+        return readSample(target, System.nanoTime());
+    }
+
+    /**
+     * @param timestamp when the sample was taken, e.g. the data ready edge [System.nanoTime()]
+     */
+    public Mpu6050Sample readSample(Mpu6050Sample target, long timestamp) throws IOException {
+        int read = dev.read(ACCEL_XOUT0, burst, 0, BURST_LENGTH);
+        if (read != BURST_LENGTH) {
+            throw new IOException("short burst read: " + read + " of " + BURST_LENGTH + " bytes");
+        }
+        decodeSample(burst, 0, timestamp, ++sequence, target);
+        return target;
+    }
+
+    /**
+     * Decodes a raw ACCEL_XOUT0..GYRO_ZOUT1 block (or a full FIFO frame) starting at offset
+     * using the currently cached range settings.
+     */
+    void decodeSample(byte[] buffer, int offset, long timestamp, long sequence, Mpu6050Sample target) {
+        target.set(timestamp, sequence,
+                decodeWord(buffer, offset + BURST_ACCEL_OFFSET) / accelScaleModifier,
+                decodeWord(buffer, offset + BURST_ACCEL_OFFSET + 2) / accelScaleModifier,
+                decodeWord(buffer, offset + BURST_ACCEL_OFFSET + 4) / accelScaleModifier,
+                decodeWord(buffer, offset + BURST_GYRO_OFFSET) / gyroScaleModifier,
+                decodeWord(buffer, offset + BURST_GYRO_OFFSET + 2) / gyroScaleModifier,
+                decodeWord(buffer, offset + BURST_GYRO_OFFSET + 4) / gyroScaleModifier,
+                toCelsius(decodeWord(buffer, offset + BURST_TEMP_OFFSET)));
+    }
+
+    // FIFO methods
+
+    /**
+     * Sample rate = gyroscope output rate / (1 + divider).
+     */
+    public void setSampleRateDivider(int divider) throws IOException {
+        dev.write(SMPLRT_DIV, (byte) divider);
+    }
+
+    /**
+     * Writes DLPF_CFG bits of the CONFIG register, see {@link #DLPF_CFG_188HZ}.
+     */
+    public void setDigitalLowPassFilter(int dlpfCfg) throws IOException {
+        dev.write(CONFIG, (byte) (dlpfCfg & 0x07));
+    }
+
+    /**
+     * @return rate SMPLRT_DIV divides for the DLPF_CFG setting [Hz]
+     */
+    public static int getGyroOutputRate(int dlpfCfg) {
+        int cfg = dlpfCfg & 0x07;
+        return cfg == DLPF_CFG_OFF || cfg == 0x07 ? GYRO_OUTPUT_RATE_DLPF_OFF : GYRO_OUTPUT_RATE_DLPF_ON;
+    }
+
+    /**
+     * Raises the INT pin for 50us, active high and push-pull, each time a new sample lands in the data registers.
+     */
+    public void enableDataReadyInterrupt() throws IOException {
+        dev.write(INT_PIN_CFG, (byte) 0x00);
+        dev.write(INT_ENABLE, (byte) INT_ENABLE_DATA_RDY);
+    }
+
+    public void disableInterrupts() throws IOException {
+        dev.write(INT_ENABLE, (byte) 0x00);
+    }
+
+    /**
+     * Resets the FIFO and starts feeding it with the given sources.
+     *
+     * @param sources combination of FIFO_EN_* bits
+     */
+    public void enableFifo(int sources) throws IOException {
+        dev.write(FIFO_EN, (byte) 0x00);
+        dev.write(USER_CTRL, (byte) USER_CTRL_FIFO_RESET);
+        dev.write(FIFO_EN, (byte) sources);
+        dev.write(USER_CTRL, (byte) USER_CTRL_FIFO_EN);
+    }
+
+    public void disableFifo() throws IOException {
+        dev.write(FIFO_EN, (byte) 0x00);
+        dev.write(USER_CTRL, (byte) 0x00);
+    }
+
+    public void resetFifo() throws IOException {
+        dev.write(USER_CTRL, (byte) USER_CTRL_FIFO_RESET);
+        dev.write(USER_CTRL, (byte) USER_CTRL_FIFO_EN);
+    }
+
+    /**
+     * @return number of bytes waiting in the FIFO
+     */
+    public int readFifoCount() throws IOException {
+        dev.read(FIFO_COUNTH, word, 0, 2);
+        return ((word[0] & 0xFF) << 8) | (word[1] & 0xFF);
+    }
+
+    /**
+     * Drains length bytes from the FIFO in one block read.
+     */
+    public int readFifo(byte[] buffer, int offset, int length) throws IOException {
+        return dev.read(FIFO_R_W, buffer, offset, length);
+    }
+
+    /**
+     * Reads (and thereby clears) the INT_STATUS register.
+     */
+    public int readInterruptStatus() throws IOException {
+        return dev.read(INT_STATUS);
+    }
+
+    /**
+     * Combines two big endian bytes of the buffer into a signed 16 bit value.
+     */
+    static int decodeWord(byte[] buffer, int offset) {
+        return (short) ((buffer[offset] << 8) | (buffer[offset + 1] & 0xFF));
+    }
+
     //MPU-6050 Methods
 
     /**
@@ -108,8 +284,10 @@ public class Mpu6050 {
      * @return
      */
     public float getTemperature() throws IOException {
-        int rawTemp = readI2cWord(TEMP_OUT0);
+        return toCelsius(readI2cWord(TEMP_OUT0));
+    }
 
+    private static float toCelsius(int rawTemp) {
         //Get the actual temperature using the formule given in the
         //MPU - 6050 Register Map and Descriptions revision 4.2, page 30
         return (rawTemp / 340.0f) + 36.53f;
@@ -126,6 +304,7 @@ public class Mpu6050 {
     public void setAccelerationRange(int accel_range) throws IOException {
         dev.write(ACCEL_CONFIG, (byte) 0x00);
         dev.write(ACCEL_CONFIG, (byte) accel_range);
+        accelScaleModifier = getAccScaleModifier(accel_range);
     }
 
     public int readAccelerationRange() throws IOException {
@@ -174,11 +353,9 @@ public class Mpu6050 {
         float z = readI2cWord(ACCEL_ZOUT0);
 
         if (unit == G) {
-            int accel_range = readAccelerationRange(true);
-            float accel_scale_modifier = getAccScaleModifier(accel_range);
-            x = x / accel_scale_modifier;
-            y = y / accel_scale_modifier;
-            z = z / accel_scale_modifier;
+            x = x / accelScaleModifier;
+            y = y / accelScaleModifier;
+            z = z / accelScaleModifier;
         } else if (unit == MS_2) {
             x = x * EARTH_GRAVITY_ACCELERATION;
             y = y * EARTH_GRAVITY_ACCELERATION;
@@ -204,14 +381,79 @@ public class Mpu6050 {
         return accel_scale_modifier;
     }
 
+    /**
+     * Sets the range of the gyroscope to range.
+     * <p>
+     * gyro_range-- the range to set the gyroscope to. Using a pre-defined range is advised.
+     * First change it to 0x00 to make sure we write the correct value later
+     *
+     * @param gyro_range
+     */
+    public void setGyroRange(int gyro_range) throws IOException {
+        dev.write(GYRO_CONFIG, (byte) 0x00);
+        dev.write(GYRO_CONFIG, (byte) gyro_range);
+        gyroScaleModifier = getGyroScaleModifier(gyro_range);
+    }
+
+    public int readGyroRange() throws IOException {
+        return readGyroRange(false);
+    }
+
+    /**
+     * Reads the range the gyroscope is set to.
+     * <p>
+     * If raw is True, it will return the raw value from the GYRO_CONFIG register
+     * If raw is False, it will return an integer: -1, 250, 500, 1000 or 2000. When it
+     * returns -1 something went wrong.
+     *
+     * @param raw
+     * @return
+     */
+    public int readGyroRange(boolean raw) throws IOException {
+        int raw_data = dev.read(GYRO_CONFIG);
+
+        if (raw) {
+            return raw_data;
+        } else {
+            if (raw_data == GYRO_RANGE_250DEG) return 250;
+            else if (raw_data == GYRO_RANGE_500DEG) return 500;
+            else if (raw_data == GYRO_RANGE_1000DEG) return 1000;
+            else if (raw_data == GYRO_RANGE_2000DEG) return 2000;
+            else return -1;
+        }
+    }
+
+    /**
+     * Gets and returns the X, Y and Z values from the gyroscope.
+     *
+     * @return angular rates in [deg / s]
+     */
+    public float[] getGyroscope() throws IOException {
+        readSample(sample);
+        return new float[]{sample.getGyroX(), sample.getGyroY(), sample.getGyroZ()};
+    }
+
+    private static float getGyroScaleModifier(int gyro_range) {
+        if (gyro_range == GYRO_RANGE_250DEG) {
+            return GYRO_SCALE_MODIFIER_250DEG;
+        } else if (gyro_range == GYRO_RANGE_500DEG) {
+            return GYRO_SCALE_MODIFIER_500DEG;
+        } else if (gyro_range == GYRO_RANGE_1000DEG) {
+            return GYRO_SCALE_MODIFIER_1000DEG;
+        } else if (gyro_range == GYRO_RANGE_2000DEG) {
+            return GYRO_SCALE_MODIFIER_2000DEG;
+        } else {
+            log.warn("Unkown range - gyro_scale_modifier set to GYRO_SCALE_MODIFIER_250DEG");
+            return GYRO_SCALE_MODIFIER_250DEG;
+        }
+    }
+
     public double getRoll() throws IOException {
-        float[] acc = getAcceleration();    //x,y,z
-        return Math.atan2(acc[1], acc[2]) * RAD;
+        return readSample(sample).getRoll();
     }
 
     public double getPitch() throws IOException {
-        float[] acc = getAcceleration();    //x,y,z
-        return Math.atan2(-acc[0], Math.sqrt(acc[1] * acc[1] + acc[2] * acc[2])) * RAD;
+        return readSample(sample).getPitch();
     }
 
     public static void main(String[] args) throws Exception {
@@ -225,9 +467,60 @@ public class Mpu6050 {
         chip.init(MPU6050_I2C_ADDRESS);
 
         int refreshRate = getRefreshRate(args);
+        if (args.length > 1) {
+            streamFifo(chip, Integer.parseInt(args[1]), refreshRate);
+        }
+        streamDataReady(chip, refreshRate);
+    }
+
+    /**
+     * Samples at 100Hz on data ready, from the INT pin on BCM GPIO -Deme.mpu6050.int when given.
+     */
+    private static void streamDataReady(Mpu6050 chip, int refreshRate) throws Exception {
+        final Mpu6050Sample latest = new Mpu6050Sample();
+        Integer pin = Integer.getInteger("eme.mpu6050.int");
+        Mpu6050DataReadyStream stream = new Mpu6050DataReadyStream(chip, DLPF_CFG_42HZ, 9,
+                pin != null ? Mpu6050DataReadyStream.provisionInterruptPin(pin) : null, new Mpu6050SampleListener() {
+            public void onSample(Mpu6050Sample sample) {
+                synchronized (latest) {
+                    sample.copyTo(latest);
+                }
+            }
+
+            public void onOverflow(long lostSamples) {
+            }
+        });
+        stream.start();
+        while (true) {
+            synchronized (latest) {
+                System.out.printf("seq=%d\t, roll=%.2f\t, pitch=%.2f\t, temp=%.2f\t, missed edges=%d",
+                        latest.getSequence(), latest.getRoll(), latest.getPitch(), latest.getTemperature(),
+                        stream.getMissedEdges());
+            }
+            System.out.println();
+            Thread.sleep(refreshRate);
+        }
+    }
+
+    private static void streamFifo(Mpu6050 chip, int rateHz, int refreshRate) throws Exception {
+        final Mpu6050Sample latest = new Mpu6050Sample();
+        Mpu6050FifoStream stream = new Mpu6050FifoStream(chip, rateHz, new Mpu6050SampleListener() {
+            public void onSample(Mpu6050Sample sample) {
+                synchronized (latest) {
+                    sample.copyTo(latest);
+                }
+            }
+
+            public void onOverflow(long lostSamples) {
+            }
+        });
+        stream.start();
         while (true) {
-            System.out.printf("roll=%.2f\t, pitch=%.2f\t, temp=%.2f",
-                    chip.getRoll(), chip.getPitch(), chip.getTemperature());
+            synchronized (latest) {
+                System.out.printf("seq=%d\t, roll=%.2f\t, pitch=%.2f\t, temp=%.2f\t, overflows=%d",
+                        latest.getSequence(), latest.getRoll(), latest.getPitch(), latest.getTemperature(),
+                        stream.getOverflowCount());
+            }
             System.out.println();
             Thread.sleep(refreshRate);
         }
@@ -235,98 +528,9 @@ public class Mpu6050 {
 
     private static int getRefreshRate(String[] args) {
         if (args.length == 0) {
-            throw new IllegalArgumentException("expected one argument (mpu6050 read refresh rate in ms)");
+            throw new IllegalArgumentException("expected arguments: <refresh rate in ms> [FIFO sample rate in Hz]");
         }
 
         return Integer.parseInt(args[0]);
     }
 }
-/*
-class mpu6050:
-    def set_gyro_range(self, gyro_range):
-        """Sets the range of the gyroscope to range.
-
-        gyro_range -- the range to set the gyroscope to. Using a pre-defined
-        range is advised.
-        """
-        # First change it to 0x00 to make sure we write the correct value later
-        self.bus.write_byte_data(self.address, self.GYRO_CONFIG, 0x00)
-
-        # Write the new range to the ACCEL_CONFIG register
-        self.bus.write_byte_data(self.address, self.GYRO_CONFIG, gyro_range)
-
-    def read_gyro_range(self, raw = False):
-        """Reads the range the gyroscope is set to.
-
-        If raw is True, it will return the raw value from the GYRO_CONFIG
-        register.
-        If raw is False, it will return 250, 500, 1000, 2000 or -1. If the
-        returned value is equal to -1 something went wrong.
-        """
-        raw_data = self.bus.read_byte_data(self.address, self.GYRO_CONFIG)
-
-        if raw is True:
-            return raw_data
-        elif raw is False:
-            if raw_data == self.GYRO_RANGE_250DEG:
-                return 250
-            elif raw_data == self.GYRO_RANGE_500DEG:
-                return 500
-            elif raw_data == self.GYRO_RANGE_1000DEG:
-                return 1000
-            elif raw_data == self.GYRO_RANGE_2000DEG:
-                return 2000
-            else:
-                return -1
-
-    def get_gyro_data(self):
-        """Gets and returns the X, Y and Z values from the gyroscope.
-
-        Returns the read values in a dictionary.
-        """
-        x = self.readI2cWord(self.GYRO_XOUT0)
-        y = self.readI2cWord(self.GYRO_YOUT0)
-        z = self.readI2cWord(self.GYRO_ZOUT0)
-
-        gyro_scale_modifier = None
-        gyro_range = self.read_gyro_range(True)
-
-        if gyro_range == self.GYRO_RANGE_250DEG:
-            gyro_scale_modifier = self.GYRO_SCALE_MODIFIER_250DEG
-        elif gyro_range == self.GYRO_RANGE_500DEG:
-            gyro_scale_modifier = self.GYRO_SCALE_MODIFIER_500DEG
-        elif gyro_range == self.GYRO_RANGE_1000DEG:
-            gyro_scale_modifier = self.GYRO_SCALE_MODIFIER_1000DEG
-        elif gyro_range == self.GYRO_RANGE_2000DEG:
-            gyro_scale_modifier = self.GYRO_SCALE_MODIFIER_2000DEG
-        else:
-            print("Unkown range - gyro_scale_modifier set to self.GYRO_SCALE_MODIFIER_250DEG")
-            gyro_scale_modifier = self.GYRO_SCALE_MODIFIER_250DEG
-
-        x = x / gyro_scale_modifier
-        y = y / gyro_scale_modifier
-        z = z / gyro_scale_modifier
-
-        return {'x': x, 'y': y, 'z': z}
-
-    def get_all_data(self):
-        """Reads and returns all the available data."""
-        temp = self.getTemperature()
-        accel = self.getAcceleration()
-        gyro = self.get_gyro_data()
-
-        return [accel, gyro, temp]
-
-if __name__ == "__main__":
-    mpu = MPU6050(0x68)
-    print(mpu.getTemperature())
-    accel_data = mpu.getAcceleration()
-    print(accel_data['x'])
-    print(accel_data['y'])
-    print(accel_data['z'])
-    gyro_data = mpu.get_gyro_data()
-    print(gyro_data['x'])
-    print(gyro_data['y'])
-    print(gyro_data['z'])
-
- */
\ No newline at end of file
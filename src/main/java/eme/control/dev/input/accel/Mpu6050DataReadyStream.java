@@ -0,0 +1,238 @@
+package eme.control.dev.input.accel;
+
+import com.pi4j.io.gpio.GpioFactory;
+import com.pi4j.io.gpio.GpioPinDigitalInput;
+import com.pi4j.io.gpio.PinEdge;
+import com.pi4j.io.gpio.PinPullResistance;
+import com.pi4j.io.gpio.RaspiBcmPin;
+import com.pi4j.io.gpio.RaspiGpioProvider;
+import com.pi4j.io.gpio.RaspiPinNumberingScheme;
+import com.pi4j.io.gpio.event.GpioPinDigitalStateChangeEvent;
+import com.pi4j.io.gpio.event.GpioPinListenerDigital;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static eme.control.dev.input.accel.Mpu6050.INT_STATUS_DATA_RDY;
+
+/**
+ * Reads every MPU-6050 sample once, as soon as it lands in the data registers.
+ * <p>
+ * With the INT pin wired, the chip pulses it on data ready and a GPIO listener wakes the reader thread, which
+ * stamps the sample with the edge time. Without the pin a software timer polls INT_STATUS at twice the sample
+ * rate and reads only when DATA_RDY is set, so a sample is never fetched twice. If edges stop arriving for
+ * {@link #MISSED_PERIODS} periods the reader polls INT_STATUS the same way until they come back.
+ */
+public class Mpu6050DataReadyStream implements Runnable {
+    private static final Logger log = Logger.getLogger(Mpu6050DataReadyStream.class);
+
+    public static final int MISSED_PERIODS = 3;
+    private static final int POLLS_PER_PERIOD = 2;
+
+    private final Mpu6050 chip;
+    private final GpioPinDigitalInput interrupt;
+    private final Mpu6050SampleListener listener;
+    private final Mpu6050Sample sample = new Mpu6050Sample();
+    private final int dlpfCfg;
+    private final int divider;
+    private final int rateHz;
+    private final long periodNanos;
+
+    private final GpioPinListenerDigital edgeListener = new GpioPinListenerDigital() {
+        public void handleGpioPinDigitalStateChangeEvent(GpioPinDigitalStateChangeEvent event) {
+            if (event.getEdge() == PinEdge.RISING) {
+                lastEdge = System.nanoTime();
+                edges++;
+                LockSupport.unpark(thread);
+            }
+        }
+    };
+
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    //written by the GPIO event thread only
+    private volatile long edges;
+    private volatile long lastEdge;
+
+    private long handledEdges;
+    private boolean polling;
+    private volatile long sampleCount;
+    private volatile long missedEdges;
+    private volatile long lostSamples;
+    private volatile long errorCount;
+
+    /**
+     * @param dlpfCfg   CONFIG low-pass setting, see {@link Mpu6050#DLPF_CFG_42HZ}
+     * @param divider   SMPLRT_DIV, sample rate = gyro output rate / (1 + divider)
+     * @param interrupt GPIO input wired to INT, null to use the software timer
+     */
+    public Mpu6050DataReadyStream(Mpu6050 chip, int dlpfCfg, int divider, GpioPinDigitalInput interrupt,
+                                  Mpu6050SampleListener listener) {
+        if (divider < 0 || divider > 255) {
+            throw new IllegalArgumentException("SMPLRT_DIV " + divider + " out of 0..255");
+        }
+        this.chip = chip;
+        this.interrupt = interrupt;
+        this.listener = listener;
+        this.dlpfCfg = dlpfCfg & 0x07;
+        this.divider = divider;
+        this.rateHz = Mpu6050.getGyroOutputRate(dlpfCfg) / (1 + divider);
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) * (1 + divider) / Mpu6050.getGyroOutputRate(dlpfCfg);
+    }
+
+    /**
+     * Provisions the GPIO wired to INT as an input with pull-down, numbered like the servo GPIOs.
+     *
+     * @param bcmPin BCM GPIO number
+     */
+    public static GpioPinDigitalInput provisionInterruptPin(int bcmPin) {
+        return GpioFactory.getInstance().provisionDigitalInputPin(
+                new RaspiGpioProvider(RaspiPinNumberingScheme.BROADCOM_PIN_NUMBERING),
+                RaspiBcmPin.getPinByAddress(bcmPin), "MPU6050 INT", PinPullResistance.PULL_DOWN);
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        chip.setDigitalLowPassFilter(dlpfCfg);
+        chip.setSampleRateDivider(divider);
+        if (interrupt != null) {
+            chip.enableDataReadyInterrupt();
+            interrupt.addListener(edgeListener);
+        }
+        chip.readInterruptStatus();
+        handledEdges = edges;
+        log.info("start: " + rateHz + "Hz, DLPF_CFG=" + dlpfCfg + ", "
+                + (interrupt != null ? "data ready on " + interrupt.getPin() : "software timer"));
+
+        running = true;
+        thread = new Thread(this, "mpu6050-drdy");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public synchronized void stop() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (interrupt != null) {
+            interrupt.removeListener(edgeListener);
+            chip.disableInterrupts();
+        }
+        log.info("stop: samples=" + sampleCount + ", missed edges=" + missedEdges + ", lost=" + lostSamples
+                + ", errors=" + errorCount);
+    }
+
+    public void run() {
+        long pollNanos = periodNanos / POLLS_PER_PERIOD;
+        long next = System.nanoTime();
+        while (running) {
+            try {
+                if (interrupt != null) {
+                    awaitEdge();
+                } else {
+                    next += pollNanos;
+                    poll();
+                    if (next - System.nanoTime() <= 0) {
+                        next = System.nanoTime();
+                    }
+                    //park returns early on a permit left by another unpark, e.g. the I2C bus scheduler's
+                    for (long wait; running && (wait = next - System.nanoTime()) > 0; ) {
+                        LockSupport.parkNanos(this, wait);
+                    }
+                }
+            } catch (IOException e) {
+                errorCount++;
+                log.warn("run: sample read failed", e);
+            }
+        }
+    }
+
+    private void awaitEdge() throws IOException {
+        long timeout = polling ? periodNanos / POLLS_PER_PERIOD : MISSED_PERIODS * periodNanos;
+        long deadline = System.nanoTime() + timeout;
+        while (running && edges == handledEdges) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                if (!polling) {
+                    missedEdges++;
+                    polling = true;
+                    log.warn("awaitEdge: no data ready edge for " + MISSED_PERIODS + " periods, polling");
+                }
+                poll();
+                return;
+            }
+            LockSupport.parkNanos(this, wait);
+        }
+        if (!running) {
+            return;
+        }
+        polling = false;
+        long seen = edges;
+        long timestamp = lastEdge;
+        if (seen - handledEdges > 1) {
+            //the data registers only hold the newest sample
+            lostSamples += seen - handledEdges - 1;
+            listener.onOverflow(seen - handledEdges - 1);
+        }
+        handledEdges = seen;
+        read(timestamp);
+    }
+
+    private void poll() throws IOException {
+        if ((chip.readInterruptStatus() & INT_STATUS_DATA_RDY) != 0) {
+            read(System.nanoTime());
+        }
+    }
+
+    private void read(long timestamp) throws IOException {
+        chip.readSample(sample, timestamp);
+        sampleCount++;
+        listener.onSample(sample);
+    }
+
+    /**
+     * @return effective sample rate of the DLPF and SMPLRT_DIV settings
+     */
+    public int getRateHz() {
+        return rateHz;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return times no edge came within {@link #MISSED_PERIODS} periods and polling took over
+     */
+    public long getMissedEdges() {
+        return missedEdges;
+    }
+
+    /**
+     * @return samples overwritten before the reader got to them
+     */
+    public long getLostSamples() {
+        return lostSamples;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
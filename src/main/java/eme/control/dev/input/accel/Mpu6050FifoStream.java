@@ -0,0 +1,200 @@
+package eme.control.dev.input.accel;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static eme.control.dev.input.accel.Mpu6050.BURST_LENGTH;
+import static eme.control.dev.input.accel.Mpu6050.DLPF_CFG_188HZ;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_EN_ALL;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_SIZE;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_OUTPUT_RATE_DLPF_ON;
+import static eme.control.dev.input.accel.Mpu6050.INT_STATUS_FIFO_OFLOW;
+
+/**
+ * Streaming acquisition from the MPU-6050 hardware FIFO.
+ * <p>
+ * The chip samples at a fixed rate set by SMPLRT_DIV and queues accel+temp+gyro frames in its FIFO.
+ * A background thread drains the FIFO in block reads every drain interval and hands decoded samples
+ * to the listener. Timestamps are reconstructed from the sample period, anchored to the drain time,
+ * so they do not carry the jitter of the drain thread.
+ */
+public class Mpu6050FifoStream implements Runnable {
+    private static final Logger log = Logger.getLogger(Mpu6050FifoStream.class);
+
+    public static final int MIN_RATE_HZ = GYRO_OUTPUT_RATE_DLPF_ON / 256 + 1;
+    public static final int MAX_RATE_HZ = GYRO_OUTPUT_RATE_DLPF_ON;
+
+    private static final int FRAME_LENGTH = BURST_LENGTH;
+    private static final int MAX_FRAMES_PER_READ = FIFO_SIZE / FRAME_LENGTH;
+    //how strongly the reconstructed sample clock is pulled towards the drain time
+    private static final int CLOCK_CORRECTION_SHIFT = 4;
+    //a few failed drains in a row are retried on schedule, a run of them at a growing interval up to a second
+    private static final int BACKOFF_AFTER_FAILURES = 3;
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Mpu6050 chip;
+    private final Mpu6050SampleListener listener;
+    private final byte[] fifo = new byte[MAX_FRAMES_PER_READ * FRAME_LENGTH];
+    private final Mpu6050Sample sample = new Mpu6050Sample();
+
+    private final int rateHz;
+    private final long periodNanos;
+    private final long drainIntervalNanos;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    private long sequence;
+    private long lastTimestamp;
+    private volatile long overflowCount;
+    private volatile long errorCount;
+
+    public Mpu6050FifoStream(Mpu6050 chip, int rateHz, Mpu6050SampleListener listener) {
+        this(chip, rateHz, 10, listener);
+    }
+
+    /**
+     * @param rateHz          requested sample rate, rounded to what SMPLRT_DIV can do
+     * @param drainIntervalMs how often the FIFO is emptied; must stay well below FIFO_SIZE / frame / rate
+     */
+    public Mpu6050FifoStream(Mpu6050 chip, int rateHz, int drainIntervalMs, Mpu6050SampleListener listener) {
+        if (rateHz < MIN_RATE_HZ || rateHz > MAX_RATE_HZ) {
+            throw new IllegalArgumentException("rate " + rateHz + "Hz out of " + MIN_RATE_HZ + ".." + MAX_RATE_HZ + "Hz");
+        }
+        this.chip = chip;
+        this.listener = listener;
+        int divider = GYRO_OUTPUT_RATE_DLPF_ON / rateHz - 1;
+        this.rateHz = GYRO_OUTPUT_RATE_DLPF_ON / (divider + 1);
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / this.rateHz;
+        this.drainIntervalNanos = TimeUnit.MILLISECONDS.toNanos(drainIntervalMs);
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        chip.setDigitalLowPassFilter(DLPF_CFG_188HZ);
+        chip.setSampleRateDivider(GYRO_OUTPUT_RATE_DLPF_ON / rateHz - 1);
+        chip.enableFifo(FIFO_EN_ALL);
+        chip.readInterruptStatus();
+        lastTimestamp = System.nanoTime();
+        log.info("start: streaming at " + rateHz + "Hz");
+
+        running = true;
+        thread = new Thread(this, "mpu6050-fifo");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public synchronized void stop() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        chip.disableFifo();
+        log.info("stop: overflows=" + overflowCount + ", errors=" + errorCount);
+    }
+
+    public void run() {
+        long nextDrain = System.nanoTime();
+        long failing = 0;
+        while (running) {
+            try {
+                drain();
+                if (failing > 0) {
+                    log.info("run: FIFO drains work again after " + failing + " failures");
+                    failing = 0;
+                }
+            } catch (IOException e) {
+                errorCount++;
+                if (failing++ % 100 == 0) {
+                    log.warn("run: FIFO drain failed " + failing + " times in a row", e);
+                }
+            }
+            //a chip that keeps failing, e.g. unplugged, is retried less and less often
+            nextDrain += failing < BACKOFF_AFTER_FAILURES ? drainIntervalNanos
+                    : Math.min(MAX_BACKOFF_NANOS, drainIntervalNanos << Math.min(failing - BACKOFF_AFTER_FAILURES + 1, 10));
+            long wait = nextDrain - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                nextDrain = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Empties the FIFO once. Only whole frames are consumed, a partially written one stays for the next drain.
+     */
+    void drain() throws IOException {
+        if ((chip.readInterruptStatus() & INT_STATUS_FIFO_OFLOW) != 0) {
+            handleOverflow();
+            return;
+        }
+
+        int frames = chip.readFifoCount() / FRAME_LENGTH;
+        long drainTime = System.nanoTime();
+        while (frames > 0) {
+            int chunk = Math.min(frames, MAX_FRAMES_PER_READ);
+            chip.readFifo(fifo, 0, chunk * FRAME_LENGTH);
+            frames -= chunk;
+            for (int i = 0; i < chunk; i++) {
+                //frames still in the FIFO and later in this chunk were sampled after this one
+                long estimate = drainTime - (frames + chunk - 1 - i) * periodNanos;
+                chip.decodeSample(fifo, i * FRAME_LENGTH, nextTimestamp(estimate), ++sequence, sample);
+                listener.onSample(sample);
+            }
+        }
+    }
+
+    private long nextTimestamp(long estimate) {
+        long expected = lastTimestamp + periodNanos;
+        long error = estimate - expected;
+        if (Math.abs(error) > drainIntervalNanos + periodNanos) {
+            lastTimestamp = estimate;
+        } else {
+            lastTimestamp = expected + (error >> CLOCK_CORRECTION_SHIFT);
+        }
+        return lastTimestamp;
+    }
+
+    private void handleOverflow() throws IOException {
+        chip.resetFifo();
+        long now = System.nanoTime();
+        long lost = Math.max(0, (now - lastTimestamp) / periodNanos);
+        sequence += lost;
+        lastTimestamp = now;
+        overflowCount++;
+        log.warn("handleOverflow: FIFO overflow, ~" + lost + " samples lost");
+        listener.onOverflow(lost);
+    }
+
+    /**
+     * @return effective sample rate after SMPLRT_DIV rounding
+     */
+    public int getRateHz() {
+        return rateHz;
+    }
+
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,106 @@
+package eme.control.dev.input.accel;
+
+import static eme.control.dev.input.accel.Mpu6050.RAD;
+
+/**
+ * Mutable snapshot of one MPU-6050 measurement: acceleration [g], angular rate [deg/s],
+ * temperature [C] and roll/pitch [deg] derived from the acceleration vector.
+ * Meant to be reused between reads so the sampling path does not allocate.
+ */
+public class Mpu6050Sample {
+    private long timestamp;
+    private long sequence;
+    private float accX, accY, accZ;
+    private float gyroX, gyroY, gyroZ;
+    private float temperature;
+    private double roll, pitch;
+
+    /**
+     * Fills the sample from raw values, e.g. when replaying a recording; roll and pitch are derived here.
+     */
+    public void set(long timestamp, long sequence, float accX, float accY, float accZ,
+             float gyroX, float gyroY, float gyroZ, float temperature) {
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+        this.accX = accX;
+        this.accY = accY;
+        this.accZ = accZ;
+        this.gyroX = gyroX;
+        this.gyroY = gyroY;
+        this.gyroZ = gyroZ;
+        this.temperature = temperature;
+        this.roll = Math.atan2(accY, accZ) * RAD;
+        this.pitch = Math.atan2(-accX, Math.sqrt(accY * accY + accZ * accZ)) * RAD;
+    }
+
+    public void copyTo(Mpu6050Sample other) {
+        other.timestamp = timestamp;
+        other.sequence = sequence;
+        other.accX = accX;
+        other.accY = accY;
+        other.accZ = accZ;
+        other.gyroX = gyroX;
+        other.gyroY = gyroY;
+        other.gyroZ = gyroZ;
+        other.temperature = temperature;
+        other.roll = roll;
+        other.pitch = pitch;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which the sample was taken
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return running sample number; a jump between consecutive samples means samples were lost
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public float getAccX() {
+        return accX;
+    }
+
+    public float getAccY() {
+        return accY;
+    }
+
+    public float getAccZ() {
+        return accZ;
+    }
+
+    public float getGyroX() {
+        return gyroX;
+    }
+
+    public float getGyroY() {
+        return gyroY;
+    }
+
+    public float getGyroZ() {
+        return gyroZ;
+    }
+
+    public float getTemperature() {
+        return temperature;
+    }
+
+    public double getRoll() {
+        return roll;
+    }
+
+    public double getPitch() {
+        return pitch;
+    }
+
+    @Override
+    public String toString() {
+        return "Mpu6050Sample{t=" + timestamp + ", seq=" + sequence + ", acc=[" + accX + ", " + accY + ", " + accZ
+                + "], gyro=[" + gyroX + ", " + gyroY + ", " + gyroZ + "], temp=" + temperature
+                + ", roll=" + roll + ", pitch=" + pitch + "}";
+    }
+}
@@ -0,0 +1,16 @@
+package eme.control.dev.input.accel;
+
+public interface Mpu6050SampleListener {
+    /**
+     * Called on the acquisition thread for every sample. The sample instance is reused,
+     * copy it if it has to outlive the call.
+     */
+    void onSample(Mpu6050Sample sample);
+
+    /**
+     * Called when the hardware FIFO overflowed and was reset.
+     *
+     * @param lostSamples estimated number of samples dropped by the chip
+     */
+    void onOverflow(long lostSamples);
+}
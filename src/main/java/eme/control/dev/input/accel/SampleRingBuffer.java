@@ -0,0 +1,215 @@
+package eme.control.dev.input.accel;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated single producer / multiple consumer ring of {@link Mpu6050Sample} values
+ * kept in atomic primitive arrays, floats by their raw bits.
+ * <p>
+ * The producer never waits and never allocates: it overwrites the oldest slot and publishes
+ * the new write position with an ordered store. Every consumer owns a {@link Cursor} and reads
+ * at its own pace; a consumer that falls behind by the capacity or more is moved forward and the
+ * samples it missed are counted as skipped.
+ * <p>
+ * Every slot is guarded by a seqlock: its version is 2n+1 while sample n is written and 2n+2 once
+ * it is complete. A reader copies the slot between two version reads and keeps the copy only if
+ * both show sample n complete, so a slot rewritten meanwhile is never handed out torn. The slot fields are
+ * atomics too: their stores are ordered after the odd version and before the even one, their loads
+ * between the two version reads.
+ */
+public class SampleRingBuffer implements Mpu6050SampleListener {
+    private static final int ACC_X = 0, ACC_Y = 1, ACC_Z = 2;
+    private static final int GYRO_X = 3, GYRO_Y = 4, GYRO_Z = 5;
+    private static final int TEMP = 6;
+    private static final int STRIDE = 7;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray timestamps;
+    private final AtomicLongArray sequences;
+    private final AtomicIntegerArray values;
+
+    //number of samples published so far, slot of sample n is n & mask
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    //seqlock version of every slot
+    private final AtomicLongArray versions;
+
+    /**
+     * @param capacity number of samples kept, rounded up to a power of two
+     */
+    public SampleRingBuffer(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2, was " + capacity);
+        }
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.timestamps = new AtomicLongArray(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.values = new AtomicIntegerArray(this.capacity * STRIDE);
+        this.versions = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * Publishes a sample. Must only be called from the single acquisition thread.
+     */
+    public void onSample(Mpu6050Sample sample) {
+        long n = published.get();
+        int slot = (int) (n & mask);
+        int base = slot * STRIDE;
+        //volatile store, so no slot store below becomes visible before the odd version
+        versions.set(slot, 2 * n + 1);
+        timestamps.lazySet(slot, sample.getTimestamp());
+        sequences.lazySet(slot, sample.getSequence());
+        put(base + ACC_X, sample.getAccX());
+        put(base + ACC_Y, sample.getAccY());
+        put(base + ACC_Z, sample.getAccZ());
+        put(base + GYRO_X, sample.getGyroX());
+        put(base + GYRO_Y, sample.getGyroY());
+        put(base + GYRO_Z, sample.getGyroZ());
+        put(base + TEMP, sample.getTemperature());
+        versions.lazySet(slot, 2 * n + 2);
+        published.lazySet(n + 1);
+    }
+
+    private void put(int index, float value) {
+        values.lazySet(index, Float.floatToRawIntBits(value));
+    }
+
+    private float get(int index) {
+        return Float.intBitsToFloat(values.get(index));
+    }
+
+    public void onOverflow(long lostSamples) {
+        overflows.incrementAndGet();
+    }
+
+    /**
+     * Creates a cursor positioned at the newest sample published, or at the first one when none was yet.
+     */
+    public Cursor newCursor(String name) {
+        return new Cursor(name, Math.max(0, published.get() - 1));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getOverflowCount() {
+        return overflows.get();
+    }
+
+    /**
+     * Reads slot of sample n into target. Returns false if the producer overwrote it meanwhile.
+     */
+    private boolean read(long n, Mpu6050Sample target) {
+        int slot = (int) (n & mask);
+        int base = slot * STRIDE;
+        long version = 2 * n + 2;
+        if (versions.get(slot) != version) {
+            return false;
+        }
+        long timestamp = timestamps.get(slot);
+        long sequence = sequences.get(slot);
+        float accX = get(base + ACC_X);
+        float accY = get(base + ACC_Y);
+        float accZ = get(base + ACC_Z);
+        float gyroX = get(base + GYRO_X);
+        float gyroY = get(base + GYRO_Y);
+        float gyroZ = get(base + GYRO_Z);
+        float temp = get(base + TEMP);
+        if (versions.get(slot) != version) {
+            return false;
+        }
+        target.set(timestamp, sequence, accX, accY, accZ, gyroX, gyroY, gyroZ, temp);
+        return true;
+    }
+
+    /**
+     * Independent read position of one consumer. A cursor is not thread safe, it belongs to one consumer thread.
+     */
+    public class Cursor {
+        private final String name;
+        private long next;
+        private long skipped;
+
+        private Cursor(String name, long next) {
+            this.name = name;
+            this.next = next;
+        }
+
+        /**
+         * Copies the next unread sample into target.
+         *
+         * @return false if there is no new sample
+         */
+        public boolean poll(Mpu6050Sample target) {
+            while (true) {
+                long head = published.get();
+                if (next >= head) {
+                    return false;
+                }
+                long oldest = head - capacity + 1;
+                if (next < oldest) {
+                    skipped += oldest - next;
+                    next = oldest;
+                }
+                if (read(next, target)) {
+                    next++;
+                    return true;
+                }
+                //overwritten while reading, catch up and retry
+            }
+        }
+
+        /**
+         * Copies the newest sample into target, counting every unread sample before it as skipped.
+         * Suitable for consumers like the GUI that only care about the current value.
+         *
+         * @return false if there is no new sample
+         */
+        public boolean pollLatest(Mpu6050Sample target) {
+            while (true) {
+                long head = published.get();
+                if (next >= head) {
+                    return false;
+                }
+                long latest = head - 1;
+                if (read(latest, target)) {
+                    skipped += latest - next;
+                    next = head;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return number of published samples not yet read by this cursor and still readable
+         */
+        public long available() {
+            return Math.min(published.get() - next, capacity - 1);
+        }
+
+        /**
+         * @return number of samples this consumer lost because it fell behind or jumped to the latest
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return "Cursor{" + name + ", next=" + next + ", skipped=" + skipped + "}";
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package eme.control.dev.input.compass;
+
+/**
+ * Mutable magnetometer reading: calibrated field [gauss] and tilt compensated heading [deg].
+ * Reused between reads so the sampling path does not allocate.
+ */
+public class CompassSample {
+    private long timestamp;
+    private double x, y, z;
+    private double heading;
+
+    void set(long timestamp, double x, double y, double z, double heading) {
+        this.timestamp = timestamp;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.heading = heading;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which the sample was taken
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * @return magnetic heading (declination applied if configured) from north through east, 0..360
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    @Override
+    public String toString() {
+        return "CompassSample{t=" + timestamp + ", field=[" + x + ", " + y + ", " + z + "], heading=" + heading + "}";
+    }
+}
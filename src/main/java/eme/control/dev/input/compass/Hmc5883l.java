@@ -0,0 +1,46 @@
+package eme.control.dev.input.compass;
+
+import com.pi4j.io.i2c.I2CBus;
+
+import java.io.IOException;
+
+/**
+ * Honeywell HMC5883L: data registers X, Z, Y, big endian.
+ */
+public class Hmc5883l extends Magnetometer {
+    public static final int HMC5883L_I2C_ADDRESS = 0x1E;
+
+    public static final int CONFIG_A = 0x00;
+    public static final int CONFIG_B = 0x01;
+    public static final int MODE = 0x02;
+    public static final int DATA_X_MSB = 0x03;
+
+    public static final int CONFIG_A_AVG8_75HZ = 0x78;
+    public static final int CONFIG_B_GAIN_1_3GA = 0x20;
+    public static final int MODE_CONTINUOUS = 0x00;
+    public static final double GAUSS_PER_LSB_1_3GA = 1 / 1090.0;
+
+    public Hmc5883l(I2CBus bus) {
+        super(bus, 6, GAUSS_PER_LSB_1_3GA);
+    }
+
+    public void init() throws IOException {
+        init(HMC5883L_I2C_ADDRESS);
+    }
+
+    protected void configure() throws IOException {
+        dev.write(CONFIG_A, (byte) CONFIG_A_AVG8_75HZ);
+        dev.write(CONFIG_B, (byte) CONFIG_B_GAIN_1_3GA);
+        dev.write(MODE, (byte) MODE_CONTINUOUS);
+    }
+
+    protected int dataRegister() {
+        return DATA_X_MSB;
+    }
+
+    protected void decode(byte[] buffer) {
+        rawX = bigEndian(buffer, 0);
+        rawZ = bigEndian(buffer, 2);
+        rawY = bigEndian(buffer, 4);
+    }
+}
@@ -0,0 +1,133 @@
+package eme.control.dev.input.compass;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CDevice;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * Common part of the 3 axis magnetometer drivers: one burst read of the data registers into a reusable
+ * buffer, calibration and tilt compensation, all without allocation.
+ */
+public abstract class Magnetometer {
+    private static final Logger log = Logger.getLogger(Magnetometer.class);
+
+    public static final double RAD = 180 / Math.PI;
+
+    private final I2CBus bus;
+    protected I2CDevice dev;
+
+    private final byte[] burst;
+    private final double gaussPerLsb;
+    private volatile MagnetometerCalibration calibration = MagnetometerCalibration.IDENTITY;
+    private volatile double declination;
+
+    //raw axis values decoded from the last burst
+    protected int rawX, rawY, rawZ;
+    private final double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+    private final double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+
+    protected Magnetometer(I2CBus bus, int burstLength, double gaussPerLsb) {
+        this.bus = bus;
+        this.burst = new byte[burstLength];
+        this.gaussPerLsb = gaussPerLsb;
+    }
+
+    public void init(int address) throws IOException {
+        log.debug("init: getting " + getClass().getSimpleName() + " device at address=" + address);
+        dev = bus.getDevice(address);
+        configure();
+        log.debug("init: device in continuous measurement mode");
+    }
+
+    /**
+     * Puts the chip into continuous measurement mode.
+     */
+    protected abstract void configure() throws IOException;
+
+    /**
+     * @return first data register read by the burst
+     */
+    protected abstract int dataRegister();
+
+    /**
+     * Sets rawX, rawY, rawZ from the burst buffer.
+     */
+    protected abstract void decode(byte[] buffer);
+
+    /**
+     * Reads all axes in one transaction and computes the heading with the sensor assumed level.
+     */
+    public CompassSample readSample(CompassSample target) throws IOException {
+        return readSample(target, 0, 0);
+    }
+
+    /**
+     * Reads all axes in one transaction and computes the tilt compensated heading.
+     *
+     * @param roll  current roll [deg], e.g. from the accelerometer or the fused attitude
+     * @param pitch current pitch [deg]
+     */
+    public CompassSample readSample(CompassSample target, double roll, double pitch) throws IOException {
+        int read = dev.read(dataRegister(), burst, 0, burst.length);
+        if (read != burst.length) {
+            throw new IOException("short burst read: " + read + " of " + burst.length + " bytes");
+        }
+        long timestamp = System.nanoTime();
+        decode(burst);
+        double x = rawX * gaussPerLsb, y = rawY * gaussPerLsb, z = rawZ * gaussPerLsb;
+        track(x, y, z);
+
+        MagnetometerCalibration c = calibration;
+        double cx = c.correctX(x, y, z), cy = c.correctY(x, y, z), cz = c.correctZ(x, y, z);
+        target.set(timestamp, cx, cy, cz, heading(cx, cy, cz, roll / RAD, pitch / RAD));
+        return target;
+    }
+
+    private double heading(double x, double y, double z, double roll, double pitch) {
+        double sinRoll = Math.sin(roll), cosRoll = Math.cos(roll);
+        double sinPitch = Math.sin(pitch), cosPitch = Math.cos(pitch);
+        //rotate the field back into the horizontal plane
+        double xh = x * cosPitch + y * sinRoll * sinPitch + z * cosRoll * sinPitch;
+        double yh = y * cosRoll - z * sinRoll;
+        double heading = Math.atan2(-yh, xh) * RAD + declination;
+        heading %= 360;
+        return heading < 0 ? heading + 360 : heading;
+    }
+
+    private void track(double x, double y, double z) {
+        if (x < min[0]) min[0] = x;
+        if (y < min[1]) min[1] = y;
+        if (z < min[2]) min[2] = z;
+        if (x > max[0]) max[0] = x;
+        if (y > max[1]) max[1] = y;
+        if (z > max[2]) max[2] = z;
+    }
+
+    /**
+     * Calibration from the extremes of all readings so far; turn the sensor through all orientations first.
+     */
+    public MagnetometerCalibration calibrationFromReadings() {
+        return MagnetometerCalibration.fromExtremes(min.clone(), max.clone());
+    }
+
+    public void setCalibration(MagnetometerCalibration calibration) {
+        this.calibration = calibration;
+    }
+
+    /**
+     * @param declination local magnetic declination [deg], east positive, added to the heading
+     */
+    public void setDeclination(double declination) {
+        this.declination = declination;
+    }
+
+    static int bigEndian(byte[] buffer, int offset) {
+        return (short) ((buffer[offset] << 8) | (buffer[offset + 1] & 0xFF));
+    }
+
+    static int littleEndian(byte[] buffer, int offset) {
+        return (short) ((buffer[offset + 1] << 8) | (buffer[offset] & 0xFF));
+    }
+}
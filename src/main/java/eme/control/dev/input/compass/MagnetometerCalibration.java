@@ -0,0 +1,110 @@
+package eme.control.dev.input.compass;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Hard and soft iron correction: calibrated = M * (raw - offset), with the 3x3 matrix M and the offset
+ * precomputed, so applying it costs 9 multiply-adds.
+ */
+public class MagnetometerCalibration {
+    public static final MagnetometerCalibration IDENTITY =
+            new MagnetometerCalibration(new double[]{0, 0, 0}, new double[]{1, 0, 0, 0, 1, 0, 0, 0, 1});
+
+    private final double ox, oy, oz;
+    private final double m00, m01, m02, m10, m11, m12, m20, m21, m22;
+
+    /**
+     * @param offset hard iron offset x, y, z
+     * @param matrix soft iron matrix, row major
+     */
+    public MagnetometerCalibration(double[] offset, double[] matrix) {
+        if (offset.length != 3 || matrix.length != 9) {
+            throw new IllegalArgumentException("expected 3 offsets and 9 matrix elements");
+        }
+        ox = offset[0];
+        oy = offset[1];
+        oz = offset[2];
+        m00 = matrix[0];
+        m01 = matrix[1];
+        m02 = matrix[2];
+        m10 = matrix[3];
+        m11 = matrix[4];
+        m12 = matrix[5];
+        m20 = matrix[6];
+        m21 = matrix[7];
+        m22 = matrix[8];
+    }
+
+    /**
+     * Axis aligned calibration from the extremes seen while turning the sensor through all orientations:
+     * centres the ellipsoid and scales each axis to the mean radius.
+     */
+    public static MagnetometerCalibration fromExtremes(double[] min, double[] max) {
+        double[] offset = new double[3];
+        double[] radius = new double[3];
+        for (int i = 0; i < 3; i++) {
+            offset[i] = (max[i] + min[i]) / 2;
+            radius[i] = (max[i] - min[i]) / 2;
+            if (radius[i] <= 0) {
+                throw new IllegalArgumentException("axis " + i + " was not rotated through the field");
+            }
+        }
+        double mean = (radius[0] + radius[1] + radius[2]) / 3;
+        return new MagnetometerCalibration(offset,
+                new double[]{mean / radius[0], 0, 0, 0, mean / radius[1], 0, 0, 0, mean / radius[2]});
+    }
+
+    public double correctX(double x, double y, double z) {
+        return m00 * (x - ox) + m01 * (y - oy) + m02 * (z - oz);
+    }
+
+    public double correctY(double x, double y, double z) {
+        return m10 * (x - ox) + m11 * (y - oy) + m12 * (z - oz);
+    }
+
+    public double correctZ(double x, double y, double z) {
+        return m20 * (x - ox) + m21 * (y - oy) + m22 * (z - oz);
+    }
+
+    public static MagnetometerCalibration load(String file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        double[] offset = new double[3];
+        double[] matrix = new double[9];
+        for (int i = 0; i < 3; i++) {
+            offset[i] = Double.parseDouble(properties.getProperty("offset." + i, "0"));
+        }
+        for (int i = 0; i < 9; i++) {
+            matrix[i] = Double.parseDouble(properties.getProperty("matrix." + i, i % 4 == 0 ? "1" : "0"));
+        }
+        return new MagnetometerCalibration(offset, matrix);
+    }
+
+    public void save(String file) throws IOException {
+        Properties properties = new Properties();
+        double[] offset = {ox, oy, oz};
+        double[] matrix = {m00, m01, m02, m10, m11, m12, m20, m21, m22};
+        for (int i = 0; i < 3; i++) {
+            properties.setProperty("offset." + i, Double.toString(offset[i]));
+        }
+        for (int i = 0; i < 9; i++) {
+            properties.setProperty("matrix." + i, Double.toString(matrix[i]));
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "magnetometer hard/soft iron calibration");
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package eme.control.dev.input.compass;
+
+import com.pi4j.io.i2c.I2CBus;
+
+import java.io.IOException;
+
+/**
+ * QST QMC5883L (the chip on most current "HMC5883L" boards): data registers X, Y, Z, little endian.
+ */
+public class Qmc5883l extends Magnetometer {
+    public static final int QMC5883L_I2C_ADDRESS = 0x0D;
+
+    public static final int DATA_X_LSB = 0x00;
+    public static final int CONTROL_1 = 0x09;
+    public static final int CONTROL_2 = 0x0A;
+    public static final int SET_RESET_PERIOD = 0x0B;
+
+    //continuous mode, 200Hz, 8 gauss range, 512x oversampling
+    public static final int CONTROL_1_CONTINUOUS_200HZ_8G = 0x1D;
+    public static final int CONTROL_2_SOFT_RESET = 0x80;
+    public static final double GAUSS_PER_LSB_8G = 1 / 3000.0;
+
+    public Qmc5883l(I2CBus bus) {
+        super(bus, 6, GAUSS_PER_LSB_8G);
+    }
+
+    public void init() throws IOException {
+        init(QMC5883L_I2C_ADDRESS);
+    }
+
+    protected void configure() throws IOException {
+        dev.write(CONTROL_2, (byte) CONTROL_2_SOFT_RESET);
+        dev.write(SET_RESET_PERIOD, (byte) 0x01);
+        dev.write(CONTROL_1, (byte) CONTROL_1_CONTINUOUS_200HZ_8G);
+    }
+
+    protected int dataRegister() {
+        return DATA_X_LSB;
+    }
+
+    protected void decode(byte[] buffer) {
+        rawX = littleEndian(buffer, 0);
+        rawY = littleEndian(buffer, 2);
+        rawZ = littleEndian(buffer, 4);
+    }
+}
@@ -0,0 +1,5 @@
+package eme.control.dev.output.servo;
+
+public enum Axis {
+    AZIMUTH, ELEVATION, POLARITY
+}
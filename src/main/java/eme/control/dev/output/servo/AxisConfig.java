@@ -0,0 +1,116 @@
+package eme.control.dev.output.servo;
+
+import org.apache.log4j.Logger;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Servo wiring and limits of one rotator axis, read from axes.properties.
+ */
+public class AxisConfig {
+    private static final Logger log = Logger.getLogger(AxisConfig.class);
+
+    public static final String AXES_PROPERTY = "eme.axes";
+    public static final String DEFAULT_RESOURCE = "/axes.properties";
+
+    private final Axis axis;
+    private final int gpio;
+    private final int minPulse;
+    private final int maxPulse;
+    private final int maxSpeed;
+
+    /**
+     * @param maxSpeed fastest pulse change the axis follows [us/s]
+     */
+    public AxisConfig(Axis axis, int gpio, int minPulse, int maxPulse, int maxSpeed) {
+        if (minPulse >= maxPulse) {
+            throw new IllegalArgumentException(axis + ": pulse range " + minPulse + ".." + maxPulse + " is empty");
+        }
+        if (maxSpeed <= 0) {
+            throw new IllegalArgumentException(axis + ": max speed must be positive, was " + maxSpeed);
+        }
+        this.axis = axis;
+        this.gpio = gpio;
+        this.minPulse = minPulse;
+        this.maxPulse = maxPulse;
+        this.maxSpeed = maxSpeed;
+    }
+
+    /**
+     * Loads the file named by -Deme.axes, or the bundled axes.properties.
+     *
+     * @return configuration indexed by {@link Axis#ordinal()}, null for axes not configured
+     */
+    public static AxisConfig[] load() throws IOException {
+        Properties properties = new Properties();
+        String file = System.getProperty(AXES_PROPERTY);
+        InputStream in = file != null ? new FileInputStream(file) : AxisConfig.class.getResourceAsStream(DEFAULT_RESOURCE);
+        if (in == null) {
+            throw new IOException("no axis configuration, " + DEFAULT_RESOURCE + " missing");
+        }
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return load(properties);
+    }
+
+    public static AxisConfig[] load(Properties properties) {
+        AxisConfig[] axes = new AxisConfig[Axis.values().length];
+        for (Axis axis : Axis.values()) {
+            String prefix = "axis." + axis.name() + ".";
+            String gpio = properties.getProperty(prefix + "gpio");
+            if (gpio == null) {
+                continue;
+            }
+            axes[axis.ordinal()] = new AxisConfig(axis, Integer.parseInt(gpio.trim()),
+                    getInt(properties, prefix + "minPulse", MessageSender.MIN_PULSE_DURATION),
+                    getInt(properties, prefix + "maxPulse", MessageSender.MAX_PULSE_DURATION),
+                    getInt(properties, prefix + "maxSpeed", 500));
+            log.debug("load: " + axes[axis.ordinal()]);
+        }
+        return axes;
+    }
+
+    private static int getInt(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public int clamp(int pulse) {
+        return Math.max(minPulse, Math.min(maxPulse, pulse));
+    }
+
+    public int getMidPulse() {
+        return (minPulse + maxPulse) / 2;
+    }
+
+    public Axis getAxis() {
+        return axis;
+    }
+
+    public int getGpio() {
+        return gpio;
+    }
+
+    public int getMinPulse() {
+        return minPulse;
+    }
+
+    public int getMaxPulse() {
+        return maxPulse;
+    }
+
+    public int getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    @Override
+    public String toString() {
+        return "AxisConfig{" + axis + ", gpio=" + gpio + ", pulse=" + minPulse + ".." + maxPulse + ", maxSpeed=" + maxSpeed + "}";
+    }
+}
@@ -1,49 +1,306 @@
 package eme.control.dev.output.servo;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import eme.control.metrics.ControlMetrics;
+import org.apache.log4j.Logger;
+
 import java.io.IOException;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 //communication with pigpiod server
+//commands are pipelined: any number up to MAX_IN_FLIGHT may be written before their replies come back,
+//replies arrive in order and are matched to the oldest pending command by a reader thread
 public class MessageSender {
-    private DataOutputStream dOut;
-    private DataInputStream dIn;
-    private Socket socket;
-    private int gpio;
+    private static final Logger log = Logger.getLogger(MessageSender.class);
+
+    private final SocketChannel channel;
+    private final int gpio;
 
     public static final int SERVO_GPIO = 17;
 
     private static final int PI_CMD_SERVO = 8;
 
+    public static final int MESSAGE_LENGTH = 16;
+    public static final int MAX_IN_FLIGHT = 64;
+    public static final int MAX_BATCH = 8;
+
     public static final int MIN_PULSE_DURATION = 500;
     public static final int MAX_PULSE_DURATION = 1900;
     public static final int PULSE_STEP_PER_CLICK = (MAX_PULSE_DURATION - MIN_PULSE_DURATION) / 40; //40 steps per full scale
     public static final int MID_POSITION = (MessageSender.MIN_PULSE_DURATION + MessageSender.MAX_PULSE_DURATION) / 2;
 
+    //guarded by lock: output buffer and the ring of commands waiting for a reply
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ByteBuffer out = ByteBuffer.allocateDirect(MESSAGE_LENGTH * MAX_BATCH).order(ByteOrder.LITTLE_ENDIAN);
+    private final int[] pendingCommands = new int[MAX_IN_FLIGHT];
+    private final long[] pendingSent = new long[MAX_IN_FLIGHT];
+    private final ResponseCallback[] pendingCallbacks = new ResponseCallback[MAX_IN_FLIGHT];
+    private int pendingHead, pendingCount;
+    private IOException failure;
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(MESSAGE_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private final Thread reader;
+
     public MessageSender(String host, int port, int gpio) throws UnknownHostException, IOException {
-        socket = new Socket(host, port);
-        dOut = new DataOutputStream(socket.getOutputStream());
-        dIn = new DataInputStream(socket.getInputStream());
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
         this.gpio = gpio;
+        reader = new Thread(new Runnable() {
+            public void run() {
+                readReplies();
+            }
+        }, "pigpiod-reader");
+        reader.setDaemon(true);
+        reader.start();
     }
 
+    /**
+     * Sends a prepared message and waits for its reply.
+     *
+     * @return pigpiod result
+     */
     public int send(byte[] message) throws IOException {
-        dOut.write(message);
-        int length = 4;
-        if (length > 0) {
-            message = new byte[length];
-            dIn.readFully(message, 0, message.length); // read the message
+        ByteBuffer wrapped = ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+        return await(sendAsync(wrapped.getInt(0), wrapped.getInt(4), wrapped.getInt(8)));
+    }
+
+    public CompletableFuture<Integer> sendAsync(int command, int p1, int p2) throws IOException {
+        final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        send(command, p1, p2, new ResponseCallback() {
+            public void onResponse(int command, int result) {
+                if (result < 0) {
+                    future.completeExceptionally(new IOException("pigpiod command " + command + " failed: " + result));
+                } else {
+                    future.complete(result);
+                }
+            }
+
+            public void onFailure(IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Queues a command without waiting for the reply. Blocks only while MAX_IN_FLIGHT commands are unanswered.
+     *
+     * @param callback notified with the reply, may be null
+     */
+    public void send(int command, int p1, int p2, ResponseCallback callback) throws IOException {
+        lock.lock();
+        try {
+            awaitCapacity(1);
+            out.clear();
+            enqueue(command, p1, p2, callback, System.nanoTime());
+            flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the same command for count (p1, p2) pairs and writes all of them with a single socket write,
+     * so pigpiod applies them back to back. Every command notifies its own callback.
+     *
+     * @param callbacks callback per command, entries may be null
+     */
+    public void sendBatch(int command, int[] p1, int[] p2, int count, ResponseCallback[] callbacks) throws IOException {
+        if (count < 1 || count > MAX_BATCH) {
+            throw new IllegalArgumentException("batch of " + count + " commands, expected 1.." + MAX_BATCH);
+        }
+        lock.lock();
+        try {
+            awaitCapacity(count);
+            out.clear();
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                enqueue(command, p1[i], p2[i], callbacks[i], now);
+            }
+            flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets several servos at once, see {@link #sendBatch(int, int[], int[], int, ResponseCallback[])}.
+     */
+    public void setServoPulses(int[] gpios, int[] pulses, int count, ResponseCallback[] callbacks) throws IOException {
+        sendBatch(PI_CMD_SERVO, gpios, pulses, count, callbacks);
+    }
+
+    private void awaitCapacity(int count) throws IOException {
+        while (pendingCount + count > MAX_IN_FLIGHT && failure == null) {
+            notFull.awaitUninterruptibly();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void enqueue(int command, int p1, int p2, ResponseCallback callback, long now) {
+        int slot = (pendingHead + pendingCount) % MAX_IN_FLIGHT;
+        pendingCommands[slot] = command;
+        pendingSent[slot] = now;
+        pendingCallbacks[slot] = callback;
+        pendingCount++;
+        encode(out, command, p1, p2);
+        ControlMetrics.PIGPIOD_COMMANDS.increment();
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    public CompletableFuture<Integer> setServoPulse(int pulse) throws IOException {
+        return sendAsync(PI_CMD_SERVO, gpio, pulse);
+    }
+
+    public void setServoPulse(int pulse, ResponseCallback callback) throws IOException {
+        send(PI_CMD_SERVO, gpio, pulse, callback);
+    }
+
+    public void setServoPulse(int gpio, int pulse, ResponseCallback callback) throws IOException {
+        send(PI_CMD_SERVO, gpio, pulse, callback);
+    }
+
+    /**
+     * @return number of commands written but not answered yet
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return pendingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readReplies() {
+        try {
+            while (true) {
+                in.clear();
+                while (in.hasRemaining()) {
+                    if (channel.read(in) < 0) {
+                        throw new IOException("pigpiod closed the connection");
+                    }
+                }
+                int command = in.getInt(0);
+                int result = in.getInt(12);
+                complete(command, result);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void complete(int command, int result) throws IOException {
+        ResponseCallback callback;
+        int expected;
+        long sent;
+        lock.lock();
+        try {
+            if (pendingCount == 0) {
+                throw new IOException("unexpected reply to command " + command);
+            }
+            expected = pendingCommands[pendingHead];
+            callback = pendingCallbacks[pendingHead];
+            sent = pendingSent[pendingHead];
+            pendingCallbacks[pendingHead] = null;
+            pendingHead = (pendingHead + 1) % MAX_IN_FLIGHT;
+            pendingCount--;
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+        ControlMetrics.PIGPIOD_ROUND_TRIP.recordSince(sent);
+        if (expected != command) {
+            //the stream is out of step, this command and all pending behind it fail
+            IOException e = new IOException("reply to command " + command + " while waiting for " + expected);
+            if (callback != null) {
+                callback.onFailure(e);
+            }
+            throw e;
+        }
+        if (callback != null) {
+            callback.onResponse(command, result);
+        }
+    }
+
+    private void fail(IOException e) {
+        if (channel.isOpen()) {
+            log.warn("readReplies: connection lost", e);
+        }
+        ResponseCallback[] callbacks;
+        lock.lock();
+        try {
+            failure = e;
+            callbacks = new ResponseCallback[pendingCount];
+            for (int i = 0; i < pendingCount; i++) {
+                int slot = (pendingHead + i) % MAX_IN_FLIGHT;
+                callbacks[i] = pendingCallbacks[slot];
+                pendingCallbacks[slot] = null;
+            }
+            pendingCount = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (ResponseCallback callback : callbacks) {
+            if (callback != null) {
+                callback.onFailure(e);
+            }
         }
-        return (int) (message[3]);
+    }
+
+    private static int await(CompletableFuture<Integer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for pigpiod", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes one pigpiod command (cmd, p1, p2, p3=0) at the buffer position. The buffer must be little endian.
+     */
+    public static void encode(ByteBuffer buffer, int command, int p1, int p2) {
+        buffer.putInt(command).putInt(p1).putInt(p2).putInt(0);
     }
 
     public static byte[] createSetServoMessage(int pulse) {
-        return createMessage(PI_CMD_SERVO, SERVO_GPIO,  pulse);
+        return createSetServoMessage(SERVO_GPIO, pulse);
+    }
+
+    public static byte[] createSetServoMessage(int gpio, int pulse) {
+        return createMessage(PI_CMD_SERVO, gpio, pulse);
     }
 
-    private static byte[] createMessage(int command, int gpio, int value) {
-        return new byte[] { PI_CMD_SERVO, 0, 0, 0, (byte) gpio, 0, 0, 0, (byte)value, (byte)(value >>> 8), 0, 0, 0, 0, 0, 0};
+    private static byte[] createMessage(int command, int p1, int p2) {
+        byte[] message = new byte[MESSAGE_LENGTH];
+        encode(ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN), command, p1, p2);
+        return message;
     }
 }
@@ -0,0 +1,18 @@
+package eme.control.dev.output.servo;
+
+import java.io.IOException;
+
+/**
+ * Receives the pigpiod reply to one command. Called on the sender's reader thread, must not block.
+ */
+public interface ResponseCallback {
+    /**
+     * @param result pigpiod result; negative values are pigpio error codes
+     */
+    void onResponse(int command, int result);
+
+    /**
+     * The connection failed before the reply arrived.
+     */
+    void onFailure(IOException e);
+}
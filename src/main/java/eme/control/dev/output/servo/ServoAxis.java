@@ -0,0 +1,96 @@
+package eme.control.dev.output.servo;
+
+/**
+ * Commanded position of one axis. Meant to be moved from a single thread (the command bus writer), so the
+ * position needs no lock; other threads only read it.
+ */
+public class ServoAxis {
+    private final ServoDriver driver;
+    private final AxisConfig config;
+    private volatile int pulse;
+    private volatile ServoCalibration calibration;
+
+    public ServoAxis(ServoDriver driver, AxisConfig config) {
+        this.driver = driver;
+        this.config = config;
+        this.pulse = config.getMidPulse();
+    }
+
+    /**
+     * @return the pulse actually commanded, after clamping to the axis range
+     */
+    public int moveTo(int pulse) {
+        int clamped = config.clamp(pulse);
+        this.pulse = clamped;
+        driver.setPulse(config.getGpio(), clamped);
+        return clamped;
+    }
+
+    /**
+     * Records the pulse as commanded without posting it, for a caller that posts several axes at once with
+     * {@link ServoDriver#setPulses(int[], int[], int)}.
+     *
+     * @return the clamped pulse to post
+     */
+    public int command(int pulse) {
+        int clamped = config.clamp(pulse);
+        this.pulse = clamped;
+        return clamped;
+    }
+
+    public int moveBy(int delta) {
+        return moveTo(pulse + delta);
+    }
+
+    /**
+     * @return the pulse commanded for the calibrated angle [deg]
+     * @throws IllegalStateException when the axis has no calibration
+     */
+    public int moveToAngle(double angle) {
+        return moveTo(requireCalibration().pulseFor(angle));
+    }
+
+    /**
+     * Moves by an angle from the commanded position, so a step is the same number of degrees anywhere
+     * on a nonlinear curve.
+     */
+    public int moveByAngle(double delta) {
+        ServoCalibration c = requireCalibration();
+        return moveTo(c.pulseFor(c.angle(pulse) + delta));
+    }
+
+    /**
+     * @return calibrated angle of the commanded pulse [deg], NaN without a calibration
+     */
+    public double getAngle() {
+        ServoCalibration c = calibration;
+        return c == null ? Double.NaN : c.angle(pulse);
+    }
+
+    private ServoCalibration requireCalibration() {
+        ServoCalibration c = calibration;
+        if (c == null) {
+            throw new IllegalStateException(config.getAxis() + " is not calibrated");
+        }
+        return c;
+    }
+
+    /**
+     * @param calibration pulse to angle curve, null to go back to raw pulses
+     */
+    public void setCalibration(ServoCalibration calibration) {
+        this.calibration = calibration;
+    }
+
+    public ServoCalibration getCalibration() {
+        return calibration;
+    }
+
+    public int getPulse() {
+        return pulse;
+    }
+
+    public AxisConfig getConfig() {
+        return config;
+    }
+}
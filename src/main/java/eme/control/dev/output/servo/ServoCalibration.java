@@ -0,0 +1,254 @@
+package eme.control.dev.output.servo;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Measured pulse to angle curve of one axis, see {@link eme.control.track.ServoCalibrator}.
+ * <p>
+ * The measured points are expanded into two dense tables when constructed: the angle at every whole
+ * microsecond and the pulse at every {@link #INVERSE_RESOLUTION} degrees. A conversion is then one index
+ * computation and a linear interpolation between neighbouring entries, whatever the number of points.
+ * The curve must be strictly monotonic; it may fall with the pulse (reversed mount). Immutable.
+ */
+public class ServoCalibration {
+    private static final Logger log = Logger.getLogger(ServoCalibration.class);
+
+    public static final String CALIBRATION_PROPERTY = "eme.calibration";
+    public static final String DEFAULT_FILE = "calibration.properties";
+    public static final double INVERSE_RESOLUTION = 0.01;   //deg per inverse table entry
+
+    private final int[] pulses;
+    private final double[] angles;
+
+    private final int minPulse, maxPulse;
+    private final float[] forward;      //angle at minPulse + i
+    private final double minAngle, maxAngle;
+    private final float[] inverse;      //pulse at minAngle + i * INVERSE_RESOLUTION
+    private final boolean reversed;
+
+    /**
+     * @param pulses measured pulses [us], ascending
+     * @param angles angle measured at each pulse [deg], strictly rising or strictly falling
+     */
+    public ServoCalibration(int[] pulses, double[] angles) {
+        if (pulses.length != angles.length || pulses.length < 2) {
+            throw new IllegalArgumentException("need at least 2 points with one angle per pulse, got "
+                    + pulses.length + " pulses and " + angles.length + " angles");
+        }
+        reversed = angles[1] < angles[0];
+        for (int i = 1; i < pulses.length; i++) {
+            if (pulses[i] <= pulses[i - 1]) {
+                throw new IllegalArgumentException("pulses not ascending at " + pulses[i]);
+            }
+            if (angles[i] == angles[i - 1] || (angles[i] < angles[i - 1]) != reversed) {
+                throw new IllegalArgumentException("curve not monotonic at pulse " + pulses[i]);
+            }
+        }
+        this.pulses = pulses.clone();
+        this.angles = angles.clone();
+
+        minPulse = pulses[0];
+        maxPulse = pulses[pulses.length - 1];
+        forward = new float[maxPulse - minPulse + 1];
+        int segment = 0;
+        for (int i = 0; i < forward.length; i++) {
+            int pulse = minPulse + i;
+            while (pulse > pulses[segment + 1]) {
+                segment++;
+            }
+            forward[i] = (float) lerp(pulse, pulses[segment], pulses[segment + 1], angles[segment], angles[segment + 1]);
+        }
+
+        minAngle = Math.min(angles[0], angles[angles.length - 1]);
+        maxAngle = Math.max(angles[0], angles[angles.length - 1]);
+        inverse = new float[(int) Math.ceil((maxAngle - minAngle) / INVERSE_RESOLUTION) + 1];
+        //walk the segments in rising angle order
+        segment = reversed ? pulses.length - 2 : 0;
+        int step = reversed ? -1 : 1;
+        for (int i = 0; i < inverse.length; i++) {
+            double angle = Math.min(minAngle + i * INVERSE_RESOLUTION, maxAngle);
+            while (angle > Math.max(angles[segment], angles[segment + 1])) {
+                segment += step;
+            }
+            inverse[i] = (float) lerp(angle, angles[segment], angles[segment + 1], pulses[segment], pulses[segment + 1]);
+        }
+    }
+
+    private static double lerp(double x, double x0, double x1, double y0, double y1) {
+        return y0 + (x - x0) * (y1 - y0) / (x1 - x0);
+    }
+
+    /**
+     * @return angle at the pulse [deg], the pulse clamped to the calibrated range
+     */
+    public double angle(double pulse) {
+        double position = pulse - minPulse;
+        if (position <= 0) {
+            return forward[0];
+        }
+        int index = (int) position;
+        if (index >= forward.length - 1) {
+            return forward[forward.length - 1];
+        }
+        double fraction = position - index;
+        return forward[index] + fraction * (forward[index + 1] - forward[index]);
+    }
+
+    /**
+     * @return pulse giving the angle [us], the angle clamped to the calibrated range
+     */
+    public double pulse(double angle) {
+        double position = (angle - minAngle) / INVERSE_RESOLUTION;
+        if (position <= 0) {
+            return inverse[0];
+        }
+        int index = (int) position;
+        if (index >= inverse.length - 1) {
+            return inverse[inverse.length - 1];
+        }
+        double fraction = position - index;
+        return inverse[index] + fraction * (inverse[index + 1] - inverse[index]);
+    }
+
+    /**
+     * @return {@link #pulse(double)} rounded to the servo resolution
+     */
+    public int pulseFor(double angle) {
+        return (int) Math.round(pulse(angle));
+    }
+
+    /**
+     * @return true when the angle falls as the pulse rises
+     */
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    /**
+     * @return mean slope over the calibrated range [deg/us], negative when reversed
+     */
+    public double getDegreesPerMicrosecond() {
+        return (angles[angles.length - 1] - angles[0]) / (maxPulse - minPulse);
+    }
+
+    public int getMinPulse() {
+        return minPulse;
+    }
+
+    public int getMaxPulse() {
+        return maxPulse;
+    }
+
+    public double getMinAngle() {
+        return minAngle;
+    }
+
+    public double getMaxAngle() {
+        return maxAngle;
+    }
+
+    public int getPointCount() {
+        return pulses.length;
+    }
+
+    /**
+     * Loads the file named by -Deme.calibration, or calibration.properties in the working directory.
+     *
+     * @return calibration indexed by {@link Axis#ordinal()}, null for axes not calibrated or no file
+     */
+    public static ServoCalibration[] load() throws IOException {
+        File file = getFile();
+        Properties properties = new Properties();
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return load(properties);
+    }
+
+    public static ServoCalibration[] load(Properties properties) {
+        ServoCalibration[] calibrations = new ServoCalibration[Axis.values().length];
+        for (Axis axis : Axis.values()) {
+            String points = properties.getProperty(key(axis));
+            if (points == null) {
+                continue;
+            }
+            String[] entries = points.split(",");
+            int[] pulses = new int[entries.length];
+            double[] angles = new double[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                String[] point = entries[i].trim().split(":");
+                if (point.length != 2) {
+                    throw new IllegalArgumentException(key(axis) + ": expected pulse:angle, was " + entries[i]);
+                }
+                pulses[i] = Integer.parseInt(point[0].trim());
+                angles[i] = Double.parseDouble(point[1].trim());
+            }
+            calibrations[axis.ordinal()] = new ServoCalibration(pulses, angles);
+            log.debug("load: " + axis + " " + calibrations[axis.ordinal()]);
+        }
+        return calibrations;
+    }
+
+    /**
+     * Stores the calibration of the axis in the calibration file, keeping the other axes.
+     */
+    public void save(Axis axis) throws IOException {
+        File file = getFile();
+        Properties properties = new Properties();
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        store(axis, properties);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "servo calibration, pulse [us]:angle [deg]");
+        } finally {
+            out.close();
+        }
+        log.info("save: " + axis + " " + this + " to " + file);
+    }
+
+    public void store(Axis axis, Properties properties) {
+        StringBuilder points = new StringBuilder();
+        for (int i = 0; i < pulses.length; i++) {
+            if (i > 0) {
+                points.append(',');
+            }
+            points.append(pulses[i]).append(':').append(String.format(Locale.ROOT, "%.3f", angles[i]));
+        }
+        properties.setProperty(key(axis), points.toString());
+    }
+
+    private static String key(Axis axis) {
+        return "calibration." + axis.name() + ".points";
+    }
+
+    private static File getFile() {
+        return new File(System.getProperty(CALIBRATION_PROPERTY, DEFAULT_FILE));
+    }
+
+    @Override
+    public String toString() {
+        return "ServoCalibration{" + pulses.length + " points, pulse=" + minPulse + ".." + maxPulse
+                + ", angle=" + String.format(Locale.ROOT, "%.1f..%.1f", minAngle, maxAngle) + "}";
+    }
+}
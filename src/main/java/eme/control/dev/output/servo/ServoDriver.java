@@ -1,7 +1,325 @@
 package eme.control.dev.output.servo;
 
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
 /**
- * Created by pablos on 2017-07-18.
+ * Single owner of the servo outputs.
+ * <p>
+ * Producers (buttons, tracker) only post target pulses; a writer thread sends the newest target
+ * of each GPIO to pigpiod. Targets posted while a previous one waits are superseded, a target equal to the
+ * last sent one is dropped, a GPIO is not commanded more often than once per servo frame and never has
+ * more than one command waiting for a pigpiod reply. A target that could not be written or that pigpiod
+ * rejected is sent again a servo frame later.
+ * <p>
+ * Everything due in one pass of the writer goes out in batched writes. GPIOs posted together with
+ * {@link #setPulses(int[], int[], int)} are linked: they are only sent when all of them can go, in the same
+ * batch, so the servos of a coordinated move start each step together.
  */
-public class ServoDriver {
+public class ServoDriver implements Runnable {
+    private static final Logger log = Logger.getLogger(ServoDriver.class);
+
+    public static final int MAX_GPIO = 53;
+    public static final int SERVO_FRAME_MS = 20;    //50Hz
+    private static final int NONE = -1;
+
+    private final MessageSender sender;
+    private final long minIntervalNanos;
+
+    private final AtomicIntegerArray targets = new AtomicIntegerArray(MAX_GPIO + 1);
+    private final AtomicIntegerArray awaitingReply = new AtomicIntegerArray(MAX_GPIO + 1);
+    //GPIOs with a new target posted, GPIOs to look at again after a reply, GPIOs whose last command failed
+    private final AtomicLong dirty = new AtomicLong();
+    private final AtomicLong recheck = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong linked = new AtomicLong();
+
+    //owned by the writer thread
+    private final int[] lastSent = new int[MAX_GPIO + 1];
+    private final long[] lastSentAt = new long[MAX_GPIO + 1];
+    private final boolean[] attempted = new boolean[MAX_GPIO + 1];
+    //target read when the GPIO was found ready, the one sent even if a newer one lands meanwhile
+    private final int[] readyPulse = new int[MAX_GPIO + 1];
+    //GPIOs with a posted target not yet sent or dropped as a duplicate
+    private long unhandledPosts;
+    //linked GPIOs ready but waiting for the rest of their group
+    private long held;
+    private final ResponseCallback[] replyHandlers = new ResponseCallback[MAX_GPIO + 1];
+    private final int[] batchGpios = new int[MessageSender.MAX_BATCH];
+    private final int[] batchPulses = new int[MessageSender.MAX_BATCH];
+    private final ResponseCallback[] batchCallbacks = new ResponseCallback[MessageSender.MAX_BATCH];
+
+    private volatile boolean running;
+    //read by producers to unpark it
+    private volatile Thread writer;
+
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long sent, duplicates, batches;
+
+    public ServoDriver(MessageSender sender) {
+        this(sender, SERVO_FRAME_MS);
+    }
+
+    /**
+     * @param minIntervalMs shortest time between two commands to the same GPIO
+     */
+    public ServoDriver(MessageSender sender, int minIntervalMs) {
+        this.sender = sender;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMs);
+        for (int gpio = 0; gpio <= MAX_GPIO; gpio++) {
+            targets.set(gpio, NONE);
+            lastSent[gpio] = NONE;
+            replyHandlers[gpio] = new ReplyHandler(gpio);
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this, "servo-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("stop: posted=" + posted + ", sent=" + sent + ", batches=" + batches + ", duplicates=" + duplicates
+                + ", failures=" + failures);
+    }
+
+    /**
+     * Posts a new target for the GPIO. Never blocks; an earlier target not sent yet is replaced.
+     *
+     * @param pulse servo pulse duration [us]
+     */
+    public void setPulse(int gpio, int pulse) {
+        checkGpio(gpio);
+        targets.set(gpio, pulse);
+        posted.incrementAndGet();
+        mark(dirty, 1L << gpio);
+    }
+
+    /**
+     * Posts targets for several GPIOs that move together. Never blocks. The GPIOs stay linked until the next
+     * call: from then on the writer sends them in one batch, holding back the ready ones while another waits
+     * for its reply or frame.
+     *
+     * @param count number of entries used, at most {@link MessageSender#MAX_BATCH}
+     */
+    public void setPulses(int[] gpios, int[] pulses, int count) {
+        if (count < 1 || count > MessageSender.MAX_BATCH) {
+            throw new IllegalArgumentException("group of " + count + " GPIOs, expected 1.." + MessageSender.MAX_BATCH);
+        }
+        long group = 0;
+        for (int i = 0; i < count; i++) {
+            checkGpio(gpios[i]);
+            group |= 1L << gpios[i];
+        }
+        linked.set(group);
+        for (int i = 0; i < count; i++) {
+            targets.set(gpios[i], pulses[i]);
+        }
+        posted.addAndGet(count);
+        mark(dirty, group);
+    }
+
+    private static void checkGpio(int gpio) {
+        if (gpio < 0 || gpio > MAX_GPIO) {
+            throw new IllegalArgumentException("gpio " + gpio + " out of 0.." + MAX_GPIO);
+        }
+    }
+
+    /**
+     * @return newest target posted for the GPIO, -1 if none
+     */
+    public int getPulse(int gpio) {
+        return targets.get(gpio);
+    }
+
+    public void run() {
+        long deferred = 0;
+        while (running) {
+            long posts = dirty.getAndSet(0);
+            long mask = posts | recheck.getAndSet(0) | deferred | held;
+            deferred = 0;
+            held = 0;
+            unhandledPosts |= posts;
+            for (long failed = rejected.getAndSet(0); failed != 0; failed &= failed - 1) {
+                lastSent[Long.numberOfTrailingZeros(failed)] = NONE;
+            }
+            long now = System.nanoTime();
+            long nextDue = Long.MAX_VALUE;
+            long ready = 0, blocked = 0;
+            while (mask != 0) {
+                int gpio = Long.numberOfTrailingZeros(mask);
+                long bit = 1L << gpio;
+                mask &= mask - 1;
+                int target = targets.get(gpio);
+                if (target == lastSent[gpio]) {
+                    if ((unhandledPosts & bit) != 0) {
+                        duplicates++;
+                        unhandledPosts &= ~bit;
+                    }
+                    continue;
+                }
+                if (awaitingReply.get(gpio) != 0) {
+                    //the reply handler asks for a recheck
+                    blocked |= bit;
+                    continue;
+                }
+                long due = lastSentAt[gpio] + minIntervalNanos;
+                if (attempted[gpio] && now - due < 0) {
+                    nextDue = Math.min(nextDue, due);
+                    deferred |= bit;
+                    blocked |= bit;
+                    continue;
+                }
+                readyPulse[gpio] = target;
+                ready |= bit;
+            }
+            long group = linked.get();
+            if ((blocked & group) != 0) {
+                //picked up again when the blocked one gets its reply or its frame
+                held = ready & group;
+                ready &= ~group;
+            }
+            write(ready & group, now);
+            write(ready & ~group, now);
+
+            if (deferred == 0) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, nextDue - System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Sends the targets found ready for the GPIOs in batches of up to MAX_BATCH commands.
+     */
+    private void write(long mask, long now) {
+        while (mask != 0) {
+            int count = 0;
+            while (mask != 0 && count < MessageSender.MAX_BATCH) {
+                int gpio = Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                //a failed attempt counts for the rate limit too, so retries come once per frame
+                attempted[gpio] = true;
+                lastSentAt[gpio] = now;
+                awaitingReply.set(gpio, 1);
+                batchGpios[count] = gpio;
+                batchPulses[count] = readyPulse[gpio];
+                batchCallbacks[count++] = replyHandlers[gpio];
+            }
+            try {
+                sender.setServoPulses(batchGpios, batchPulses, count, batchCallbacks);
+                for (int i = 0; i < count; i++) {
+                    lastSent[batchGpios[i]] = batchPulses[i];
+                    unhandledPosts &= ~(1L << batchGpios[i]);
+                }
+                sent += count;
+                batches++;
+            } catch (IOException e) {
+                long failed = 0;
+                for (int i = 0; i < count; i++) {
+                    awaitingReply.set(batchGpios[i], 0);
+                    failed |= 1L << batchGpios[i];
+                }
+                if (failures.addAndGet(count) == count) {
+                    log.warn("write: gpios=" + Long.toBinaryString(failed), e);
+                } else {
+                    log.debug("write: gpios=" + Long.toBinaryString(failed) + " failed again: " + e.getMessage());
+                }
+                mark(recheck, failed);
+            }
+        }
+    }
+
+    private void mark(AtomicLong mask, long bits) {
+        long old;
+        do {
+            old = mask.get();
+        } while (!mask.compareAndSet(old, old | bits));
+        if ((old & bits) != bits && writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public long getPostedCount() {
+        return posted.get();
+    }
+
+    public long getSentCount() {
+        return sent;
+    }
+
+    /**
+     * @return socket writes, each carrying one or more commands
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * @return posted targets equal to the pulse last sent, dropped without a command
+     */
+    public long getDuplicateCount() {
+        return duplicates;
+    }
+
+    /**
+     * @return targets replaced by a newer one before they were sent
+     */
+    public long getSupersededCount() {
+        return Math.max(0, posted.get() - sent - duplicates);
+    }
+
+    private class ReplyHandler implements ResponseCallback {
+        private final int gpio;
+
+        ReplyHandler(int gpio) {
+            this.gpio = gpio;
+        }
+
+        public void onResponse(int command, int result) {
+            if (result < 0) {
+                //retried every frame while pigpiod keeps refusing, so only every 100th is logged
+                if (failures.getAndIncrement() % 100 == 0) {
+                    log.warn("onResponse: gpio=" + gpio + " failed: " + result + ", failures=" + failures);
+                }
+                //the writer forgets the pulse, so the target is sent again
+                mark(rejected, 1L << gpio);
+            }
+            awaitingReply.set(gpio, 0);
+            mark(recheck, 1L << gpio);
+        }
+
+        public void onFailure(IOException e) {
+            failures.incrementAndGet();
+            mark(rejected, 1L << gpio);
+            awaitingReply.set(gpio, 0);
+            mark(recheck, 1L << gpio);
+        }
+    }
 }
@@ -0,0 +1,151 @@
+package eme.control.ephemeris;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moon azimuth/elevation for one tracking session, precomputed as piecewise Chebyshev series.
+ * <p>
+ * The session is cut into equal segments; per segment azimuth (unwrapped within the segment) and elevation are
+ * fitted with a series of the configured degree, and the series of their time derivatives are kept as well.
+ * A lookup is a segment index plus a Clenshaw recurrence per value: a few dozen multiply-adds, no allocation,
+ * no network. Fitted on the full ephemeris, the table error stays far below the ephemeris' own accuracy.
+ */
+public class EphemerisTable {
+    private static final Logger log = Logger.getLogger(EphemerisTable.class);
+
+    public static final int DEFAULT_SEGMENT_MINUTES = 60;
+    public static final int DEFAULT_DEGREE = 10;
+
+    private static final int AZ = 0, EL = 1, AZ_RATE = 2, EL_RATE = 3, SERIES = 4;
+
+    private final long start;
+    private final long end;
+    private final long segmentMillis;
+    private final int terms;
+    private final int segments;
+    //[segment][series][term] flattened
+    private final double[] coefficients;
+
+    private EphemerisTable(long start, long segmentMillis, int segments, int degree) {
+        this.start = start;
+        this.segmentMillis = segmentMillis;
+        this.segments = segments;
+        this.end = start + segments * segmentMillis;
+        this.terms = degree + 1;
+        this.coefficients = new double[segments * SERIES * terms];
+    }
+
+    public static EphemerisTable build(Station station, long start, int hours) {
+        return build(new MoonEphemeris(station), start, hours, DEFAULT_SEGMENT_MINUTES, DEFAULT_DEGREE);
+    }
+
+    /**
+     * @param start UTC [ms] of the session start
+     */
+    public static EphemerisTable build(MoonEphemeris ephemeris, long start, int hours, int segmentMinutes, int degree) {
+        long segmentMillis = TimeUnit.MINUTES.toMillis(segmentMinutes);
+        int segments = (int) ((TimeUnit.HOURS.toMillis(hours) + segmentMillis - 1) / segmentMillis);
+        EphemerisTable table = new EphemerisTable(start, segmentMillis, segments, degree);
+        long began = System.nanoTime();
+        for (int segment = 0; segment < segments; segment++) {
+            table.fit(ephemeris, segment);
+        }
+        log.info("build: " + segments + " segments of " + segmentMinutes + "min, degree " + degree + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began) + "ms");
+        return table;
+    }
+
+    private void fit(MoonEphemeris ephemeris, int segment) {
+        HorizontalPosition position = new HorizontalPosition();
+        double[] azimuth = new double[terms];
+        double[] elevation = new double[terms];
+        long segmentStart = start + segment * segmentMillis;
+        for (int k = 0; k < terms; k++) {
+            double x = Math.cos(Math.PI * (k + 0.5) / terms);
+            ephemeris.compute(segmentStart + Math.round((x + 1) / 2 * segmentMillis), position);
+            azimuth[k] = position.getAzimuth();
+            elevation[k] = position.getElevation();
+        }
+        //keep azimuth continuous across north within the segment
+        double reference = azimuth[terms / 2];
+        for (int k = 0; k < terms; k++) {
+            azimuth[k] += 360 * Math.round((reference - azimuth[k]) / 360);
+        }
+
+        int base = segment * SERIES * terms;
+        chebyshev(azimuth, coefficients, base + AZ * terms);
+        chebyshev(elevation, coefficients, base + EL * terms);
+        //d/dt = d/dx * 2 / segment length [s]
+        double scale = 2 / (segmentMillis / 1000.0);
+        derivative(coefficients, base + AZ * terms, base + AZ_RATE * terms, scale);
+        derivative(coefficients, base + EL * terms, base + EL_RATE * terms, scale);
+    }
+
+    private void chebyshev(double[] values, double[] target, int offset) {
+        int n = values.length;
+        for (int j = 0; j < n; j++) {
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += values[k] * Math.cos(Math.PI * j * (k + 0.5) / n);
+            }
+            target[offset + j] = 2.0 * sum / n;
+        }
+    }
+
+    private void derivative(double[] c, int from, int to, double scale) {
+        int n = terms;
+        c[to + n - 1] = 0;
+        if (n > 1) {
+            c[to + n - 2] = 2 * (n - 1) * c[from + n - 1];
+        }
+        for (int j = n - 3; j >= 0; j--) {
+            c[to + j] = c[to + j + 2] + 2 * (j + 1) * c[from + j + 1];
+        }
+        for (int j = 0; j < n; j++) {
+            c[to + j] *= scale;
+        }
+    }
+
+    /**
+     * @param millis UTC [ms], must be {@link #covers(long) covered}
+     */
+    public void lookup(long millis, HorizontalPosition target) {
+        if (!covers(millis)) {
+            throw new IllegalArgumentException("time " + millis + " outside of the table " + start + ".." + end);
+        }
+        int segment = (int) ((millis - start) / segmentMillis);
+        if (segment == segments) {
+            segment--;
+        }
+        double x = 2.0 * (millis - start - segment * segmentMillis) / segmentMillis - 1;
+        int base = segment * SERIES * terms;
+        double azimuth = clenshaw(base + AZ * terms, x);
+        target.set(MoonEphemeris.normalize(azimuth), clenshaw(base + EL * terms, x),
+                clenshaw(base + AZ_RATE * terms, x), clenshaw(base + EL_RATE * terms, x));
+    }
+
+    private double clenshaw(int offset, double x) {
+        double b1 = 0, b2 = 0;
+        double x2 = 2 * x;
+        for (int j = terms - 1; j >= 1; j--) {
+            double b0 = x2 * b1 - b2 + coefficients[offset + j];
+            b2 = b1;
+            b1 = b0;
+        }
+        return x * b1 - b2 + coefficients[offset] / 2;
+    }
+
+    public boolean covers(long millis) {
+        return millis >= start && millis <= end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+}
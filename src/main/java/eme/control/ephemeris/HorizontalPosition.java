@@ -0,0 +1,51 @@
+package eme.control.ephemeris;
+
+/**
+ * Mutable azimuth/elevation pair, reused by lookups so they do not allocate.
+ */
+public class HorizontalPosition {
+    private double azimuth;
+    private double elevation;
+    private double azimuthRate;
+    private double elevationRate;
+
+    public void set(double azimuth, double elevation, double azimuthRate, double elevationRate) {
+        this.azimuth = azimuth;
+        this.elevation = elevation;
+        this.azimuthRate = azimuthRate;
+        this.elevationRate = elevationRate;
+    }
+
+    /**
+     * @return [deg] from north through east, 0..360
+     */
+    public double getAzimuth() {
+        return azimuth;
+    }
+
+    /**
+     * @return [deg] above the horizon
+     */
+    public double getElevation() {
+        return elevation;
+    }
+
+    /**
+     * @return [deg/s]
+     */
+    public double getAzimuthRate() {
+        return azimuthRate;
+    }
+
+    /**
+     * @return [deg/s]
+     */
+    public double getElevationRate() {
+        return elevationRate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("az=%.3f, el=%.3f, daz=%.5f/s, del=%.5f/s", azimuth, elevation, azimuthRate, elevationRate);
+    }
+}
@@ -0,0 +1,86 @@
+package eme.control.ephemeris;
+
+/**
+ * Topocentric moon position from the low precision formulae of the Astronomical Almanac
+ * (about 0.3 deg in longitude, 0.2 deg in latitude), including parallax, which matters for the moon
+ * at up to 1 deg. Good enough for an EME beam; too slow to be called every control tick, see {@link EphemerisTable}.
+ */
+public class MoonEphemeris {
+    private static final double RAD = Math.PI / 180;
+    private static final double J2000 = 2451545.0;
+    private static final double MILLIS_PER_DAY = 86400000.0;
+    private static final double UNIX_EPOCH_JD = 2440587.5;
+    //flattening of the Earth and its equatorial radius [m]
+    private static final double FLATTENING = 1 / 298.257;
+    private static final double EARTH_RADIUS = 6378140;
+
+    private final Station station;
+    private final double rhoCosLat, rhoSinLat;
+
+    public MoonEphemeris(Station station) {
+        this.station = station;
+        double u = Math.atan((1 - FLATTENING) * Math.tan(station.getLatitude() * RAD));
+        double h = station.getHeight() / EARTH_RADIUS;
+        rhoCosLat = Math.cos(u) + h * Math.cos(station.getLatitude() * RAD);
+        rhoSinLat = (1 - FLATTENING) * Math.sin(u) + h * Math.sin(station.getLatitude() * RAD);
+    }
+
+    /**
+     * Fills azimuth and elevation; the rates are left at zero, they come from {@link EphemerisTable}.
+     *
+     * @param millis UTC [ms since 1970]
+     */
+    public void compute(long millis, HorizontalPosition target) {
+        double jd = UNIX_EPOCH_JD + millis / MILLIS_PER_DAY;
+        double t = (jd - J2000) / 36525;
+
+        double lambda = 218.32 + 481267.881 * t
+                + 6.29 * sin(135.0 + 477198.87 * t) - 1.27 * sin(259.3 - 413335.36 * t)
+                + 0.66 * sin(235.7 + 890534.22 * t) + 0.21 * sin(269.9 + 954397.74 * t)
+                - 0.19 * sin(357.5 + 35999.05 * t) - 0.11 * sin(186.5 + 966404.03 * t);
+        double beta = 5.13 * sin(93.3 + 483202.02 * t) + 0.28 * sin(228.2 + 960400.89 * t)
+                - 0.28 * sin(318.3 + 6003.15 * t) - 0.17 * sin(217.6 - 407332.21 * t);
+        double parallax = 0.9508 + 0.0518 * cos(135.0 + 477198.87 * t) + 0.0095 * cos(259.3 - 413335.36 * t)
+                + 0.0078 * cos(235.7 + 890534.22 * t) + 0.0028 * cos(269.9 + 954397.74 * t);
+
+        //geocentric equatorial direction cosines, distance in Earth radii
+        double l = cos(beta) * cos(lambda);
+        double m = 0.9175 * cos(beta) * sin(lambda) - 0.3978 * sin(beta);
+        double n = 0.3978 * cos(beta) * sin(lambda) + 0.9175 * sin(beta);
+        double r = 1 / sin(parallax);
+
+        //topocentric: move the origin to the station
+        double lst = localSiderealTime(jd);
+        double x = r * l - rhoCosLat * cos(lst);
+        double y = r * m - rhoCosLat * sin(lst);
+        double z = r * n - rhoSinLat;
+
+        double ra = Math.atan2(y, x) / RAD;
+        double dec = Math.atan2(z, Math.sqrt(x * x + y * y)) / RAD;
+        double hourAngle = lst - ra;
+        double lat = station.getLatitude();
+
+        double elevation = Math.asin(sin(lat) * sin(dec) + cos(lat) * cos(dec) * cos(hourAngle)) / RAD;
+        double azimuth = Math.atan2(-cos(dec) * sin(hourAngle),
+                cos(lat) * sin(dec) - sin(lat) * cos(dec) * cos(hourAngle)) / RAD;
+        target.set(normalize(azimuth), elevation, 0, 0);
+    }
+
+    private double localSiderealTime(double jd) {
+        double d = jd - J2000;
+        return normalize(280.46061837 + 360.98564736629 * d + station.getLongitude());
+    }
+
+    static double normalize(double degrees) {
+        double value = degrees % 360;
+        return value < 0 ? value + 360 : value;
+    }
+
+    private static double sin(double degrees) {
+        return Math.sin(degrees * RAD);
+    }
+
+    private static double cos(double degrees) {
+        return Math.cos(degrees * RAD);
+    }
+}
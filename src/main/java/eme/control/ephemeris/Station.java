@@ -0,0 +1,41 @@
+package eme.control.ephemeris;
+
+/**
+ * Geographic position of the antenna.
+ */
+public class Station {
+    private final double latitude;
+    private final double longitude;
+    private final double height;
+
+    /**
+     * @param latitude  [deg], north positive
+     * @param longitude [deg], east positive
+     * @param height    above sea level [m]
+     */
+    public Station(double latitude, double longitude, double height) {
+        if (latitude < -90 || latitude > 90) {
+            throw new IllegalArgumentException("latitude " + latitude + " out of -90..90");
+        }
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.height = height;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        return "Station{lat=" + latitude + ", lon=" + longitude + ", h=" + height + "}";
+    }
+}
@@ -0,0 +1,22 @@
+package eme.control.fusion;
+
+/**
+ * Single axis attitude filter fusing an absolute but noisy angle (from the accelerometer)
+ * with a smooth but drifting angular rate (from the gyroscope). Runs in O(1) time and state per update.
+ */
+public interface AngleFilter {
+    /**
+     * @param measuredAngle angle from the accelerometer [deg]
+     * @param rate          angular rate around the same axis [deg/s]
+     * @param dt            time since the previous update [s]
+     * @return the new estimate [deg]
+     */
+    double update(double measuredAngle, double rate, double dt);
+
+    /**
+     * Restarts the filter at the given angle, e.g. on the first sample or after a gap in the data.
+     */
+    void reset(double angle);
+
+    double getAngle();
+}
@@ -0,0 +1,145 @@
+package eme.control.fusion;
+
+import eme.control.dev.input.accel.Mpu6050Sample;
+import eme.control.dev.input.accel.Mpu6050SampleListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental roll/pitch estimator fed with every MPU-6050 sample on the acquisition thread.
+ * Roll is fused with the X gyro rate, pitch with the Y gyro rate. The latest estimate can be read from any thread;
+ * {@link #read(Attitude)} returns roll, pitch and timestamp of the same update, guarded by a seqlock.
+ */
+public class AttitudeFusion implements Mpu6050SampleListener {
+    public enum FILTER { COMPLEMENTARY, KALMAN }
+
+    //a gap longer than this (missed samples, FIFO overflow) restarts the filters from the accelerometer
+    private static final long MAX_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AngleFilter rollFilter;
+    private final AngleFilter pitchFilter;
+
+    private long lastTimestamp;
+    private boolean initialized;
+
+    //odd while an update is written
+    private volatile long version;
+    private volatile double roll, pitch;
+    private volatile long timestamp;
+
+    public AttitudeFusion(FILTER filter) {
+        this(createFilter(filter), createFilter(filter));
+    }
+
+    public AttitudeFusion(AngleFilter rollFilter, AngleFilter pitchFilter) {
+        this.rollFilter = rollFilter;
+        this.pitchFilter = pitchFilter;
+    }
+
+    public static AngleFilter createFilter(FILTER filter) {
+        switch (filter) {
+            case COMPLEMENTARY:
+                return new ComplementaryFilter();
+            case KALMAN:
+                return new KalmanFilter();
+            default:
+                throw new IllegalArgumentException("unknown filter " + filter);
+        }
+    }
+
+    public void onSample(Mpu6050Sample sample) {
+        long dtNanos = sample.getTimestamp() - lastTimestamp;
+        lastTimestamp = sample.getTimestamp();
+        double measuredRoll = sample.getRoll();
+        double measuredPitch = sample.getPitch();
+
+        //atan2 wraps at +-180 deg, restart rather than integrate across the jump
+        if (!initialized || dtNanos <= 0 || dtNanos > MAX_GAP_NANOS
+                || Math.abs(measuredRoll - rollFilter.getAngle()) > 180) {
+            rollFilter.reset(measuredRoll);
+            pitchFilter.reset(measuredPitch);
+            initialized = true;
+        } else {
+            double dt = dtNanos / NANOS_PER_SECOND;
+            rollFilter.update(measuredRoll, sample.getGyroX(), dt);
+            pitchFilter.update(measuredPitch, sample.getGyroY(), dt);
+        }
+
+        long v = version;
+        version = v + 1;
+        roll = rollFilter.getAngle();
+        pitch = pitchFilter.getAngle();
+        timestamp = lastTimestamp;
+        version = v + 2;
+    }
+
+    public void onOverflow(long lostSamples) {
+        initialized = false;
+    }
+
+    /**
+     * Copies the latest estimate into target, roll and pitch always from the same sample.
+     */
+    public void read(Attitude target) {
+        while (true) {
+            long v = version;
+            if ((v & 1) == 0) {
+                double r = roll, p = pitch;
+                long t = timestamp;
+                if (version == v) {
+                    target.set(r, p, t);
+                    return;
+                }
+            }
+            Thread.yield();     //the acquisition thread is writing, a few hundred ns at most
+        }
+    }
+
+    /**
+     * @return fused roll [deg]
+     */
+    public double getRoll() {
+        return roll;
+    }
+
+    /**
+     * @return fused pitch [deg]
+     */
+    public double getPitch() {
+        return pitch;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the sample the current estimate is based on
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Roll, pitch and timestamp of one update, reused by its reader.
+     */
+    public static class Attitude {
+        private double roll, pitch;
+        private long timestamp;
+
+        public void set(double roll, double pitch, long timestamp) {
+            this.roll = roll;
+            this.pitch = pitch;
+            this.timestamp = timestamp;
+        }
+
+        public double getRoll() {
+            return roll;
+        }
+
+        public double getPitch() {
+            return pitch;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
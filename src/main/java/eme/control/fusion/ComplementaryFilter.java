@@ -0,0 +1,40 @@
+package eme.control.fusion;
+
+/**
+ * First order complementary filter: high-passed integrated gyro rate plus low-passed accelerometer angle.
+ * The crossover is given as a time constant, so the behaviour does not depend on the sample rate.
+ */
+public class ComplementaryFilter implements AngleFilter {
+    public static final double DEFAULT_TIME_CONSTANT = 0.5;
+
+    private final double timeConstant;
+    private double angle;
+
+    public ComplementaryFilter() {
+        this(DEFAULT_TIME_CONSTANT);
+    }
+
+    /**
+     * @param timeConstant [s]; longer trusts the gyro more
+     */
+    public ComplementaryFilter(double timeConstant) {
+        if (timeConstant <= 0) {
+            throw new IllegalArgumentException("time constant must be positive, was " + timeConstant);
+        }
+        this.timeConstant = timeConstant;
+    }
+
+    public double update(double measuredAngle, double rate, double dt) {
+        double alpha = timeConstant / (timeConstant + dt);
+        angle = alpha * (angle + rate * dt) + (1 - alpha) * measuredAngle;
+        return angle;
+    }
+
+    public void reset(double angle) {
+        this.angle = angle;
+    }
+
+    public double getAngle() {
+        return angle;
+    }
+}
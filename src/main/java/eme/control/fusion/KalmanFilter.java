@@ -0,0 +1,70 @@
+package eme.control.fusion;
+
+/**
+ * Two state (angle, gyro bias) Kalman filter. The gyro rate drives the prediction,
+ * the accelerometer angle is the measurement. The bias estimate removes gyro drift.
+ */
+public class KalmanFilter implements AngleFilter {
+    public static final double DEFAULT_Q_ANGLE = 0.001;
+    public static final double DEFAULT_Q_BIAS = 0.003;
+    public static final double DEFAULT_R_MEASURE = 0.03;
+
+    private final double qAngle, qBias, rMeasure;
+
+    private double angle, bias;
+    //error covariance matrix
+    private double p00, p01, p10, p11;
+
+    public KalmanFilter() {
+        this(DEFAULT_Q_ANGLE, DEFAULT_Q_BIAS, DEFAULT_R_MEASURE);
+    }
+
+    /**
+     * @param qAngle   process noise variance of the angle
+     * @param qBias    process noise variance of the gyro bias
+     * @param rMeasure variance of the accelerometer angle
+     */
+    public KalmanFilter(double qAngle, double qBias, double rMeasure) {
+        this.qAngle = qAngle;
+        this.qBias = qBias;
+        this.rMeasure = rMeasure;
+    }
+
+    public double update(double measuredAngle, double rate, double dt) {
+        //predict
+        angle += dt * (rate - bias);
+        p00 += dt * (dt * p11 - p01 - p10 + qAngle);
+        p01 -= dt * p11;
+        p10 -= dt * p11;
+        p11 += qBias * dt;
+
+        //correct
+        double s = p00 + rMeasure;
+        double k0 = p00 / s;
+        double k1 = p10 / s;
+        double y = measuredAngle - angle;
+        angle += k0 * y;
+        bias += k1 * y;
+
+        double p00Old = p00, p01Old = p01;
+        p00 -= k0 * p00Old;
+        p01 -= k0 * p01Old;
+        p10 -= k1 * p00Old;
+        p11 -= k1 * p01Old;
+        return angle;
+    }
+
+    public void reset(double angle) {
+        this.angle = angle;
+        this.bias = 0;
+        p00 = p01 = p10 = p11 = 0;
+    }
+
+    public double getAngle() {
+        return angle;
+    }
+
+    public double getBias() {
+        return bias;
+    }
+}
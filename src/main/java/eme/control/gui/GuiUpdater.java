@@ -0,0 +1,89 @@
+package eme.control.gui;
+
+import javax.swing.Timer;
+import javax.swing.text.JTextComponent;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Coalesces status updates from any thread into at most one Swing repaint per frame.
+ * Posting only stores the latest value, so the control loop never waits for the EDT.
+ */
+public class GuiUpdater implements ActionListener {
+    public static final int FRAME_MS = 33;     //~30Hz
+
+    /**
+     * Polled on the EDT once per frame while set, e.g. to show live tracking state.
+     */
+    public interface StatusSource {
+        String status();
+    }
+
+    private final JTextComponent target;
+    private final Timer timer;
+    private volatile String message;
+    private volatile String label;
+    private volatile int value;
+    private volatile boolean dirty;
+    private volatile StatusSource source;
+    private String shown;
+
+    public GuiUpdater(JTextComponent target) {
+        this.target = target;
+        this.timer = new Timer(FRAME_MS, this);
+        this.timer.setCoalesce(true);
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    /**
+     * Replaces whatever has not been shown yet; safe to call from any thread.
+     */
+    public void post(String message) {
+        this.label = null;
+        this.message = message;
+        this.dirty = true;
+    }
+
+    /**
+     * Like {@link #post(String)} but the text is only built on the EDT, so a hot path can post without
+     * allocating.
+     */
+    public void post(String label, int value) {
+        this.value = value;
+        this.label = label;
+        this.dirty = true;
+    }
+
+    /**
+     * @param source polled every frame instead of posted messages, null to return to messages
+     */
+    public void setSource(StatusSource source) {
+        this.source = source;
+        this.dirty = true;
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        StatusSource current = source;
+        String text;
+        if (current != null) {
+            text = current.status();
+        } else if (dirty) {
+            dirty = false;
+            String l = label;
+            text = l != null ? l + value : message;
+        } else {
+            return;
+        }
+        if (text != null && !text.equals(shown)) {
+            target.setText(text);
+            shown = text;
+        }
+    }
+}
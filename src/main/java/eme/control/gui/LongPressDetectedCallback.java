@@ -3,4 +3,9 @@ package eme.control.gui;
 
 public interface LongPressDetectedCallback {
     void onLongPress(int id);
+
+    /**
+     * The button of a detected long press was let go.
+     */
+    void onLongPressReleased(int id);
 }
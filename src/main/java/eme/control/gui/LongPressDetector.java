@@ -2,48 +2,61 @@ package eme.control.gui;
 
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+//callbacks run on the given single threaded scheduler, never on the EDT
 public class LongPressDetector extends MouseAdapter {
     private int id;
     private LongPressDetectedCallback cb;
-    private Timer t;
-    private int timeout, repeatInterval;
+    private ScheduledExecutorService scheduler;
+    private Press press;
+    private int timeout;
 
-    public LongPressDetector(int id, LongPressDetectedCallback cb) {
-        this(id, 1000, cb);
+    public LongPressDetector(int id, ScheduledExecutorService scheduler, LongPressDetectedCallback cb) {
+        this(id, 1000, scheduler, cb);
     }
 
-    public LongPressDetector(int id, int timeout, LongPressDetectedCallback cb) {
-        this(id, timeout, 200, cb);
-    }
-
-    public LongPressDetector(int id, int timeout, int repeatInterval, LongPressDetectedCallback cb) {
+    public LongPressDetector(int id, int timeout, ScheduledExecutorService scheduler, LongPressDetectedCallback cb) {
         this.id = id;
         this.cb = cb;
+        this.scheduler = scheduler;
         this.timeout = timeout;
-        this.repeatInterval = repeatInterval;
     }
 
     @Override
     public void mousePressed(MouseEvent e) {
-        if (t == null) {
-            t = new Timer();
+        if (press == null) {
+            press = new Press();
+            press.pending = scheduler.schedule(press, timeout, TimeUnit.MILLISECONDS);
         }
-
-        t.schedule(new TimerTask() {
-            public void run() {
-                cb.onLongPress(id);
-            }
-        }, timeout, repeatInterval);
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-        if (t != null) {
-            t.cancel();
-            t = null;
+        if (press != null) {
+            press.pending.cancel(false);
+            scheduler.execute(press.release);
+            press = null;
+        }
+    }
+
+    private class Press implements Runnable {
+        ScheduledFuture<?> pending;
+        boolean detected;   //only touched on the scheduler thread
+
+        public void run() {
+            detected = true;
+            cb.onLongPress(id);
         }
+
+        final Runnable release = new Runnable() {
+            public void run() {
+                if (detected) {
+                    cb.onLongPressReleased(id);
+                }
+            }
+        };
     }
 }
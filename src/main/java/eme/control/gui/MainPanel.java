@@ -1,10 +1,9 @@
 package eme.control.gui;
 
-import com.pi4j.io.i2c.I2CBus;
-import com.pi4j.io.i2c.I2CFactory;
 import eme.control.OsValidator;
-import eme.control.dev.input.accel.Mpu6050;
-import eme.control.dev.output.servo.MessageSender;
+import eme.control.service.RotatorService;
+import eme.control.service.RotatorService.ACTIONS;
+import eme.control.track.TrackingLoop;
 import org.apache.log4j.Logger;
 
 import java.awt.Color;
@@ -13,10 +12,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
-import java.io.IOException;
-import java.net.UnknownHostException;
-import java.util.Map;
 
 import javax.swing.AbstractButton;
 import javax.swing.ImageIcon;
@@ -25,50 +20,70 @@ import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.text.JTextComponent;
-import eme.control.gui.actions.Action;
 
-import static com.pi4j.io.i2c.I2CFactory.getInstance;
-import static eme.control.dev.input.accel.Mpu6050.MPU6050_I2C_ADDRESS;
-
-public class MainPanel extends WindowAdapter implements ActionListener, LongPressDetectedCallback {
+/**
+ * Touch screen client of a {@link RotatorService}: buttons submit commands to the service, its status is
+ * shown in the log box. The service runs the same without it, see {@link eme.control.service.RotatorDaemon}.
+ */
+public class MainPanel extends WindowAdapter implements ActionListener, LongPressDetectedCallback,
+        RotatorService.StatusListener {
     private static final Logger log = Logger.getLogger(MainPanel.class);
 
-    public enum ACTIONS {COMMAND_ROT_LEFT, COMMAND_ROT_RIGHT, COMMAND_EXIT, COMMAND_TRACK  };
-    private Map<ACTIONS, Action> actions;
+    private final RotatorService service;
 
     private JPanel panel;
-    protected JButton b1, b2, b3, b4;
+    protected JButton b1, b2, b3, b4, b5, b6, b7;
     protected JTextComponent logBox;
 
-    private static MessageSender sender;
-    private int position = MessageSender.MID_POSITION;
-
-    MainPanel instance;
+    private GuiUpdater gui;
 
     public void log(String message) {
-        System.out.println(message);
-        logBox.setText(message);
+        gui.post(message);
         log.debug(message);
     }
 
     public void log(Exception ex) {
-        logBox.setText(ex.getLocalizedMessage());
+        gui.post(ex.getLocalizedMessage());
         log.warn(ex);
     }
 
     public void onLongPress(int id) {
-        if (id == Direction.CW.ordinal()) {
-            buttonActionRotCw();
-        } else if (id == Direction.CCW.ordinal()) {
-            buttonActionRotCcw();
+        service.jog(id == Direction.CW.ordinal() ? -1 : 1);
+    }
+
+    public void onLongPressReleased(int id) {
+        service.stopJog();
+    }
+
+    public void status(String message) {
+        log(message);
+    }
+
+    //called on the command bus
+    public void position(int pulse) {
+        gui.post("pos=", pulse);
+    }
+
+    public void tracking(final TrackingLoop loop) {
+        if (loop == null) {
+            gui.setSource(null);
+            return;
         }
+        final int initialRoll = (int) loop.getSetpoint().getSetpoint();
+        gui.setSource(new GuiUpdater.StatusSource() {
+            public String status() {
+                return "tracking r=" + initialRoll + " pos=" + service.getAxis().getPulse()
+                        + " err=" + String.format("%.2f", loop.getLastError());
+            }
+        });
     }
 
     public enum Direction {
         CW, CCW
     };
 
-    public MainPanel() throws IOException, I2CFactory.UnsupportedBusNumberException {
+    public MainPanel(RotatorService service) {
+        this.service = service;
         ImageIcon leftButtonIcon = createImageIcon("images/right.gif");
         ImageIcon middleButtonIcon = createImageIcon("images/middle.gif");
 
@@ -80,7 +95,7 @@ public class MainPanel extends WindowAdapter implements ActionListener, LongPres
         b1.setMnemonic(KeyEvent.VK_R);
         b1.setActionCommand(ACTIONS.COMMAND_ROT_RIGHT.name());
         b1.addActionListener(this);
-        b1.addMouseListener(new LongPressDetector(Direction.CW.ordinal(), this));
+        b1.addMouseListener(new LongPressDetector(Direction.CW.ordinal(), service.getControl(), this));
 
         b2 = new JButton("rotat<u>e</u> CW", middleButtonIcon);
         b2.setFont(font);
@@ -90,7 +105,7 @@ public class MainPanel extends WindowAdapter implements ActionListener, LongPres
         b2.setMnemonic(KeyEvent.VK_E);
         b2.setActionCommand(ACTIONS.COMMAND_ROT_LEFT.name());
         b2.addActionListener(this);
-        b2.addMouseListener(new LongPressDetector(Direction.CCW.ordinal(), this));
+        b2.addMouseListener(new LongPressDetector(Direction.CCW.ordinal(), service.getControl(), this));
 
         b1.setToolTipText("Click this button to disable the middle button.");
         b2.setToolTipText("This middle button does nothing when you click it.");
@@ -105,8 +120,26 @@ public class MainPanel extends WindowAdapter implements ActionListener, LongPres
         b4.setActionCommand(ACTIONS.COMMAND_TRACK.name());
         b4.addActionListener(this);
 
+        b5 = new JButton("stop");
+        b5.setMnemonic(KeyEvent.VK_S);
+        b5.setActionCommand(ACTIONS.COMMAND_STOP.name());
+        b5.addActionListener(this);
+
+        b6 = new JButton("calibrate");
+        b6.setMnemonic(KeyEvent.VK_C);
+        b6.setActionCommand(ACTIONS.COMMAND_CALIBRATE.name());
+        b6.addActionListener(this);
+
+        b7 = new JButton("moon");
+        b7.setMnemonic(KeyEvent.VK_M);
+        b7.setActionCommand(ACTIONS.COMMAND_MOON.name());
+        b7.addActionListener(this);
+
         logBox = new JTextField();
         logBox.setText("Log started...");
+        gui = new GuiUpdater(logBox);
+        gui.start();
+        service.setStatusListener(this);
         // Add Components to this container, using the default FlowLayout.
 
         panel = new JPanel();
@@ -114,6 +147,9 @@ public class MainPanel extends WindowAdapter implements ActionListener, LongPres
         panel.add(b2);
         panel.add(b3);
         panel.add(b4);
+        panel.add(b5);
+        panel.add(b6);
+        panel.add(b7);
         panel.add(logBox);
     }
 
@@ -121,115 +157,14 @@ public class MainPanel extends WindowAdapter implements ActionListener, LongPres
         final String command = e.getActionCommand();
         log(command);
         try {
-            if (ACTIONS.COMMAND_ROT_RIGHT == ACTIONS.valueOf(command)) {    //TODO make nicer...
-                buttonActionRotCw();
-            } else if (ACTIONS.COMMAND_ROT_LEFT == ACTIONS.valueOf(command)) {
-                buttonActionRotCcw();
-            } else if (ACTIONS.COMMAND_TRACK == ACTIONS.valueOf(command)) {
-                track();
-            } else if (ACTIONS.COMMAND_EXIT == ACTIONS.valueOf(command)) {
-                System.exit(0);
+            if (!service.submit(ACTIONS.valueOf(command))) {
+                log("busy, " + command + " dropped");
             }
-        } catch (Exception e2) {
+        } catch (IllegalArgumentException e2) {
             log(e2);
         }
     }
 
-    @Override
-    public void windowOpened(WindowEvent e) {
-        position = (MessageSender.MIN_PULSE_DURATION + MessageSender.MAX_PULSE_DURATION) / 2;
-        setServoPosition(position);
-        log("init. pos=" + position);
-    }
-
-    static Mpu6050 chip;
-    static {
-        try {
-            chip = new Mpu6050(getInstance(I2CBus.BUS_1));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    private void track() throws Exception {
-        log("tracking");
-        double initialRoll = chip.getRoll(), roll;  //TODO this will be input from Faraday's data
-        for(int ct=0; ct<300; ct++) {
-            roll = chip.getRoll();
-            ROLL_DEV dev = compareRollDeviation(roll, initialRoll);
-            log("r=" + (int) roll + ", " + dev);
-            if (dev == ROLL_DEV.CW_MOVED) {
-                while(compareRollDeviation(roll, initialRoll) != ROLL_DEV.NO_CHANGE) {
-                    buttonActionRotCcw(10);
-                    Thread.sleep(20);
-                    roll = chip.getRoll();
-                }
-            } else if (dev == ROLL_DEV.CCW_MOVED) {
-                while(compareRollDeviation(roll, initialRoll) != ROLL_DEV.NO_CHANGE) {
-                    buttonActionRotCw(10);
-                    Thread.sleep(20);
-                    roll = chip.getRoll();
-                }
-            } else if (dev == ROLL_DEV.NO_CHANGE) {
-                log("on track");
-            }
-            Thread.sleep(100);
-        }
-    }
-
-    public enum ROLL_DEV { CCW_MOVED, NO_CHANGE, CW_MOVED };
-
-    int ROLL_TOLERANCE = 2;
-
-    private ROLL_DEV compareRollDeviation(double to, double from) {
-        int diff = (int) Math.abs(to - from);
-        int sig = Integer.signum((int) (to - from));
-
-        if (diff > ROLL_TOLERANCE) {
-            if (sig == 1) {
-                return ROLL_DEV.CW_MOVED;
-            } else if (sig == -1) {
-                return ROLL_DEV.CCW_MOVED;
-            }
-        }
-
-        return ROLL_DEV.NO_CHANGE;
-    }
-
-    private void buttonActionRotCw() {
-        buttonActionRotCw(MessageSender.PULSE_STEP_PER_CLICK);
-    }
-
-    private void buttonActionRotCw(int step) {
-        if (position > MessageSender.MIN_PULSE_DURATION) {
-            position = position - step;
-        }
-        setServoPosition(position);
-    }
-
-    private void buttonActionRotCcw() {
-        buttonActionRotCcw(MessageSender.PULSE_STEP_PER_CLICK);
-    }
-
-    private void buttonActionRotCcw(int step) {
-        if (position < MessageSender.MAX_PULSE_DURATION) {
-            position = position + step;
-        }
-        setServoPosition(position);
-    }
-
-    private void setServoPosition(int pos) {
-        logBox.setBackground(Color.cyan);
-        try {
-            sender.send(MessageSender.createSetServoMessage(pos));
-            log("pos=" + position);
-        } catch (Exception e1) {
-            log(e1.getLocalizedMessage());
-            e1.printStackTrace();
-        }
-        logBox.setBackground(Color.WHITE);
-    }
-
     /** Returns an ImageIcon, or null if the path was invalid. */
     protected static ImageIcon createImageIcon(String path) {
         java.net.URL imgURL = MainPanel.class.getResource(path);
@@ -272,23 +207,21 @@ public class MainPanel extends WindowAdapter implements ActionListener, LongPres
         frame.setVisible(true);
     }
 
-    public static void main(String[] args) throws UnknownHostException, IOException {
-        log.info("smain: chip found=" + chip);
-        chip.init(MPU6050_I2C_ADDRESS);
-
-        sender = new MessageSender("localhost", 8888, MessageSender.SERVO_GPIO);
+    /**
+     * Starts the service, probing the hardware before any window is made, then shows the GUI on top of it.
+     * The exit button stops the service, and this thread then ends the JVM.
+     */
+    public static void main(String[] args) throws Exception {
+        final RotatorService service = new RotatorService();
+        service.start();
         // Schedule a job for the event dispatch thread:
         // creating and showing this application's GUI.
         javax.swing.SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                try {
-                    new MainPanel().createAndShowGUI();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } catch (I2CFactory.UnsupportedBusNumberException e) {
-                    e.printStackTrace();
-                }
+                new MainPanel(service).createAndShowGUI();
             }
         });
+        service.awaitExit();
+        System.exit(0);
     }
 }
@@ -1,5 +1,8 @@
 package eme.control.gui.actions;
 
+/**
+ * One command, run by the {@link CommandBus} writer thread.
+ */
 public interface Action {
-    void execute();
+    void execute() throws Exception;
 }
@@ -0,0 +1,35 @@
+package eme.control.gui.actions;
+
+/**
+ * An action submitted to the {@link CommandBus}, can be cancelled until the writer takes it.
+ */
+public class Command {
+    public enum STATE {QUEUED, RUNNING, DONE, FAILED, CANCELLED}
+
+    final String name;
+    final CommandBus.PRIORITY priority;
+    final Action action;
+    final long sequence;
+    final long submitted;
+    volatile STATE state = STATE.QUEUED;
+
+    Command(String name, CommandBus.PRIORITY priority, Action action, long sequence) {
+        this.name = name;
+        this.priority = priority;
+        this.action = action;
+        this.sequence = sequence;
+        this.submitted = System.nanoTime();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CommandBus.PRIORITY getPriority() {
+        return priority;
+    }
+
+    public STATE getState() {
+        return state;
+    }
+}
@@ -0,0 +1,214 @@
+package eme.control.gui.actions;
+
+import eme.control.metrics.ControlMetrics;
+import eme.control.metrics.LatencyHistogram;
+import org.apache.log4j.Logger;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single writer for everything that moves the mount: buttons, keyboard, tracker and remote clients submit
+ * {@link Action}s, one "command-bus" thread runs them in priority order, FIFO within a priority. State
+ * touched only by actions therefore needs no locking.
+ * <p>
+ * The queue is bounded; URGENT commands are always accepted so a stop or exit is never lost.
+ * The time from submit to completion is kept per command name.
+ */
+public class CommandBus implements Runnable {
+    private static final Logger log = Logger.getLogger(CommandBus.class);
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Drained in this order. Only MOVE commands are dropped by {@link #cancelMoves()}.
+     */
+    public enum PRIORITY {URGENT, CONTROL, MOVE}
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final PriorityQueue<Command> queue = new PriorityQueue<Command>(16, new Comparator<Command>() {
+        public int compare(Command a, Command b) {
+            int byPriority = a.priority.compareTo(b.priority);
+            return byPriority != 0 ? byPriority : Long.compare(a.sequence, b.sequence);
+        }
+    });
+    private long sequence;
+    private long rejected;
+
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public CommandBus() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CommandBus(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "command-bus");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the queued command, null if the queue was full
+     */
+    public Command submit(String name, PRIORITY priority, Action action) {
+        lock.lock();
+        try {
+            if (queue.size() >= capacity && priority != PRIORITY.URGENT) {
+                rejected++;
+                if (rejected % 100 == 1) {
+                    log.warn("submit: queue full, " + rejected + " commands rejected, last " + name);
+                }
+                return null;
+            }
+            Command command = new Command(name, priority, action, sequence++);
+            queue.add(command);
+            notEmpty.signal();
+            return command;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the command already started
+     */
+    public boolean cancel(Command command) {
+        lock.lock();
+        try {
+            if (command.state == Command.STATE.QUEUED && queue.remove(command)) {
+                command.state = Command.STATE.CANCELLED;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops all queued MOVE commands, e.g. on stop.
+     *
+     * @return number of commands dropped
+     */
+    public int cancelMoves() {
+        lock.lock();
+        try {
+            int cancelled = 0;
+            Iterator<Command> it = queue.iterator();
+            while (it.hasNext()) {
+                Command command = it.next();
+                if (command.priority == PRIORITY.MOVE) {
+                    it.remove();
+                    command.state = Command.STATE.CANCELLED;
+                    cancelled++;
+                }
+            }
+            return cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void run() {
+        while (running) {
+            Command command;
+            lock.lock();
+            try {
+                while (queue.isEmpty()) {
+                    notEmpty.await();
+                }
+                command = queue.poll();
+                command.state = Command.STATE.RUNNING;
+            } catch (InterruptedException e) {
+                continue;   //stop() interrupts
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                command.action.execute();
+                command.state = Command.STATE.DONE;
+            } catch (Exception e) {
+                command.state = Command.STATE.FAILED;
+                log.warn("run: command " + command.name + " failed", e);
+            }
+            latency(command.name).recordSince(command.submitted);
+        }
+    }
+
+    private LatencyHistogram latency(String name) {
+        LatencyHistogram histogram = latencies.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram("command-" + name);
+            histogram = latencies.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+                ControlMetrics.addCommand(created);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @return submit to completion times of the named command, null if it never ran
+     */
+    public LatencyHistogram getLatency(String name) {
+        return latencies.get(name);
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true when called from the writer thread
+     */
+    public boolean isWriter() {
+        return Thread.currentThread() == thread;
+    }
+}
@@ -1,7 +1,33 @@
 package eme.control.gui.actions;
 
+import eme.control.dev.output.servo.ServoAxis;
+import eme.control.dev.output.servo.ServoCalibration;
+
 public class RotateRightAction implements Action {
-    public void execute() {
+    private final ServoAxis axis;
+    private final int step;
+    private final double stepDegrees;
+
+    public RotateRightAction(ServoAxis axis, int step) {
+        this(axis, step, 0);
+    }
 
+    /**
+     * @param stepDegrees step used instead of the pulse step while the axis is calibrated [deg]
+     */
+    public RotateRightAction(ServoAxis axis, int step, double stepDegrees) {
+        this.axis = axis;
+        this.step = step;
+        this.stepDegrees = stepDegrees;
+    }
+
+    public void execute() {
+        ServoCalibration calibration = axis.getCalibration();
+        if (calibration != null && stepDegrees > 0) {
+            //same direction as the pulse step
+            axis.moveByAngle(calibration.isReversed() ? stepDegrees : -stepDegrees);
+        } else {
+            axis.moveBy(-step);
+        }
     }
 }
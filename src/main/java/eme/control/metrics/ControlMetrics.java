@@ -0,0 +1,139 @@
+package eme.control.metrics;
+
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Latencies and counters of the control path, shared by the components recording them.
+ * {@link #register()} publishes everything under the "eme.control" JMX domain.
+ */
+public class ControlMetrics implements ControlMetricsMBean {
+    private static final Logger log = Logger.getLogger(ControlMetrics.class);
+
+    public static final String DOMAIN = "eme.control";
+
+    /** one transfer on the bus thread */
+    public static final LatencyHistogram I2C_TRANSFER = new LatencyHistogram("i2c-transfer");
+    /** caller's wait for a bus request, queueing included */
+    public static final LatencyHistogram I2C_REQUEST = new LatencyHistogram("i2c-request");
+    /** command written to pigpiod until its reply was read */
+    public static final LatencyHistogram PIGPIOD_ROUND_TRIP = new LatencyHistogram("pigpiod-round-trip");
+    /** one tracking loop tick: read, control, command */
+    public static final LatencyHistogram TRACK_ITERATION = new LatencyHistogram("track-iteration");
+
+    public static final LatencyHistogram[] HISTOGRAMS = {I2C_TRANSFER, I2C_REQUEST, PIGPIOD_ROUND_TRIP, TRACK_ITERATION};
+
+    /** tracking ticks which started a whole period late */
+    public static final RateCounter LOOP_OVERRUNS = new RateCounter();
+    public static final RateCounter TRACKING_COMMANDS = new RateCounter();
+    public static final RateCounter PIGPIOD_COMMANDS = new RateCounter();
+
+    /** added while running, e.g. one per command bus command */
+    private static final List<LatencyHistogram> COMMANDS = new CopyOnWriteArrayList<LatencyHistogram>();
+
+    public static final ControlMetrics INSTANCE = new ControlMetrics();
+
+    private static boolean registered;
+
+    private ControlMetrics() {
+    }
+
+    public static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName(DOMAIN + ":type=Counters"));
+            for (LatencyHistogram histogram : HISTOGRAMS) {
+                server.registerMBean(histogram, new ObjectName(DOMAIN + ":type=Latency,name=" + histogram.getName()));
+            }
+            for (LatencyHistogram histogram : COMMANDS) {
+                server.registerMBean(histogram, commandName(histogram));
+            }
+            registered = true;
+        } catch (JMException e) {
+            log.warn("register: metrics not available over JMX", e);
+        }
+    }
+
+    private static ObjectName commandName(LatencyHistogram histogram) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Command,name=" + histogram.getName());
+    }
+
+    /**
+     * Adds a command latency to the report, and to JMX once registered.
+     */
+    public static synchronized void addCommand(LatencyHistogram histogram) {
+        COMMANDS.add(histogram);
+        if (registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(histogram, commandName(histogram));
+            } catch (JMException e) {
+                log.warn("addCommand: " + histogram.getName() + " not available over JMX", e);
+            }
+        }
+    }
+
+    /**
+     * @return the fixed histograms followed by the command latencies
+     */
+    public static List<LatencyHistogram> histograms() {
+        List<LatencyHistogram> all = new ArrayList<LatencyHistogram>(HISTOGRAMS.length + COMMANDS.size());
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            all.add(histogram);
+        }
+        all.addAll(COMMANDS);
+        return all;
+    }
+
+    public long getLoopOverruns() {
+        return LOOP_OVERRUNS.getCount();
+    }
+
+    public long getTrackingCommands() {
+        return TRACKING_COMMANDS.getCount();
+    }
+
+    public double getTrackingCommandRate() {
+        return TRACKING_COMMANDS.getRate();
+    }
+
+    public long getPigpiodCommands() {
+        return PIGPIOD_COMMANDS.getCount();
+    }
+
+    public double getPigpiodCommandRate() {
+        return PIGPIOD_COMMANDS.getRate();
+    }
+
+    /**
+     * @return all metrics as "name value" lines
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder(1024);
+        for (LatencyHistogram h : histograms()) {
+            String n = h.getName();
+            sb.append(n).append(".count ").append(h.getCount()).append('\n');
+            sb.append(n).append(".mean_us ").append(String.format("%.1f", h.getMeanNanos() / 1000)).append('\n');
+            sb.append(n).append(".p50_us ").append(h.getP50Nanos() / 1000.0).append('\n');
+            sb.append(n).append(".p90_us ").append(h.getP90Nanos() / 1000.0).append('\n');
+            sb.append(n).append(".p99_us ").append(h.getP99Nanos() / 1000.0).append('\n');
+            sb.append(n).append(".p999_us ").append(h.getP999Nanos() / 1000.0).append('\n');
+            sb.append(n).append(".max_us ").append(h.getMaxNanos() / 1000.0).append('\n');
+        }
+        sb.append("loop.overruns ").append(LOOP_OVERRUNS.getCount()).append('\n');
+        sb.append("tracking.commands ").append(TRACKING_COMMANDS.getCount()).append('\n');
+        sb.append("tracking.commands_per_s ").append(String.format("%.1f", TRACKING_COMMANDS.getRate())).append('\n');
+        sb.append("pigpiod.commands ").append(PIGPIOD_COMMANDS.getCount()).append('\n');
+        sb.append("pigpiod.commands_per_s ").append(String.format("%.1f", PIGPIOD_COMMANDS.getRate())).append('\n');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package eme.control.metrics;
+
+public interface ControlMetricsMBean {
+    long getLoopOverruns();
+
+    long getTrackingCommands();
+
+    double getTrackingCommandRate();
+
+    long getPigpiodCommands();
+
+    double getPigpiodCommandRate();
+}
@@ -0,0 +1,130 @@
+package eme.control.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed memory log-linear histogram of nanosecond latencies in the style of HdrHistogram: exact below 64ns,
+ * then 32 buckets per power of two, so any value is reported within ~3%. Recording is lock free and
+ * allocation free from any number of threads; all values up to 2^62ns fit.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;        //buckets per power of two
+    private static final int LINEAR = 2 * SUB_COUNT;            //values recorded exactly
+    private static final int BUCKETS = LINEAR + (62 - SUB_BITS) * SUB_COUNT;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    static int index(long value) {
+        if (value < LINEAR) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);     //>= SUB_BITS + 1
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_COUNT;             //0..SUB_COUNT-1
+        return LINEAR + (shift - 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return highest value that falls into the bucket
+     */
+    static long highestValue(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_COUNT + 1;
+        long sub = (index - LINEAR) % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        counts.incrementAndGet(index(nanos));
+        total.incrementAndGet();
+        sum.addAndGet(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            //retry
+        }
+    }
+
+    /**
+     * Records the time since start, for the usual {@code long start = System.nanoTime(); ...} pattern.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return value not exceeded by the given share of the recorded values [ns]
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getP50Nanos() {
+        return getValueAtPercentile(50);
+    }
+
+    public long getP90Nanos() {
+        return getValueAtPercentile(90);
+    }
+
+    public long getP99Nanos() {
+        return getValueAtPercentile(99);
+    }
+
+    public long getP999Nanos() {
+        return getValueAtPercentile(99.9);
+    }
+
+    /**
+     * Starts over; values recorded concurrently with the reset may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
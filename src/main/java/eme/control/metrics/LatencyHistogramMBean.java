@@ -0,0 +1,19 @@
+package eme.control.metrics;
+
+public interface LatencyHistogramMBean {
+    long getCount();
+
+    long getMaxNanos();
+
+    double getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP90Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    void reset();
+}
@@ -0,0 +1,86 @@
+package eme.control.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Plain text {@link ControlMetrics#report()} on http://localhost:port/metrics; POST /metrics/reset clears
+ * the histograms. Bound to loopback only; requests are handled on the server's dispatcher thread.
+ */
+public class MetricsHttpServer {
+    private static final Logger log = Logger.getLogger(MetricsHttpServer.class);
+
+    public static final int DEFAULT_PORT = 8090;
+
+    private final HttpServer server;
+
+    public MetricsHttpServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4);
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    if (exchange.getRequestURI().getPath().equals("/metrics/reset")) {
+                        if (!"POST".equals(exchange.getRequestMethod())) {
+                            reply(exchange, 405, "use POST\n");
+                            return;
+                        }
+                        for (LatencyHistogram histogram : ControlMetrics.histograms()) {
+                            histogram.reset();
+                        }
+                        reply(exchange, 200, "reset\n");
+                    } else {
+                        reply(exchange, 200, ControlMetrics.report());
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    /**
+     * Starts the server from a daemon thread, so its dispatcher thread inherits being a daemon and never
+     * keeps the JVM alive.
+     */
+    public void start() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                server.start();
+            }
+        }, "metrics-http");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("start: metrics on http://localhost:" + server.getAddress().getPort() + "/metrics");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,43 @@
+package eme.control.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event counter which also reports the rate over the last completed second.
+ */
+public class RateCounter {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong count = new AtomicLong();
+    private long windowStart = System.nanoTime();
+    private long windowCount;
+    private double rate;
+
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    public void add(long events) {
+        count.addAndGet(events);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return events per second
+     */
+    public synchronized double getRate() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed >= WINDOW_NANOS) {
+            long current = count.get();
+            rate = (current - windowCount) * 1e9 / elapsed;
+            windowCount = current;
+            windowStart = now;
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,42 @@
+package eme.control.record;
+
+/**
+ * One record read back from a recording, reused between reads.
+ */
+public class FlightRecord {
+    public static final int VALUES = 7;
+
+    FlightRecorder.RECORD type;
+    int aux;
+    long nanos;
+    final double[] values = new double[VALUES];
+
+    public FlightRecorder.RECORD getType() {
+        return type;
+    }
+
+    /**
+     * @return sample sequence, lost sample count or gpio, depending on the type
+     */
+    public int getAux() {
+        return aux;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return the value for SETPOINT, MEASUREMENT and COMMAND records
+     */
+    public double getValue() {
+        return values[0];
+    }
+
+    /**
+     * @param index 0..6 for SAMPLE records: acc x/y/z, gyro x/y/z, temperature
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,184 @@
+package eme.control.record;
+
+import eme.control.dev.input.accel.Mpu6050Sample;
+import eme.control.dev.input.accel.Mpu6050SampleListener;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends sensor samples, setpoints, measurements and servo commands as fixed size binary records to
+ * memory mapped segment files {@code <prefix>-NNNNNN.rec}, starting a new segment when one is full.
+ * Unused space at the end of a segment stays zero, which reads back as {@link RECORD#END}.
+ * <p>
+ * Segment layout: header of magic, version, record length and start time [ms], then records of
+ * type (int), aux (int), timestamp [ns] (long) and a 32 byte payload, all little endian.
+ */
+public class FlightRecorder implements Mpu6050SampleListener, Closeable {
+    private static final Logger log = Logger.getLogger(FlightRecorder.class);
+
+    public static final int MAGIC = 0x454D4552;     //"EMER"
+    public static final int VERSION = 2;     //2 added MOVE
+    public static final int HEADER_LENGTH = 24;
+    public static final int RECORD_LENGTH = 48;
+    public static final int PAYLOAD_OFFSET = 16;
+    public static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+    public static final String SUFFIX = ".rec";
+
+    /**
+     * SAMPLE: aux = sequence, payload acc x/y/z, gyro x/y/z, temperature as floats.
+     * OVERFLOW: aux = samples lost. SETPOINT, MEASUREMENT: payload value as double.
+     * COMMAND: the tracking loop's output, aux = gpio, payload pulse as double.
+     * MOVE: a pulse as it reached the axis on the command bus (jog, click, rotctld, tracking), same layout.
+     */
+    public enum RECORD {END, SAMPLE, OVERFLOW, SETPOINT, MEASUREMENT, COMMAND, MOVE}
+
+    private final File directory;
+    private final String prefix;
+    private final int segmentBytes;
+
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private long records;
+    private long failures;
+    private boolean closed;
+
+    public FlightRecorder(File directory, String prefix) throws IOException {
+        this(directory, prefix, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public FlightRecorder(File directory, String prefix, int segmentBytes) throws IOException {
+        if (segmentBytes < HEADER_LENGTH + RECORD_LENGTH) {
+            throw new IllegalArgumentException("segment too small: " + segmentBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentBytes = segmentBytes;
+        rotate();
+    }
+
+    static File segmentFile(File directory, String prefix, int index) {
+        return new File(directory, String.format("%s-%06d%s", prefix, index, SUFFIX));
+    }
+
+    private void rotate() throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        segmentIndex++;
+        File file = segmentFile(directory, prefix, segmentIndex);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } finally {
+            raf.close();    //the mapping stays valid
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(MAGIC).putInt(VERSION).putInt(RECORD_LENGTH).putInt(0).putLong(System.currentTimeMillis());
+        log.debug("rotate: recording to " + file);
+    }
+
+    /**
+     * @return position of a free record, rotating when the segment is full; -1 if recording failed
+     */
+    private int claim() {
+        if (closed) {
+            return -1;
+        }
+        try {
+            if (segment.remaining() < RECORD_LENGTH) {
+                rotate();
+            }
+        } catch (IOException e) {
+            if (failures++ == 0) {
+                log.error("claim: cannot start segment " + segmentIndex + ", recording stopped", e);
+            }
+            closed = true;
+            return -1;
+        }
+        int position = segment.position();
+        segment.position(position + RECORD_LENGTH);
+        records++;
+        return position;
+    }
+
+    //type goes last so a reader never sees a half written record as valid
+    private void header(int position, RECORD type, int aux, long nanos) {
+        segment.putInt(position + 4, aux);
+        segment.putLong(position + 8, nanos);
+        segment.putInt(position, type.ordinal());
+    }
+
+    public synchronized void onSample(Mpu6050Sample sample) {
+        int p = claim();
+        if (p < 0) {
+            return;
+        }
+        int v = p + PAYLOAD_OFFSET;
+        segment.putFloat(v, sample.getAccX());
+        segment.putFloat(v + 4, sample.getAccY());
+        segment.putFloat(v + 8, sample.getAccZ());
+        segment.putFloat(v + 12, sample.getGyroX());
+        segment.putFloat(v + 16, sample.getGyroY());
+        segment.putFloat(v + 20, sample.getGyroZ());
+        segment.putFloat(v + 24, sample.getTemperature());
+        header(p, RECORD.SAMPLE, (int) sample.getSequence(), sample.getTimestamp());
+    }
+
+    public synchronized void onOverflow(long lostSamples) {
+        int p = claim();
+        if (p >= 0) {
+            header(p, RECORD.OVERFLOW, (int) Math.min(lostSamples, Integer.MAX_VALUE), System.nanoTime());
+        }
+    }
+
+    public synchronized void recordSetpoint(long nanos, double value) {
+        recordValue(RECORD.SETPOINT, 0, nanos, value);
+    }
+
+    public synchronized void recordMeasurement(long nanos, double value) {
+        recordValue(RECORD.MEASUREMENT, 0, nanos, value);
+    }
+
+    public synchronized void recordCommand(long nanos, int gpio, int pulse) {
+        recordValue(RECORD.COMMAND, gpio, nanos, pulse);
+    }
+
+    public synchronized void recordMove(long nanos, int gpio, int pulse) {
+        recordValue(RECORD.MOVE, gpio, nanos, pulse);
+    }
+
+    private void recordValue(RECORD type, int aux, long nanos, double value) {
+        int p = claim();
+        if (p >= 0) {
+            segment.putDouble(p + PAYLOAD_OFFSET, value);
+            header(p, type, aux, nanos);
+        }
+    }
+
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segmentIndex + 1;
+    }
+
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            segment.force();
+            log.info("close: " + records + " records in " + (segmentIndex + 1) + " segments");
+        }
+    }
+}
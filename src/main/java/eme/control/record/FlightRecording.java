@@ -0,0 +1,108 @@
+package eme.control.record;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential reader over the segments written by {@link FlightRecorder}.
+ */
+public class FlightRecording implements Closeable {
+    private static final FlightRecorder.RECORD[] TYPES = FlightRecorder.RECORD.values();
+
+    private final File directory;
+    private final String prefix;
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private long startMillis;
+
+    public FlightRecording(File directory, String prefix) throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        if (!open(0)) {
+            throw new IOException("no recording " + FlightRecorder.segmentFile(directory, prefix, 0));
+        }
+    }
+
+    private boolean open(int index) throws IOException {
+        File file = FlightRecorder.segmentFile(directory, prefix, index);
+        if (!file.isFile()) {
+            return false;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        if (segment.remaining() < FlightRecorder.HEADER_LENGTH || segment.getInt() != FlightRecorder.MAGIC) {
+            throw new IOException("not a flight recording: " + file);
+        }
+        int version = segment.getInt();
+        int recordLength = segment.getInt();
+        //every version only added record types
+        if (version < 1 || version > FlightRecorder.VERSION || recordLength != FlightRecorder.RECORD_LENGTH) {
+            throw new IOException("unsupported recording version " + version + ": " + file);
+        }
+        segment.getInt();
+        long start = segment.getLong();
+        if (index == 0) {
+            startMillis = start;
+        }
+        segmentIndex = index;
+        return true;
+    }
+
+    /**
+     * @return false at the end of the recording
+     */
+    public boolean next(FlightRecord target) throws IOException {
+        while (true) {
+            int p = segment.position();
+            if (segment.limit() - p >= FlightRecorder.RECORD_LENGTH) {
+                int type = segment.getInt(p);
+                if (type != FlightRecorder.RECORD.END.ordinal()) {
+                    if (type >= TYPES.length) {
+                        throw new IOException("corrupt record type " + type + " in segment " + segmentIndex);
+                    }
+                    read(p, TYPES[type], target);
+                    segment.position(p + FlightRecorder.RECORD_LENGTH);
+                    return true;
+                }
+            }
+            if (!open(segmentIndex + 1)) {
+                return false;
+            }
+        }
+    }
+
+    private void read(int p, FlightRecorder.RECORD type, FlightRecord target) {
+        target.type = type;
+        target.aux = segment.getInt(p + 4);
+        target.nanos = segment.getLong(p + 8);
+        int v = p + FlightRecorder.PAYLOAD_OFFSET;
+        if (type == FlightRecorder.RECORD.SAMPLE) {
+            for (int i = 0; i < FlightRecord.VALUES; i++) {
+                target.values[i] = segment.getFloat(v + 4 * i);
+            }
+        } else {
+            target.values[0] = segment.getDouble(v);
+        }
+    }
+
+    /**
+     * @return wall clock time [ms] at which the recording started
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public void close() {
+        segment = null;
+    }
+}
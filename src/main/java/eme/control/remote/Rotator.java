@@ -0,0 +1,23 @@
+package eme.control.remote;
+
+import eme.control.ephemeris.HorizontalPosition;
+import eme.control.track.MountLimits;
+
+/**
+ * What a remote client can do with the mount. Implementations must answer {@link #getPosition} from
+ * cached state, it is called on the network thread.
+ */
+public interface Rotator {
+    void getPosition(HorizontalPosition target);
+
+    /**
+     * @return false if the position is outside the limits or the command was not accepted
+     */
+    boolean setPosition(double azimuth, double elevation);
+
+    void stop();
+
+    void park();
+
+    MountLimits getLimits();
+}
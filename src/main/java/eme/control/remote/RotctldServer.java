@@ -0,0 +1,339 @@
+package eme.control.remote;
+
+import eme.control.ephemeris.HorizontalPosition;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Hamlib rotctld compatible TCP server, so WSJT-X/MAP65 and other Hamlib clients can drive the mount.
+ * One selector thread serves all connections. Supported commands, short and long form, optionally with the
+ * '+' extended response prefix: p/\get_pos, P/\set_pos az el, S/\stop, K/\park, _/\get_info, \dump_state,
+ * q/Q to close.
+ */
+public class RotctldServer implements Runnable {
+    private static final Logger log = Logger.getLogger(RotctldServer.class);
+
+    public static final int DEFAULT_PORT = 4533;
+    public static final int MAX_LINE = 256;
+
+    //hamlib error codes, sent negated
+    static final int RIG_OK = 0;
+    static final int RIG_EINVAL = 1;
+    static final int RIG_ENIMPL = 4;
+
+    private static final byte[] RPRT = "RPRT ".getBytes(StandardCharsets.US_ASCII);
+
+    private final Rotator rotator;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final HorizontalPosition position = new HorizontalPosition();
+    private final byte[] line = new byte[MAX_LINE];
+
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long requests;
+
+    public RotctldServer(Rotator rotator, int port) throws IOException {
+        this(rotator, new InetSocketAddress(port));
+    }
+
+    public RotctldServer(Rotator rotator, InetSocketAddress address) throws IOException {
+        this.rotator = rotator;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.socket().setReuseAddress(true);
+        server.bind(address);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "rotctld");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("start: rotctld on port " + getPort());
+    }
+
+    public synchronized void stop() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private static class Client {
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        final ByteBuffer out = ByteBuffer.allocate(4096);
+        boolean closing;
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        log.debug("run: client dropped, " + e.getMessage());
+                        close(key);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("run: select failed", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Client());
+        log.debug("accept: " + channel.getRemoteAddress());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(client.in) < 0) {
+            close(key);
+            return;
+        }
+        client.in.flip();
+        int start = client.in.position();
+        for (int i = start; i < client.in.limit(); i++) {
+            if (client.in.get(i) == '\n') {
+                int length = i - start;
+                client.in.position(start);
+                client.in.get(line, 0, length);
+                client.in.get();    //the newline
+                handle(client, trim(length));
+                start = i + 1;
+            }
+        }
+        client.in.position(start);
+        client.in.compact();
+        if (!client.in.hasRemaining()) {
+            client.in.clear();      //line too long, drop it
+            reply(client.out, -RIG_EINVAL);
+        }
+        write(key);
+    }
+
+    private int trim(int length) {
+        while (length > 0 && (line[length - 1] == '\r' || line[length - 1] == ' ')) {
+            length--;
+        }
+        return length;
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Client client = (Client) key.attachment();
+        client.out.flip();
+        ((SocketChannel) key.channel()).write(client.out);
+        boolean pending = client.out.hasRemaining();
+        client.out.compact();
+        if (pending) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else if (client.closing) {
+            close(key);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            //closing anyway
+        }
+    }
+
+    private void handle(Client client, int length) {
+        if (length == 0) {
+            return;
+        }
+        requests++;
+        ByteBuffer out = client.out;
+        if (out.remaining() < MAX_LINE) {
+            client.closing = true;      //not reading the replies, give up on this client
+            return;
+        }
+        int p = 0;
+        boolean extended = line[0] == '+';
+        if (extended) {
+            p++;
+        }
+        int end = p;
+        while (end < length && line[end] != ' ') {
+            end++;
+        }
+        String command = end - p == 1 ? null : new String(line, p, end - p, StandardCharsets.US_ASCII);
+        char c = end - p == 1 ? (char) line[p] : 0;
+
+        if (c == 'p' || "\\get_pos".equals(command)) {
+            rotator.getPosition(position);
+            if (extended) {
+                ascii(out, "get_pos:\nAzimuth: ");
+            }
+            fixed(out, position.getAzimuth());
+            out.put((byte) '\n');
+            if (extended) {
+                ascii(out, "Elevation: ");
+            }
+            fixed(out, position.getElevation());
+            out.put((byte) '\n');
+            if (extended) {
+                reply(out, RIG_OK);
+            }
+        } else if (c == 'P' || "\\set_pos".equals(command)) {
+            int result = -RIG_EINVAL;
+            String[] args = new String(line, end, length - end, StandardCharsets.US_ASCII).trim().split("\\s+");
+            if (args.length == 2) {
+                try {
+                    if (rotator.setPosition(Double.parseDouble(args[0]), Double.parseDouble(args[1]))) {
+                        result = RIG_OK;
+                    }
+                } catch (NumberFormatException e) {
+                    //invalid
+                }
+            }
+            prefix(out, extended, "set_pos:");
+            reply(out, result);
+        } else if (c == 'S' || "\\stop".equals(command)) {
+            rotator.stop();
+            prefix(out, extended, "stop:");
+            reply(out, RIG_OK);
+        } else if (c == 'K' || "\\park".equals(command)) {
+            rotator.park();
+            prefix(out, extended, "park:");
+            reply(out, RIG_OK);
+        } else if (c == '_' || "\\get_info".equals(command)) {
+            prefix(out, extended, "get_info:");
+            ascii(out, "EME tracker\n");
+        } else if ("\\dump_state".equals(command)) {
+            //as hamlib 4 rotctld: protocol version, model, limits
+            ascii(out, "1\n0\n");
+            ascii(out, "min_az=");
+            fixed(out, rotator.getLimits().getAzimuthMin());
+            ascii(out, "\nmax_az=");
+            fixed(out, rotator.getLimits().getAzimuthMax());
+            ascii(out, "\nmin_el=");
+            fixed(out, rotator.getLimits().getElevationMin());
+            ascii(out, "\nmax_el=");
+            fixed(out, rotator.getLimits().getElevationMax());
+            ascii(out, "\nsouth_zero=0\nrot_type=AzEl\ndone\n");
+        } else if (c == 'q' || c == 'Q') {
+            client.closing = true;
+        } else {
+            reply(out, -RIG_ENIMPL);
+        }
+    }
+
+    private static void prefix(ByteBuffer out, boolean extended, String command) {
+        if (extended) {
+            ascii(out, command);
+            out.put((byte) '\n');
+        }
+    }
+
+    private static void reply(ByteBuffer out, int code) {
+        out.put(RPRT);
+        if (code < 0) {
+            out.put((byte) '-');
+            code = -code;
+        }
+        out.put((byte) ('0' + code));
+        out.put((byte) '\n');
+    }
+
+    private static void ascii(ByteBuffer out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the value with 6 decimals like printf("%f") without allocating.
+     */
+    static void fixed(ByteBuffer out, double value) {
+        long micro = Math.round(value * 1e6);
+        if (micro < 0) {
+            out.put((byte) '-');
+            micro = -micro;
+        }
+        long integer = micro / 1000000;
+        long fraction = micro % 1000000;
+        digits(out, integer, 1);
+        out.put((byte) '.');
+        digits(out, fraction, 6);
+    }
+
+    private static void digits(ByteBuffer out, long value, int minDigits) {
+        int count = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            count++;
+        }
+        for (int i = count; i < minDigits; i++) {
+            out.put((byte) '0');
+        }
+        int start = out.position();
+        out.position(start + count);
+        for (int i = count - 1; i >= 0; i--) {
+            out.put(start + i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+}
@@ -0,0 +1,195 @@
+package eme.control.remote;
+
+import eme.control.dev.output.servo.Axis;
+import eme.control.dev.output.servo.ServoAxis;
+import eme.control.dev.output.servo.ServoCalibration;
+import eme.control.ephemeris.HorizontalPosition;
+import eme.control.gui.actions.Action;
+import eme.control.gui.actions.CommandBus;
+import eme.control.track.MountLimits;
+import eme.control.track.MultiAxisController;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Azimuth/elevation servos driven through the {@link CommandBus}, like the GUI. A new position is reached in a
+ * coordinated move of both axes, ticked on the bus every servo frame by a {@link MultiAxisController}.
+ * <p>
+ * Pulses map through the axis {@link ServoCalibration} when it has one, otherwise linearly onto the mount
+ * limits. The reported elevation is the pitch of the latest sample and the azimuth the latest compass heading
+ * when those are fed in, otherwise the commanded position.
+ */
+public class ServoRotator implements Rotator {
+    private final CommandBus bus;
+    private final MultiAxisController mount;
+    private final ServoAxis azimuth, elevation;
+    private final MountLimits limits;
+    private final ScheduledExecutorService scheduler;
+    private final int tickMs;
+    private final Action stop;
+    private volatile double parkAzimuth, parkElevation;
+
+    //touched on the bus only
+    private final int[] setpoint = new int[Axis.values().length];
+    private ScheduledFuture<?> ticking;     //guarded by this
+
+    private final Action tick = new Action() {
+        public void execute() {
+            mount.tick(setpoint);
+            if (!mount.isMoving()) {
+                stopTicking();
+            }
+        }
+    };
+
+    private volatile double measuredElevation = Double.NaN;
+    private volatile double measuredAzimuth = Double.NaN;
+
+    /**
+     * @param mount     controller of the azimuth and elevation axes
+     * @param scheduler submits the move ticks to the bus
+     * @param tickMs    tick period the controller was built for
+     * @param stop      run at URGENT priority on stop, e.g. the GUI stop; null to only drop queued moves
+     */
+    public ServoRotator(CommandBus bus, MultiAxisController mount, MountLimits limits,
+                        ScheduledExecutorService scheduler, int tickMs, Action stop) {
+        this.bus = bus;
+        this.mount = mount;
+        this.azimuth = mount.getAxis(Axis.AZIMUTH);
+        this.elevation = mount.getAxis(Axis.ELEVATION);
+        this.limits = limits;
+        this.scheduler = scheduler;
+        this.tickMs = tickMs;
+        this.stop = stop != null ? stop : new Action() {
+            public void execute() {
+                ServoRotator.this.bus.cancelMoves();
+            }
+        };
+        this.parkAzimuth = azimuthAngle(azimuth.getConfig().getMidPulse());
+        this.parkElevation = elevationAngle(elevation.getConfig().getMidPulse());
+    }
+
+    public void setPark(double azimuth, double elevation) {
+        this.parkAzimuth = azimuth;
+        this.parkElevation = elevation;
+    }
+
+    public void getPosition(HorizontalPosition target) {
+        double az = measuredAzimuth, el = measuredElevation;
+        target.set(Double.isNaN(az) ? azimuthAngle(azimuth.getPulse()) : az,
+                Double.isNaN(el) ? elevationAngle(elevation.getPulse()) : el, 0, 0);
+    }
+
+    public boolean setPosition(double az, double el) {
+        //clients send 0..360 or -180..180, the mount may need another turn of its travel
+        if (!limits.containsAzimuth(az)) {
+            az += limits.containsAzimuth(az + 360) ? 360 : -360;
+        }
+        if (!limits.containsAzimuth(az) || limits.clampElevation(el) != el) {
+            return false;
+        }
+        final int azPulse = pulse(az, limits.getAzimuthMin(), limits.getAzimuthMax(), azimuth);
+        final int elPulse = pulse(el, limits.getElevationMin(), limits.getElevationMax(), elevation);
+        return bus.submit("rotctld-set_pos", CommandBus.PRIORITY.MOVE, new Action() {
+            public void execute() {
+                setpoint[Axis.AZIMUTH.ordinal()] = azPulse;
+                setpoint[Axis.ELEVATION.ordinal()] = elPulse;
+                mount.tick(setpoint);
+                if (mount.isMoving()) {
+                    startTicking();
+                }
+            }
+        }) != null;
+    }
+
+    public void stop() {
+        bus.submit("rotctld-stop", CommandBus.PRIORITY.URGENT, new Action() {
+            public void execute() throws Exception {
+                halt();
+                stop.execute();
+            }
+        });
+    }
+
+    /**
+     * Ends a move where the axes are now. Runs on the bus, e.g. from the GUI stop.
+     */
+    public void halt() {
+        mount.halt(setpoint);
+        stopTicking();
+    }
+
+    private synchronized void startTicking() {
+        if (ticking == null) {
+            ticking = scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    bus.submit("rotctld-move", CommandBus.PRIORITY.MOVE, tick);
+                }
+            }, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopTicking() {
+        if (ticking != null) {
+            ticking.cancel(false);
+            ticking = null;
+        }
+    }
+
+    /**
+     * @return true while a set_pos move is under way
+     */
+    public boolean isMoving() {
+        return mount.isMoving();
+    }
+
+    public void park() {
+        setPosition(parkAzimuth, parkElevation);
+    }
+
+    public MountLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * @param elevation latest measured elevation [deg], e.g. the fused pitch; NaN to report the commanded one
+     */
+    public void setElevation(double elevation) {
+        measuredElevation = elevation;
+    }
+
+    /**
+     * @param heading latest compass heading [deg], NaN to report the commanded azimuth again
+     */
+    public void setHeading(double heading) {
+        measuredAzimuth = heading;
+    }
+
+    private double azimuthAngle(int pulse) {
+        return angle(pulse, limits.getAzimuthMin(), limits.getAzimuthMax(), azimuth);
+    }
+
+    private double elevationAngle(int pulse) {
+        return angle(pulse, limits.getElevationMin(), limits.getElevationMax(), elevation);
+    }
+
+    private static double angle(int pulse, double min, double max, ServoAxis axis) {
+        ServoCalibration calibration = axis.getCalibration();
+        if (calibration != null) {
+            return calibration.angle(pulse);
+        }
+        int minPulse = axis.getConfig().getMinPulse(), maxPulse = axis.getConfig().getMaxPulse();
+        return min + (pulse - minPulse) * (max - min) / (maxPulse - minPulse);
+    }
+
+    private static int pulse(double angle, double min, double max, ServoAxis axis) {
+        ServoCalibration calibration = axis.getCalibration();
+        if (calibration != null) {
+            return calibration.pulseFor(angle);
+        }
+        int minPulse = axis.getConfig().getMinPulse(), maxPulse = axis.getConfig().getMaxPulse();
+        return (int) Math.round(minPulse + (angle - min) * (maxPulse - minPulse) / (max - min));
+    }
+}
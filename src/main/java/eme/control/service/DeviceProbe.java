@@ -0,0 +1,76 @@
+package eme.control.service;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs device probes side by side under one deadline, so startup takes as long as the slowest device
+ * instead of the sum of all of them. A probe that fails or misses the deadline only leaves its device out;
+ * its thread is a daemon and may stay blocked in a connect without holding anything up.
+ */
+public class DeviceProbe {
+    private static final Logger log = Logger.getLogger(DeviceProbe.class);
+
+    private final long deadline;
+    private final long started = System.nanoTime();
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "probe-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * @param timeoutMs time every probe has from now on
+     */
+    public DeviceProbe(long timeoutMs) {
+        this.deadline = started + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    public <T> Future<T> submit(final String name, final Callable<T> probe) {
+        return executor.submit(new Callable<T>() {
+            public T call() throws Exception {
+                T device = probe.call();
+                log.info("probe: " + name + " ready after "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + "ms");
+                return device;
+            }
+        });
+    }
+
+    /**
+     * Waits for a probe until the common deadline.
+     *
+     * @return the device, null when the probe failed or timed out
+     */
+    public <T> T get(String name, Future<T> probe) throws InterruptedException {
+        try {
+            return probe.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            log.warn("get: " + name + " not available: " + e.getCause());
+        } catch (TimeoutException e) {
+            probe.cancel(true);
+            log.warn("get: " + name + " did not answer in time");
+        }
+        return null;
+    }
+
+    /**
+     * Abandons probes still running.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,50 @@
+package eme.control.service;
+
+import eme.control.track.TrackingLoop;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+/**
+ * Headless entry point: the {@link RotatorService} with rotctld, telemetry and metrics as its only user
+ * interfaces. AWT is never loaded, so it runs without a display and in a small heap; the GUI
+ * ({@link eme.control.gui.MainPanel}) stays available as a separate client entry point. Motion is stopped
+ * on SIGTERM/SIGINT; the exit command ends the JVM from the main thread.
+ */
+public class RotatorDaemon {
+    private static final Logger log = Logger.getLogger(RotatorDaemon.class);
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        if (!Logger.getRootLogger().getAllAppenders().hasMoreElements()) {
+            BasicConfigurator.configure();
+        }
+        long started = System.nanoTime();
+
+        final RotatorService service = new RotatorService();
+        service.setStatusListener(new RotatorService.StatusListener() {
+            public void status(String message) {
+                log.info(message);
+            }
+
+            public void position(int pulse) {
+            }
+
+            public void tracking(TrackingLoop loop) {
+                log.info(loop != null ? "tracking started" : "tracking stopped");
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                try {
+                    service.shutdown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "shutdown"));
+        service.start();
+        log.info("main: running headless after " + (System.nanoTime() - started) / 1000000 + "ms");
+        service.awaitExit();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,834 @@
+package eme.control.service;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CDevice;
+import com.pi4j.io.i2c.I2CFactory;
+import eme.control.dev.bus.I2CBusScheduler;
+import eme.control.dev.bus.I2CTransaction;
+import eme.control.dev.input.accel.Mpu6050;
+import eme.control.dev.input.accel.Mpu6050DataReadyStream;
+import eme.control.dev.input.accel.Mpu6050Sample;
+import eme.control.dev.input.accel.Mpu6050SampleListener;
+import eme.control.dev.input.accel.SampleRingBuffer;
+import eme.control.dev.input.compass.CompassSample;
+import eme.control.dev.input.compass.Hmc5883l;
+import eme.control.dev.input.compass.Magnetometer;
+import eme.control.dev.input.compass.MagnetometerCalibration;
+import eme.control.dev.input.compass.Qmc5883l;
+import eme.control.dev.output.servo.Axis;
+import eme.control.dev.output.servo.AxisConfig;
+import eme.control.dev.output.servo.MessageSender;
+import eme.control.dev.output.servo.ServoAxis;
+import eme.control.dev.output.servo.ServoCalibration;
+import eme.control.dev.output.servo.ServoDriver;
+import eme.control.ephemeris.HorizontalPosition;
+import eme.control.ephemeris.Station;
+import eme.control.fusion.AttitudeFusion;
+import eme.control.gui.actions.Action;
+import eme.control.gui.actions.CommandBus;
+import eme.control.gui.actions.RotateLeftAction;
+import eme.control.gui.actions.RotateRightAction;
+import eme.control.metrics.ControlMetrics;
+import eme.control.metrics.MetricsHttpServer;
+import eme.control.record.FlightRecorder;
+import eme.control.remote.RotctldServer;
+import eme.control.remote.ServoRotator;
+import eme.control.sim.Simulation;
+import eme.control.telemetry.TelemetryFrame;
+import eme.control.telemetry.TelemetryLog;
+import eme.control.telemetry.TelemetryPublisher;
+import eme.control.telemetry.TelemetrySource;
+import eme.control.track.FaradaySetpoint;
+import eme.control.track.Jog;
+import eme.control.track.MeasurementSource;
+import eme.control.track.MoonReference;
+import eme.control.track.MountLimits;
+import eme.control.track.MultiAxisController;
+import eme.control.track.PidController;
+import eme.control.track.ServoCalibrator;
+import eme.control.track.ServoOutput;
+import eme.control.track.SetpointSource;
+import eme.control.track.TrackingLoop;
+import eme.control.track.TrajectoryFollower;
+import eme.control.track.TrajectoryPlanner;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static eme.control.dev.input.accel.Mpu6050.MPU6050_I2C_ADDRESS;
+
+/**
+ * The rotator without a user interface: devices, command bus, tracking, calibration, rotctld, telemetry and
+ * metrics. Nothing here touches AWT, so it runs as a headless daemon ({@link RotatorDaemon}) or under the GUI
+ * as one of its clients.
+ * <p>
+ * Devices are probed in parallel by {@link #start()}. Only pigpiod is required; without the MPU-6050 tracking
+ * and calibration are refused, without a compass the azimuth is reported from the commanded pulse.
+ */
+public class RotatorService {
+    private static final Logger log = Logger.getLogger(RotatorService.class);
+
+    public enum ACTIONS {
+        COMMAND_ROT_LEFT(CommandBus.PRIORITY.MOVE),
+        COMMAND_ROT_RIGHT(CommandBus.PRIORITY.MOVE),
+        COMMAND_EXIT(CommandBus.PRIORITY.URGENT),
+        COMMAND_STOP(CommandBus.PRIORITY.URGENT),
+        COMMAND_TRACK(CommandBus.PRIORITY.CONTROL),
+        COMMAND_CALIBRATE(CommandBus.PRIORITY.CONTROL),
+        COMMAND_MOON(CommandBus.PRIORITY.CONTROL);
+
+        public final CommandBus.PRIORITY priority;
+
+        ACTIONS(CommandBus.PRIORITY priority) {
+            this.priority = priority;
+        }
+    };
+
+    /**
+     * What the service reports to its user interface, called from the service threads.
+     */
+    public interface StatusListener {
+        void status(String message);
+
+        /**
+         * @param pulse new commanded pulse of the polarity axis, called on the command bus
+         */
+        void position(int pulse);
+
+        /**
+         * @param loop the tracking loop just started, null when tracking stopped
+         */
+        void tracking(TrackingLoop loop);
+    }
+
+    public static final String PIGPIOD_HOST = "localhost";
+    public static final int PIGPIOD_PORT = 8888;
+    public static final long PROBE_TIMEOUT_MS = 5000;
+
+    //rotctld clients see the az/el servos mapped onto these limits
+    static final MountLimits ROTATOR_LIMITS = new MountLimits(0, 360, 0, 90);
+
+    //jog speed ramps from the old click repeat rate (one step per 200ms) to the axis limit
+    static final int JOG_START_SPEED = MessageSender.PULSE_STEP_PER_CLICK * 5;     //us per second
+    static final int JOG_RAMP_MS = 2000;
+    //click step once the axis is calibrated, about PULSE_STEP_PER_CLICK of a linear 180 deg servo
+    static final double CLICK_DEGREES = 4.5;
+
+    //controller tuning, pulse [us] per roll [deg]; a bigger pulse turns the mount towards smaller roll
+    static final double TRACK_KP = 4.0;
+    static final double TRACK_KI = 6.0;
+    static final double TRACK_KD = 0.2;
+    static final double TRACK_MAX_SLEW = 400;   //us per second
+    static final int TRACK_PERIOD_MS = 20;      //one servo frame
+    static final double TRACK_MAX_CORRECTION = 150;     //us the controller may add to the calibrated pulse
+
+    //calibration sweep, settles in well under a second per point on the bench
+    static final int CALIBRATION_SETTLE_MS = 500;
+    static final int CALIBRATION_SAMPLES = 10;
+    static final int CALIBRATION_SAMPLE_MS = 20;
+
+    //one sample per tracking tick, filtered well below the 25Hz Nyquist limit
+    static final int SAMPLE_DLPF = Mpu6050.DLPF_CFG_20HZ;
+    static final int SAMPLE_DIVIDER = 19;
+    static final int COMPASS_PERIOD_MS = 100;
+    static final int SAMPLE_WAIT_MS = 500;     //many sample periods, the first sample after start included
+
+    //moon pass: setpoints a second apart, handed to the rotator as often; it slews in coordinated moves between
+    static final int MOON_STEP_MS = 1000;
+    static final int MOON_CHUNK_POINTS = 600;
+    static final int MOON_PERIOD_MS = 1000;
+
+    private static final StatusListener NO_LISTENER = new StatusListener() {
+        public void status(String message) {
+        }
+
+        public void position(int pulse) {
+        }
+
+        public void tracking(TrackingLoop loop) {
+        }
+    };
+
+    private volatile StatusListener listener = NO_LISTENER;
+
+    private final TelemetryLog telemetry = new TelemetryLog();
+    //every move goes through the bus, so the axis positions have a single writer
+    private final CommandBus commands = new CommandBus();
+    //latest sensor samples, read by tracking, rotctld and telemetry
+    private final SampleRingBuffer samples = new SampleRingBuffer(64);
+    private final Map<ACTIONS, Action> actions = new EnumMap<ACTIONS, Action>(ACTIONS.class);
+    //control thread: jog timing and long press detection of the GUI
+    private final ScheduledExecutorService control = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "control");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private I2CBusScheduler i2c;
+    private Mpu6050 chip;
+    private Magnetometer compass;
+    private int compassAddress;
+    private MessageSender sender;
+    private ServoDriver servo;
+    private AxisConfig polarity;
+    private ServoAxis axis, azimuth, elevation;
+    private ServoRotator rotator;
+    private Mpu6050DataReadyStream sampling;
+    //fused roll/pitch, null when -Deme.attitude=raw uses the accelerometer alone
+    private AttitudeFusion fusion;
+    private Jog jog;
+    private volatile boolean started;
+
+    private volatile TrackingLoop tracker;
+    private MultiAxisController mount;
+    //open while a tracking session is recorded, written from the bus and the sampling thread
+    private volatile FlightRecorder recorder;
+    private volatile Thread calibrating;
+    //pointing az/el at the moon, both null when not following; touched on the bus only
+    private ScheduledFuture<?> moon;
+    private TrajectoryFollower moonFollower;
+    private final CountDownLatch exitRequested = new CountDownLatch(1);
+
+    public void setStatusListener(StatusListener listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    /**
+     * Probes the devices and starts every service, then centres the polarity axis.
+     *
+     * @throws IOException when pigpiod cannot be reached or the configuration is broken
+     */
+    public synchronized void start() throws IOException, InterruptedException {
+        if (started) {
+            return;
+        }
+        AxisConfig[] axes = AxisConfig.load();
+        ServoCalibration[] calibrations = ServoCalibration.load();
+        polarity = required(axes, Axis.POLARITY);
+        AxisConfig az = required(axes, Axis.AZIMUTH);
+        AxisConfig el = required(axes, Axis.ELEVATION);
+        probeDevices();
+
+        servo = new ServoDriver(sender);
+        servo.start();
+        axis = new ServoAxis(servo, polarity);
+        azimuth = new ServoAxis(servo, az);
+        elevation = new ServoAxis(servo, el);
+        axis.setCalibration(calibrations[Axis.POLARITY.ordinal()]);
+        azimuth.setCalibration(calibrations[Axis.AZIMUTH.ordinal()]);
+        elevation.setCalibration(calibrations[Axis.ELEVATION.ordinal()]);
+        commands.start();
+        telemetry.start();
+        ControlMetrics.register();
+        new MetricsHttpServer(Integer.getInteger("eme.metrics.port", MetricsHttpServer.DEFAULT_PORT)).start();
+
+        createActions();
+        jog = new Jog(control, busOutput("jog", CommandBus.PRIORITY.MOVE),
+                polarity.getMinPulse(), polarity.getMaxPulse(), JOG_START_SPEED, polarity.getMaxSpeed(), JOG_RAMP_MS);
+        startRotctld();
+        startTelemetry();
+        started = true;
+
+        commands.submit("init", CommandBus.PRIORITY.CONTROL, new Action() {
+            public void execute() {
+                moved(axis.moveTo(polarity.getMidPulse()));
+            }
+        });
+    }
+
+    /**
+     * @throws IOException naming the axis when axes.properties leaves it out, the service drives all three
+     */
+    private static AxisConfig required(AxisConfig[] axes, Axis axis) throws IOException {
+        AxisConfig config = axes[axis.ordinal()];
+        if (config == null) {
+            throw new IOException("axis." + axis.name() + ".gpio missing from the axis configuration");
+        }
+        return config;
+    }
+
+    /**
+     * Opens the I2C bus, finds the MPU-6050 and compass on it and connects to pigpiod, all at once.
+     * -Deme.probe.timeoutMs bounds the whole probe, -Deme.pigpiod.host and -Deme.pigpiod.port name the daemon.
+     */
+    private void probeDevices() throws IOException, InterruptedException {
+        final String host = System.getProperty("eme.pigpiod.host", PIGPIOD_HOST);
+        final int port = Integer.getInteger("eme.pigpiod.port", PIGPIOD_PORT);
+        final Simulation simulation = Simulation.isEnabled() ? Simulation.start(port) : null;
+
+        DeviceProbe probe = new DeviceProbe(Long.getLong("eme.probe.timeoutMs", PROBE_TIMEOUT_MS));
+        final Future<I2CBusScheduler> bus = probe.submit("i2c", new Callable<I2CBusScheduler>() {
+            public I2CBusScheduler call() throws Exception {
+                I2CBus raw = simulation != null ? simulation.getBus() : I2CFactory.getInstance(I2CBus.BUS_1);
+                I2CBusScheduler scheduler = new I2CBusScheduler(raw, I2CBusScheduler.CLOCK_400KHZ);
+                scheduler.start();
+                return scheduler;
+            }
+        });
+        Future<Mpu6050> mpu = probe.submit("MPU-6050", new Callable<Mpu6050>() {
+            public Mpu6050 call() throws Exception {
+                Mpu6050 found = new Mpu6050(bus.get().getBus(I2CBusScheduler.PRIORITY.CONTROL));
+                found.init(MPU6050_I2C_ADDRESS);
+                return found;
+            }
+        });
+        Future<Magnetometer> magnetometer = probe.submit("compass", new Callable<Magnetometer>() {
+            public Magnetometer call() throws Exception {
+                return findCompass(bus.get().getBus(I2CBusScheduler.PRIORITY.SENSOR));
+            }
+        });
+        Future<MessageSender> pigpiod = probe.submit("pigpiod", new Callable<MessageSender>() {
+            public MessageSender call() throws Exception {
+                return new MessageSender(host, port, polarity.getGpio());
+            }
+        });
+
+        i2c = probe.get("i2c", bus);
+        chip = probe.get("MPU-6050", mpu);
+        compass = probe.get("compass", magnetometer);
+        sender = probe.get("pigpiod", pigpiod);
+        probe.shutdown();
+        if (sender == null) {
+            throw new IOException("pigpiod not reachable at " + host + ":" + port);
+        }
+    }
+
+    /**
+     * @return the QMC5883L or, failing that, the HMC5883L
+     */
+    private Magnetometer findCompass(I2CBus bus) throws IOException {
+        Magnetometer found;
+        try {
+            found = new Qmc5883l(bus);
+            found.init(Qmc5883l.QMC5883L_I2C_ADDRESS);
+            compassAddress = Qmc5883l.QMC5883L_I2C_ADDRESS;
+        } catch (IOException e) {
+            found = new Hmc5883l(bus);
+            found.init(Hmc5883l.HMC5883L_I2C_ADDRESS);
+            compassAddress = Hmc5883l.HMC5883L_I2C_ADDRESS;
+        }
+        String calibration = System.getProperty("eme.compass.calibration");
+        if (calibration != null) {
+            found.setCalibration(MagnetometerCalibration.load(calibration));
+        }
+        return found;
+    }
+
+    private void createActions() {
+        actions.put(ACTIONS.COMMAND_ROT_LEFT, reporting(new RotateLeftAction(axis, MessageSender.PULSE_STEP_PER_CLICK, CLICK_DEGREES)));
+        actions.put(ACTIONS.COMMAND_ROT_RIGHT, reporting(new RotateRightAction(axis, MessageSender.PULSE_STEP_PER_CLICK, CLICK_DEGREES)));
+        actions.put(ACTIONS.COMMAND_TRACK, new Action() {
+            public void execute() throws Exception {
+                track();
+            }
+        });
+        actions.put(ACTIONS.COMMAND_CALIBRATE, new Action() {
+            public void execute() {
+                calibrate();
+            }
+        });
+        actions.put(ACTIONS.COMMAND_MOON, new Action() {
+            public void execute() {
+                moon();
+            }
+        });
+        actions.put(ACTIONS.COMMAND_STOP, new Action() {
+            public void execute() {
+                stop();
+            }
+        });
+        actions.put(ACTIONS.COMMAND_EXIT, new Action() {
+            public void execute() {
+                stop();
+                exitRequested.countDown();      //the main thread ends the JVM, see awaitExit
+            }
+        });
+    }
+
+    /**
+     * @return false when the bus was full and the command dropped
+     */
+    public boolean submit(ACTIONS action) {
+        return commands.submit(action.name(), action.priority, actions.get(action)) != null;
+    }
+
+    /**
+     * Starts ramping the polarity axis, ignored while tracking.
+     *
+     * @param direction 1 for growing pulses, -1 for shrinking
+     */
+    public boolean jog(int direction) {
+        if (isTracking()) {
+            status("tracking, jog ignored");
+            return false;
+        }
+        jog.start(axis.getPulse(), direction);
+        return true;
+    }
+
+    public void stopJog() {
+        jog.stop();
+    }
+
+    /**
+     * Blocks until {@link ACTIONS#COMMAND_EXIT} stopped every motion. The entry point calls it and then ends the
+     * JVM itself, so shutdown hooks never wait for the command bus they run on.
+     */
+    public void awaitExit() throws InterruptedException {
+        exitRequested.await();
+    }
+
+    /**
+     * Halts every motion and waits up to a second for it, for shutdown hooks.
+     */
+    public void shutdown() throws InterruptedException {
+        if (!started) {
+            return;
+        }
+        final CountDownLatch stopped = new CountDownLatch(1);
+        commands.submit("shutdown", CommandBus.PRIORITY.URGENT, new Action() {
+            public void execute() {
+                stop();
+                stopped.countDown();
+            }
+        });
+        stopped.await(1, TimeUnit.SECONDS);
+        commands.stop();
+    }
+
+    /**
+     * @return output that moves the polarity axis through the command bus, throwing when the bus is full
+     */
+    private ServoOutput busOutput(final String name, final CommandBus.PRIORITY priority) {
+        return new ServoOutput() {
+            public void setPulse(final int pulse) throws IOException {
+                Action move = new Action() {
+                    public void execute() {
+                        moved(axis.moveTo(pulse));
+                    }
+                };
+                if (commands.submit(name, priority, move) == null) {
+                    throw new IOException(name + ": command bus full, pulse " + pulse + " not queued");
+                }
+            }
+        };
+    }
+
+    //runs on the command bus
+    private void moved(int pulse) {
+        FlightRecorder r = recorder;
+        if (r != null) {
+            r.recordMove(System.nanoTime(), polarity.getGpio(), pulse);
+        }
+        telemetry.record(TelemetryLog.EVENT.POSITION, pulse);
+        listener.position(pulse);
+    }
+
+    private Action reporting(final Action move) {
+        return new Action() {
+            public void execute() throws Exception {
+                move.execute();
+                moved(axis.getPulse());
+            }
+        };
+    }
+
+    private void status(String message) {
+        log.debug(message);
+        listener.status(message);
+    }
+
+    //runs on the command bus, never on the EDT
+    private void track() throws Exception {
+        if (isTracking()) {
+            tracker.stop();
+            closeRecorder();
+            listener.tracking(null);
+            status("tracking stopped, commands=" + tracker.getCommandCount());
+            return;
+        }
+        if (chip == null || calibrating != null) {
+            status(chip == null ? "no MPU-6050, tracking not started" : "calibrating, tracking not started");
+            return;
+        }
+
+        MeasurementSource roll = latestRoll("track");
+        final double initialRoll = roll.read();
+        FaradaySetpoint setpoint = new FaradaySetpoint(initialRoll);    //Faraday's data feeds setFaradayRotation
+        ServoCalibration calibration = axis.getCalibration();
+        //calibrated, the setpoint maps straight to a pulse and the controller only trims it
+        PidController pid = calibration != null
+                ? new PidController(TRACK_KP, TRACK_KI, TRACK_KD, -TRACK_MAX_CORRECTION, TRACK_MAX_CORRECTION,
+                        TRACK_MAX_SLEW, PidController.ACTION.REVERSE)
+                : new PidController(TRACK_KP, TRACK_KI, TRACK_KD, polarity.getMinPulse(), polarity.getMaxPulse(),
+                        TRACK_MAX_SLEW, PidController.ACTION.REVERSE);
+        tracker = new TrackingLoop(roll, setpoint, pid, busOutput("track", CommandBus.PRIORITY.CONTROL),
+                TRACK_PERIOD_MS);
+        tracker.setCalibration(calibration);
+        tracker.setTelemetry(telemetry);
+        String recordDir = System.getProperty("eme.record");  //-Deme.record=<dir> keeps every session
+        closeRecorder();    //left open by a loop that ended on its own
+        if (recordDir != null) {
+            recorder = new FlightRecorder(new File(recordDir), "track-" + System.currentTimeMillis());
+            tracker.setRecorder(recorder, polarity.getGpio());
+            mount.setRecorder(recorder);
+        }
+        tracker.start(axis.getPulse());
+        log.info("track: started at r=" + (int) initialRoll);
+        listener.tracking(tracker);
+    }
+
+    /**
+     * Sweeps the polarity axis and stores its pulse to roll curve. Takes minutes, so it runs on its own
+     * thread issuing moves through the bus; stop aborts it.
+     */
+    private void calibrate() {
+        if (isTracking() || calibrating != null || chip == null) {
+            status("busy or no MPU-6050, calibration not started");
+            return;
+        }
+        final ServoCalibrator calibrator = new ServoCalibrator(busOutput("calibrate", CommandBus.PRIORITY.CONTROL),
+                latestRoll("calibrate"), CALIBRATION_SETTLE_MS, CALIBRATION_SAMPLES, CALIBRATION_SAMPLE_MS);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    status("calibrating " + polarity.getAxis());
+                    ServoCalibration calibration = calibrator.calibrate(polarity.getMinPulse(),
+                            polarity.getMaxPulse(), MessageSender.PULSE_STEP_PER_CLICK);
+                    calibration.save(polarity.getAxis());
+                    axis.setCalibration(calibration);
+                    status("calibrated " + calibration);
+                } catch (InterruptedException e) {
+                    status("calibration aborted");
+                } catch (IOException e) {
+                    log.warn("calibrate: failed", e);
+                    listener.status(e.getLocalizedMessage());
+                } finally {
+                    calibrating = null;
+                }
+            }
+        }, "calibration");
+        thread.setDaemon(true);
+        calibrating = thread;
+        thread.start();
+    }
+
+    /**
+     * Points the az/el axes at the moon, or stops following it. The pass is planned over
+     * {@link MoonReference#DEFAULT_SESSION_HOURS} onto the rotator limits and played back once a
+     * {@link #MOON_PERIOD_MS} through {@link ServoRotator#setPosition(double, double)}, so the rotator's coordinated
+     * moves do the slewing. -Deme.station=lat,lon[,height] gives the antenna location. Runs on the command bus.
+     */
+    private void moon() {
+        if (moon != null) {
+            stopMoon();
+            status("moon tracking stopped");
+            return;
+        }
+        Station station = station(System.getProperty("eme.station"));
+        if (station == null) {
+            status("no -Deme.station=lat,lon, moon tracking not started");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        TrajectoryPlanner planner = new TrajectoryPlanner(new MoonReference(station), ROTATOR_LIMITS, now,
+                now + TimeUnit.HOURS.toMillis(MoonReference.DEFAULT_SESSION_HOURS), MOON_STEP_MS);
+        final TrajectoryFollower follower = new TrajectoryFollower(planner, MOON_CHUNK_POINTS);
+        final SetpointSource az = follower.azimuthSetpoint();
+        final SetpointSource el = follower.elevationSetpoint();
+        moon = control.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                double a = az.getSetpoint(), e = el.getSetpoint();
+                if (follower.isFinished()) {
+                    commands.submit("moon-end", CommandBus.PRIORITY.CONTROL, new Action() {
+                        public void execute() {
+                            if (moonFollower == follower) {
+                                stopMoon();
+                                status("moon pass ended");
+                            }
+                        }
+                    });
+                } else if (!rotator.setPosition(a, e)) {
+                    log.warn("moon: az=" + a + ", el=" + e + " not accepted");
+                }
+            }
+        }, 0, MOON_PERIOD_MS, TimeUnit.MILLISECONDS);
+        moonFollower = follower;
+        log.info("moon: following from " + station + ", unwinds=" + planner.getUnwindCount());
+        status("tracking the moon");
+    }
+
+    private void stopMoon() {
+        if (moon != null) {
+            moon.cancel(false);
+            moon = null;
+            moonFollower = null;
+        }
+    }
+
+    /**
+     * @param location "lat,lon" or "lat,lon,height" [deg, deg, m]
+     * @return null when missing or malformed
+     */
+    private static Station station(String location) {
+        if (location == null) {
+            return null;
+        }
+        String[] fields = location.split(",");
+        try {
+            return fields.length < 2 ? null : new Station(Double.parseDouble(fields[0].trim()),
+                    Double.parseDouble(fields[1].trim()), fields.length > 2 ? Double.parseDouble(fields[2].trim()) : 0);
+        } catch (IllegalArgumentException e) {
+            log.warn("station: " + location + " ignored, " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Remote control for Hamlib clients on -Deme.rotctld.port (4533), sharing the command bus and stop
+     * with the GUI. Position queries are answered from the latest data ready sample and compass heading.
+     */
+    private void startRotctld() throws IOException {
+        ServoAxis[] axes = new ServoAxis[Axis.values().length];
+        axes[Axis.AZIMUTH.ordinal()] = azimuth;
+        axes[Axis.ELEVATION.ordinal()] = elevation;
+        mount = new MultiAxisController(servo, axes, ServoDriver.SERVO_FRAME_MS);
+        rotator = new ServoRotator(commands, mount, ROTATOR_LIMITS, control, ServoDriver.SERVO_FRAME_MS,
+                actions.get(ACTIONS.COMMAND_STOP));
+        if (chip != null) {
+            startSampling(rotator);
+        }
+        if (compass != null) {
+            startCompass();
+        }
+        new RotctldServer(rotator, Integer.getInteger("eme.rotctld.port", RotctldServer.DEFAULT_PORT)).start();
+    }
+
+    /**
+     * Reads the MPU-6050 when a sample is ready, fuses it into the attitude and publishes it to {@link #samples}
+     * and the rotator. -Deme.mpu6050.int names the BCM GPIO wired to INT, without it a timer polls the data
+     * ready flag; -Deme.mpu6050.dlpf and -Deme.mpu6050.divider override the CONFIG and SMPLRT_DIV settings.
+     * -Deme.attitude selects the COMPLEMENTARY (default) or KALMAN filter, RAW uses the accelerometer alone.
+     */
+    private void startSampling(final ServoRotator rotator) throws IOException {
+        String attitude = System.getProperty("eme.attitude", AttitudeFusion.FILTER.COMPLEMENTARY.name());
+        fusion = "RAW".equalsIgnoreCase(attitude)
+                ? null : new AttitudeFusion(AttitudeFusion.FILTER.valueOf(attitude.toUpperCase()));
+        Integer pin = Integer.getInteger("eme.mpu6050.int");
+        sampling = new Mpu6050DataReadyStream(chip,
+                Integer.getInteger("eme.mpu6050.dlpf", SAMPLE_DLPF),
+                Integer.getInteger("eme.mpu6050.divider", SAMPLE_DIVIDER),
+                pin != null ? Mpu6050DataReadyStream.provisionInterruptPin(pin) : null, new Mpu6050SampleListener() {
+            public void onSample(Mpu6050Sample sample) {
+                //fused first, so whoever sees the sample in the ring finds the attitude updated with it
+                if (fusion != null) {
+                    fusion.onSample(sample);
+                }
+                rotator.setElevation(pitch(sample));
+                samples.onSample(sample);
+                FlightRecorder r = recorder;
+                if (r != null) {
+                    r.onSample(sample);
+                }
+            }
+
+            public void onOverflow(long lostSamples) {
+                if (fusion != null) {
+                    fusion.onOverflow(lostSamples);
+                }
+                samples.onOverflow(lostSamples);
+                FlightRecorder r = recorder;
+                if (r != null) {
+                    r.onOverflow(lostSamples);
+                }
+            }
+        });
+        log.info("startSampling: attitude " + (fusion != null ? attitude.toUpperCase() : "from the accelerometer"));
+        sampling.start();
+    }
+
+    /**
+     * Polls the compass on the bus thread, tilt compensated with the latest sample, and feeds the heading
+     * to the rotator as azimuth.
+     */
+    private void startCompass() {
+        final SampleRingBuffer.Cursor latest = samples.newCursor("compass");
+        final Mpu6050Sample sample = new Mpu6050Sample();
+        final AttitudeFusion.Attitude attitude = new AttitudeFusion.Attitude();
+        final CompassSample heading = new CompassSample();
+        i2c.schedule(compassAddress, I2CBusScheduler.PRIORITY.SENSOR, COMPASS_PERIOD_MS, new I2CTransaction() {
+            public void execute(I2CDevice device) throws IOException {
+                latest.pollLatest(sample);
+                attitude(sample, attitude);
+                compass.readSample(heading, attitude.getRoll(), attitude.getPitch());
+                rotator.setHeading(heading.getHeading());
+            }
+        });
+    }
+
+    /**
+     * @return fused roll, or the accelerometer roll of the sample in raw mode
+     */
+    private double roll(Mpu6050Sample sample) {
+        AttitudeFusion f = fusion;
+        return f != null ? f.getRoll() : sample.getRoll();
+    }
+
+    private double pitch(Mpu6050Sample sample) {
+        AttitudeFusion f = fusion;
+        return f != null ? f.getPitch() : sample.getPitch();
+    }
+
+    /**
+     * Fills target with fused roll and pitch of one update, or those of the sample in raw mode.
+     */
+    private void attitude(Mpu6050Sample sample, AttitudeFusion.Attitude target) {
+        AttitudeFusion f = fusion;
+        if (f != null) {
+            f.read(target);
+        } else {
+            target.set(sample.getRoll(), sample.getPitch(), sample.getTimestamp());
+        }
+    }
+
+    /**
+     * @return roll as of the newest sample, repeated until the next one lands; the chip itself is only ever
+     * read by the sampling thread
+     */
+    private MeasurementSource latestRoll(String consumer) {
+        final SampleRingBuffer.Cursor cursor = samples.newCursor(consumer);
+        final Mpu6050Sample sample = new Mpu6050Sample();
+        return new MeasurementSource() {
+            private double roll = Double.NaN;
+
+            public double read() throws IOException {
+                if (cursor.pollLatest(sample)) {
+                    roll = roll(sample);
+                } else if (Double.isNaN(roll)) {
+                    awaitSample(cursor, sample);     //nothing published yet
+                    roll = roll(sample);
+                }
+                return roll;
+            }
+        };
+    }
+
+    /**
+     * Waits up to {@link #SAMPLE_WAIT_MS} for the sampling thread to publish a sample.
+     */
+    private static void awaitSample(SampleRingBuffer.Cursor cursor, Mpu6050Sample target) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SAMPLE_WAIT_MS);
+        while (!cursor.pollLatest(target)) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("interrupted waiting for an MPU-6050 sample");
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw new IOException("no MPU-6050 sample within " + SAMPLE_WAIT_MS + "ms");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Multicast state for dashboards, see {@link TelemetryPublisher} for the group and rate properties.
+     */
+    private void startTelemetry() throws IOException {
+        final SampleRingBuffer.Cursor latest = samples.newCursor("telemetry");
+        final Mpu6050Sample sample = new Mpu6050Sample();
+        final AttitudeFusion.Attitude attitude = new AttitudeFusion.Attitude();
+        final HorizontalPosition position = new HorizontalPosition();
+        TelemetrySource source = new TelemetrySource() {
+            public void fill(TelemetryFrame frame) {
+                if (latest.pollLatest(sample)) {
+                    attitude(sample, attitude);
+                    frame.setAttitude(attitude.getRoll(), attitude.getPitch());
+                }
+                TrackingLoop loop = tracker;
+                boolean tracking = loop != null && loop.isRunning();
+                frame.setTracking(tracking, tracking ? loop.getSetpoint().getSetpoint() : 0,
+                        tracking ? loop.getLastError() : 0);
+                frame.setPulses(azimuth.getPulse(), elevation.getPulse(), axis.getPulse());
+                rotator.getPosition(position);
+                frame.setPosition(position.getAzimuth(), position.getElevation());
+            }
+        };
+        InetSocketAddress group = new InetSocketAddress(
+                System.getProperty("eme.telemetry.group", TelemetryPublisher.DEFAULT_GROUP),
+                Integer.getInteger("eme.telemetry.port", TelemetryPublisher.DEFAULT_PORT));
+        new TelemetryPublisher(source, group,
+                Integer.getInteger("eme.telemetry.rate", TelemetryPublisher.DEFAULT_RATE_HZ), 1).start();
+    }
+
+    private void closeRecorder() {
+        FlightRecorder r = recorder;
+        if (r != null) {
+            recorder = null;
+            mount.setRecorder(null);
+            r.close();
+        }
+    }
+
+    //runs on the command bus: halts every motion and drops moves still queued
+    private void stop() {
+        jog.stop();
+        stopMoon();
+        rotator.halt();
+        int dropped = commands.cancelMoves();
+        Thread c = calibrating;
+        if (c != null) {
+            c.interrupt();
+        }
+        if (isTracking()) {
+            tracker.stop();
+            closeRecorder();
+            listener.tracking(null);
+        }
+        status("stopped at pos=" + axis.getPulse() + ", dropped moves=" + dropped);
+    }
+
+    public boolean isTracking() {
+        TrackingLoop loop = tracker;
+        return loop != null && loop.isRunning();
+    }
+
+    /**
+     * @return the polarity axis
+     */
+    public ServoAxis getAxis() {
+        return axis;
+    }
+
+    public ScheduledExecutorService getControl() {
+        return control;
+    }
+
+    /**
+     * @return the accelerometer, null when it was not found
+     */
+    public Mpu6050 getChip() {
+        return chip;
+    }
+
+    /**
+     * @return the compass, null when none was found
+     */
+    public Magnetometer getCompass() {
+        return compass;
+    }
+}
@@ -0,0 +1,110 @@
+package eme.control.sim;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Physical model of a servo driven mount, used in place of real hardware.
+ * <p>
+ * The commanded pulse maps linearly to a servo angle; the servo follows with a first order lag limited
+ * by its slew rate. The roll seen by the accelerometer is the servo angle plus a fixed tilt plus a slow
+ * sinusoidal disturbance (wind, cable drag) the controller has to fight. State is advanced lazily to the
+ * time it is queried, integrating in small steps.
+ */
+public class MountModel {
+    private static final long STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final int centerPulse;
+    private final double degreesPerMicrosecond;
+    private final double timeConstant;
+    private final double maxSlewRate;
+    private final double tilt;
+    private final double disturbanceAmplitude;
+    private final double disturbancePeriod;
+
+    private final long startTime;
+    private long time;
+    private double servoAngle;
+    private double targetAngle;
+    private double servoRate;
+
+    /**
+     * Mount centred at 1200us, 180 deg over 1400us, reversed (bigger pulse, smaller roll), 60 deg/s slew.
+     */
+    public MountModel() {
+        this(1200, -180.0 / 1400, 0.08, 60, 0, 3, 20);
+    }
+
+    /**
+     * @param centerPulse           pulse [us] giving servo angle 0
+     * @param degreesPerMicrosecond slope of the pulse to angle map, negative for a reversed mount
+     * @param timeConstant          servo lag [s]
+     * @param maxSlewRate           servo speed limit [deg/s]
+     * @param tilt                  constant roll offset [deg]
+     * @param disturbanceAmplitude  amplitude of the sinusoidal disturbance [deg]
+     * @param disturbancePeriod     its period [s]
+     */
+    public MountModel(int centerPulse, double degreesPerMicrosecond, double timeConstant, double maxSlewRate,
+                      double tilt, double disturbanceAmplitude, double disturbancePeriod) {
+        this.centerPulse = centerPulse;
+        this.degreesPerMicrosecond = degreesPerMicrosecond;
+        this.timeConstant = timeConstant;
+        this.maxSlewRate = maxSlewRate;
+        this.tilt = tilt;
+        this.disturbanceAmplitude = disturbanceAmplitude;
+        this.disturbancePeriod = disturbancePeriod;
+        this.startTime = System.nanoTime();
+        this.time = startTime;
+    }
+
+    public synchronized void setPulse(int pulse, long nanoTime) {
+        advance(nanoTime);
+        targetAngle = (pulse - centerPulse) * degreesPerMicrosecond;
+    }
+
+    /**
+     * @return roll [deg] at the given {@link System#nanoTime()}
+     */
+    public synchronized double getRoll(long nanoTime) {
+        advance(nanoTime);
+        return servoAngle + tilt + disturbance(time);
+    }
+
+    /**
+     * @return roll rate [deg/s] at the given {@link System#nanoTime()}
+     */
+    public synchronized double getRollRate(long nanoTime) {
+        advance(nanoTime);
+        double t = (time - startTime) / NANOS_PER_SECOND;
+        double omega = 2 * Math.PI / disturbancePeriod;
+        return servoRate + disturbanceAmplitude * omega * Math.cos(omega * t);
+    }
+
+    public synchronized double getServoAngle() {
+        return servoAngle;
+    }
+
+    private double disturbance(long nanoTime) {
+        double t = (nanoTime - startTime) / NANOS_PER_SECOND;
+        return disturbanceAmplitude * Math.sin(2 * Math.PI * t / disturbancePeriod);
+    }
+
+    private void advance(long nanoTime) {
+        while (nanoTime - time > 0) {
+            if (Math.abs(targetAngle - servoAngle) < 1e-9) {
+                //settled, nothing to integrate
+                servoAngle = targetAngle;
+                servoRate = 0;
+                time = nanoTime;
+                break;
+            }
+            long step = Math.min(STEP_NANOS, nanoTime - time);
+            double dt = step / NANOS_PER_SECOND;
+            double rate = (targetAngle - servoAngle) / timeConstant;
+            rate = Math.max(-maxSlewRate, Math.min(maxSlewRate, rate));
+            servoAngle += rate * dt;
+            servoRate = rate;
+            time += step;
+        }
+    }
+}
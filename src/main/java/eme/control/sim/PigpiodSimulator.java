@@ -0,0 +1,166 @@
+package eme.control.sim;
+
+import org.apache.log4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for pigpiod speaking its socket protocol: 16 byte little endian commands (cmd, p1, p2, p3),
+ * answered in order with (cmd, p1, p2, result) after a configurable latency plus uniform jitter.
+ * Servo commands are forwarded to the {@link MountModel} attached to the GPIO.
+ */
+public class PigpiodSimulator implements Runnable {
+    private static final Logger log = Logger.getLogger(PigpiodSimulator.class);
+
+    public static final int PI_CMD_SERVO = 8;
+    public static final int PI_BAD_PULSEWIDTH = -7;
+    private static final int MESSAGE_LENGTH = 16;
+
+    private final ServerSocket server;
+    private final long latencyMicros;
+    private final long jitterMicros;
+    private final Map<Integer, MountModel> mounts = new ConcurrentHashMap<Integer, MountModel>();
+    private final Map<Integer, Integer> pulses = new ConcurrentHashMap<Integer, Integer>();
+    private final AtomicLong commands = new AtomicLong();
+    private volatile boolean running;
+
+    /**
+     * @param port          0 picks a free port, see {@link #getPort()}
+     * @param latencyMicros reply delay
+     * @param jitterMicros  extra uniformly distributed reply delay
+     */
+    public PigpiodSimulator(int port, long latencyMicros, long jitterMicros) throws IOException {
+        this.server = new ServerSocket(port, 8, InetAddress.getLoopbackAddress());
+        this.latencyMicros = latencyMicros;
+        this.jitterMicros = jitterMicros;
+    }
+
+    public PigpiodSimulator attach(int gpio, MountModel mount) {
+        mounts.put(gpio, mount);
+        return this;
+    }
+
+    public void start() {
+        running = true;
+        Thread acceptor = new Thread(this, "pigpiod-sim");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("start: listening on port " + getPort() + ", latency=" + latencyMicros + "+-" + jitterMicros + "us");
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        server.close();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public long getCommandCount() {
+        return commands.get();
+    }
+
+    /**
+     * @return last pulse commanded on the GPIO, null if none
+     */
+    public Integer getPulse(int gpio) {
+        return pulses.get(gpio);
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                final Socket client = server.accept();
+                client.setTcpNoDelay(true);
+                Thread connection = new Thread(new Runnable() {
+                    public void run() {
+                        serve(client);
+                    }
+                }, "pigpiod-sim-" + client.getPort());
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("run: accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        //replies are scheduled in order with non decreasing deadlines, one thread keeps them ordered
+        ScheduledExecutorService replies = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, Thread.currentThread().getName() + "-replies");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Random random = new Random();
+        long lastDue = 0;
+        try {
+            DataInputStream in = new DataInputStream(client.getInputStream());
+            final OutputStream out = client.getOutputStream();
+            byte[] request = new byte[MESSAGE_LENGTH];
+            while (true) {
+                in.readFully(request);
+                ByteBuffer message = ByteBuffer.wrap(request).order(ByteOrder.LITTLE_ENDIAN);
+                int command = message.getInt(0);
+                int p1 = message.getInt(4);
+                int p2 = message.getInt(8);
+                int result = execute(command, p1, p2);
+                commands.incrementAndGet();
+
+                final byte[] reply = new byte[MESSAGE_LENGTH];
+                ByteBuffer.wrap(reply).order(ByteOrder.LITTLE_ENDIAN).putInt(command).putInt(p1).putInt(p2).putInt(result);
+                long delay = latencyMicros + (jitterMicros > 0 ? (long) (random.nextDouble() * jitterMicros) : 0);
+                long due = Math.max(lastDue, System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(delay));
+                lastDue = due;
+                replies.schedule(new Runnable() {
+                    public void run() {
+                        try {
+                            out.write(reply);
+                        } catch (IOException e) {
+                            log.debug("serve: reply lost", e);
+                        }
+                    }
+                }, due - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException e) {
+            log.debug("serve: client gone", e);
+        } finally {
+            replies.shutdown();
+        }
+    }
+
+    private int execute(int command, int gpio, int pulse) {
+        if (command != PI_CMD_SERVO) {
+            return 0;
+        }
+        if (pulse != 0 && (pulse < 500 || pulse > 2500)) {
+            return PI_BAD_PULSEWIDTH;
+        }
+        pulses.put(gpio, pulse);
+        MountModel mount = mounts.get(gpio);
+        if (mount != null && pulse != 0) {
+            mount.setPulse(pulse, System.nanoTime());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,44 @@
+package eme.control.sim;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CDevice;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process I2C bus with simulated devices attached by address.
+ */
+public class SimulatedI2CBus implements I2CBus {
+    private final int busNumber;
+    private final Map<Integer, I2CDevice> devices = new HashMap<Integer, I2CDevice>();
+
+    public SimulatedI2CBus() {
+        this(I2CBus.BUS_1);
+    }
+
+    public SimulatedI2CBus(int busNumber) {
+        this.busNumber = busNumber;
+    }
+
+    public synchronized SimulatedI2CBus attach(I2CDevice device) {
+        devices.put(device.getAddress(), device);
+        return this;
+    }
+
+    public synchronized I2CDevice getDevice(int address) throws IOException {
+        I2CDevice device = devices.get(address);
+        if (device == null) {
+            throw new IOException("no simulated device at address 0x" + Integer.toHexString(address));
+        }
+        return device;
+    }
+
+    public int getBusNumber() {
+        return busNumber;
+    }
+
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,283 @@
+package eme.control.sim;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_CONFIG;
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_RANGE_16G;
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_RANGE_4G;
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_RANGE_8G;
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_SCALE_MODIFIER_16G;
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_SCALE_MODIFIER_2G;
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_SCALE_MODIFIER_4G;
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_SCALE_MODIFIER_8G;
+import static eme.control.dev.input.accel.Mpu6050.ACCEL_XOUT0;
+import static eme.control.dev.input.accel.Mpu6050.CONFIG;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_COUNTH;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_EN;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_EN_ACCEL;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_EN_TEMP;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_EN_XG;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_EN_YG;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_EN_ZG;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_R_W;
+import static eme.control.dev.input.accel.Mpu6050.FIFO_SIZE;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_CONFIG;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_OUTPUT_RATE_DLPF_OFF;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_OUTPUT_RATE_DLPF_ON;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_RANGE_1000DEG;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_RANGE_2000DEG;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_RANGE_500DEG;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_SCALE_MODIFIER_1000DEG;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_SCALE_MODIFIER_2000DEG;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_SCALE_MODIFIER_250DEG;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_SCALE_MODIFIER_500DEG;
+import static eme.control.dev.input.accel.Mpu6050.GYRO_ZOUT0;
+import static eme.control.dev.input.accel.Mpu6050.INT_STATUS;
+import static eme.control.dev.input.accel.Mpu6050.INT_STATUS_DATA_RDY;
+import static eme.control.dev.input.accel.Mpu6050.INT_STATUS_FIFO_OFLOW;
+import static eme.control.dev.input.accel.Mpu6050.MPU6050_I2C_ADDRESS;
+import static eme.control.dev.input.accel.Mpu6050.RAD;
+import static eme.control.dev.input.accel.Mpu6050.SMPLRT_DIV;
+import static eme.control.dev.input.accel.Mpu6050.USER_CTRL;
+import static eme.control.dev.input.accel.Mpu6050.USER_CTRL_FIFO_EN;
+import static eme.control.dev.input.accel.Mpu6050.USER_CTRL_FIFO_RESET;
+
+/**
+ * MPU-6050 register map backed by a {@link MountModel}.
+ * <p>
+ * Measurement registers are refreshed from the model whenever they are read; the FIFO is filled with frames
+ * sampled at the rate programmed in SMPLRT_DIV/CONFIG, overflowing like the real chip when not drained in time.
+ * INT_STATUS reports DATA_RDY once per sample period; there is no INT pin.
+ * Sensor noise is Gaussian with a fixed seed so runs are repeatable.
+ */
+public class SimulatedMpu6050 implements I2CDevice {
+    public static final double ACCEL_NOISE = 0.004;  //[g]
+    public static final double GYRO_NOISE = 0.05;    //[deg/s]
+    public static final double TEMPERATURE = 25.0;
+
+    private static final int REGISTERS = 128;
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final MountModel mount;
+    private final int address;
+    private final Random noise = new Random(6050);
+    private final byte[] registers = new byte[REGISTERS];
+    private final byte[] frame = new byte[GYRO_ZOUT0 + 2 - ACCEL_XOUT0];
+    private int pointer;
+
+    private final byte[] fifo = new byte[FIFO_SIZE];
+    private int fifoHead, fifoCount;
+    private long nextFifoSample;
+    private long nextDataReady = System.nanoTime();
+
+    public SimulatedMpu6050(MountModel mount) {
+        this(mount, MPU6050_I2C_ADDRESS);
+    }
+
+    public SimulatedMpu6050(MountModel mount, int address) {
+        this.mount = mount;
+        this.address = address;
+        registers[0x75] = (byte) MPU6050_I2C_ADDRESS;   //WHO_AM_I
+        registers[0x6B] = 0x40;                         //PWR_MGMT_1, sleeping after reset
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public synchronized int read(int register) throws IOException {
+        latchMeasurement(register);
+        return readRegister(register) & 0xFF;
+    }
+
+    public synchronized int read(int register, byte[] buffer, int offset, int size) throws IOException {
+        latchMeasurement(register);
+        for (int i = 0; i < size; i++) {
+            //the FIFO register does not auto increment, every read pops the next FIFO byte
+            buffer[offset + i] = readRegister(register == FIFO_R_W ? FIFO_R_W : register + i);
+        }
+        return size;
+    }
+
+    public synchronized int read() throws IOException {
+        return read(pointer++);
+    }
+
+    public synchronized int read(byte[] buffer, int offset, int size) throws IOException {
+        int read = read(pointer, buffer, offset, size);
+        pointer += size;
+        return read;
+    }
+
+    public synchronized int read(byte[] writeBuffer, int writeOffset, int writeSize,
+                                 byte[] readBuffer, int readOffset, int readSize) throws IOException {
+        write(writeBuffer, writeOffset, writeSize);
+        return read(readBuffer, readOffset, readSize);
+    }
+
+    public synchronized void write(int register, byte value) throws IOException {
+        writeRegister(register, value);
+    }
+
+    public synchronized void write(int register, byte[] buffer, int offset, int size) throws IOException {
+        for (int i = 0; i < size; i++) {
+            writeRegister(register + i, buffer[offset + i]);
+        }
+    }
+
+    public synchronized void write(int register, byte[] buffer) throws IOException {
+        write(register, buffer, 0, buffer.length);
+    }
+
+    public synchronized void write(byte b) throws IOException {
+        pointer = b & 0xFF;
+    }
+
+    public synchronized void write(byte[] buffer, int offset, int size) throws IOException {
+        if (size > 0) {
+            pointer = buffer[offset] & 0xFF;
+            write(pointer, buffer, offset + 1, size - 1);
+        }
+    }
+
+    public synchronized void write(byte[] buffer) throws IOException {
+        write(buffer, 0, buffer.length);
+    }
+
+    private byte readRegister(int register) {
+        register &= REGISTERS - 1;
+        if (register == FIFO_COUNTH) {
+            fillFifo(System.nanoTime());
+            registers[FIFO_COUNTH] = (byte) (fifoCount >> 8);
+            registers[FIFO_COUNTH + 1] = (byte) fifoCount;
+        } else if (register == FIFO_R_W) {
+            return popFifo();
+        } else if (register == INT_STATUS) {
+            long now = System.nanoTime();
+            if (now - nextDataReady >= 0) {
+                //a new sample landed since the last look, keep to the sample clock
+                long period = samplePeriodNanos();
+                registers[INT_STATUS] |= INT_STATUS_DATA_RDY;
+                nextDataReady += ((now - nextDataReady) / period + 1) * period;
+            }
+            byte status = registers[INT_STATUS];
+            registers[INT_STATUS] = 0;
+            return status;
+        }
+        return registers[register];
+    }
+
+    /**
+     * A read starting at the high byte of a measurement register sees fresh data, the low byte read after it
+     * belongs to the same measurement.
+     */
+    private void latchMeasurement(int register) {
+        int offset = register - ACCEL_XOUT0;
+        if (offset >= 0 && offset < frame.length && offset % 2 == 0) {
+            sample(System.nanoTime(), frame);
+            System.arraycopy(frame, 0, registers, ACCEL_XOUT0, frame.length);
+        }
+    }
+
+    private void writeRegister(int register, byte value) {
+        register &= REGISTERS - 1;
+        if (register == USER_CTRL) {
+            if ((value & USER_CTRL_FIFO_RESET) != 0) {
+                fifoHead = fifoCount = 0;
+                value &= ~USER_CTRL_FIFO_RESET;
+            }
+            if ((value & USER_CTRL_FIFO_EN) != 0 && (registers[USER_CTRL] & USER_CTRL_FIFO_EN) == 0) {
+                nextFifoSample = System.nanoTime() + samplePeriodNanos();
+            }
+        }
+        registers[register] = value;
+    }
+
+    private long samplePeriodNanos() {
+        int dlpf = registers[CONFIG] & 0x07;
+        int base = dlpf == 0 || dlpf == 7 ? GYRO_OUTPUT_RATE_DLPF_OFF : GYRO_OUTPUT_RATE_DLPF_ON;
+        return (long) (NANOS_PER_SECOND * (1 + (registers[SMPLRT_DIV] & 0xFF)) / base);
+    }
+
+    private void fillFifo(long now) {
+        int sources = registers[FIFO_EN] & 0xFF;
+        if ((registers[USER_CTRL] & USER_CTRL_FIFO_EN) == 0 || sources == 0) {
+            return;
+        }
+        long period = samplePeriodNanos();
+        while (now - nextFifoSample >= 0) {
+            sample(nextFifoSample, frame);
+            if ((sources & FIFO_EN_ACCEL) != 0) pushFifo(frame, 0, 6);
+            if ((sources & FIFO_EN_TEMP) != 0) pushFifo(frame, 6, 2);
+            if ((sources & FIFO_EN_XG) != 0) pushFifo(frame, 8, 2);
+            if ((sources & FIFO_EN_YG) != 0) pushFifo(frame, 10, 2);
+            if ((sources & FIFO_EN_ZG) != 0) pushFifo(frame, 12, 2);
+            nextFifoSample += period;
+        }
+    }
+
+    private void pushFifo(byte[] source, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (fifoCount == FIFO_SIZE) {
+                //full: the oldest byte is overwritten and the overflow is flagged
+                fifoHead = (fifoHead + 1) % FIFO_SIZE;
+                fifoCount--;
+                registers[INT_STATUS] |= INT_STATUS_FIFO_OFLOW;
+            }
+            fifo[(fifoHead + fifoCount) % FIFO_SIZE] = source[offset + i];
+            fifoCount++;
+        }
+    }
+
+    private byte popFifo() {
+        if (fifoCount == 0) {
+            return 0;
+        }
+        byte value = fifo[fifoHead];
+        fifoHead = (fifoHead + 1) % FIFO_SIZE;
+        fifoCount--;
+        return value;
+    }
+
+    /**
+     * Fills the 14 byte ACCEL_XOUT0..GYRO_ZOUT1 block as the chip would have measured it at nanoTime.
+     */
+    private void sample(long nanoTime, byte[] target) {
+        double roll = mount.getRoll(nanoTime) / RAD;
+        double rollRate = mount.getRollRate(nanoTime);
+        double accelScale = accelScale(registers[ACCEL_CONFIG] & 0x18);
+        double gyroScale = gyroScale(registers[GYRO_CONFIG] & 0x18);
+
+        putWord(target, 0, (0 + noise.nextGaussian() * ACCEL_NOISE) * accelScale);
+        putWord(target, 2, (Math.sin(roll) + noise.nextGaussian() * ACCEL_NOISE) * accelScale);
+        putWord(target, 4, (Math.cos(roll) + noise.nextGaussian() * ACCEL_NOISE) * accelScale);
+        putWord(target, 6, (TEMPERATURE - 36.53) * 340);
+        putWord(target, 8, (rollRate + noise.nextGaussian() * GYRO_NOISE) * gyroScale);
+        putWord(target, 10, noise.nextGaussian() * GYRO_NOISE * gyroScale);
+        putWord(target, 12, noise.nextGaussian() * GYRO_NOISE * gyroScale);
+    }
+
+    private static void putWord(byte[] target, int offset, double value) {
+        int word = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+        target[offset] = (byte) (word >> 8);
+        target[offset + 1] = (byte) word;
+    }
+
+    private static double accelScale(int range) {
+        if (range == ACCEL_RANGE_4G) return ACCEL_SCALE_MODIFIER_4G;
+        else if (range == ACCEL_RANGE_8G) return ACCEL_SCALE_MODIFIER_8G;
+        else if (range == ACCEL_RANGE_16G) return ACCEL_SCALE_MODIFIER_16G;
+        else return ACCEL_SCALE_MODIFIER_2G;
+    }
+
+    private static double gyroScale(int range) {
+        if (range == GYRO_RANGE_500DEG) return GYRO_SCALE_MODIFIER_500DEG;
+        else if (range == GYRO_RANGE_1000DEG) return GYRO_SCALE_MODIFIER_1000DEG;
+        else if (range == GYRO_RANGE_2000DEG) return GYRO_SCALE_MODIFIER_2000DEG;
+        else return GYRO_SCALE_MODIFIER_250DEG;
+    }
+}
@@ -0,0 +1,61 @@
+package eme.control.sim;
+
+import eme.control.dev.output.servo.MessageSender;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * Hardware-free setup: a simulated pigpiod driving a {@link MountModel}, whose attitude is reported by a
+ * simulated MPU-6050 on a simulated I2C bus. Enabled in the GUI with -Deme.simulate=true.
+ */
+public class Simulation {
+    private static final Logger log = Logger.getLogger(Simulation.class);
+
+    public static final String SIMULATE_PROPERTY = "eme.simulate";
+    public static final String LATENCY_PROPERTY = "eme.simulate.latencyUs";
+    public static final String JITTER_PROPERTY = "eme.simulate.jitterUs";
+
+    private final MountModel mount;
+    private final SimulatedI2CBus bus;
+    private final PigpiodSimulator pigpiod;
+
+    public Simulation(int port, long latencyMicros, long jitterMicros) throws IOException {
+        mount = new MountModel();
+        bus = new SimulatedI2CBus().attach(new SimulatedMpu6050(mount));
+        pigpiod = new PigpiodSimulator(port, latencyMicros, jitterMicros).attach(MessageSender.SERVO_GPIO, mount);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(SIMULATE_PROPERTY);
+    }
+
+    /**
+     * Creates and starts a simulation configured by system properties.
+     */
+    public static Simulation start(int port) throws IOException {
+        Simulation simulation = new Simulation(port, Long.getLong(LATENCY_PROPERTY, 300), Long.getLong(JITTER_PROPERTY, 200));
+        simulation.pigpiod.start();
+        log.info("start: simulated hardware ready");
+        return simulation;
+    }
+
+    public MountModel getMount() {
+        return mount;
+    }
+
+    public SimulatedI2CBus getBus() {
+        return bus;
+    }
+
+    public PigpiodSimulator getPigpiod() {
+        return pigpiod;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure();
+        start(args.length > 0 ? Integer.parseInt(args[0]) : 8888);
+        Thread.currentThread().join();
+    }
+}
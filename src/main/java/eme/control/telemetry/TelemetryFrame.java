@@ -0,0 +1,148 @@
+package eme.control.telemetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One broadcast telemetry datagram, {@link #LENGTH} bytes, big endian:
+ * <pre>
+ *  0 int   magic "EMET"        4 short version       6 short flags (bit 0 tracking)
+ *  8 long  sequence           16 long  time [ms]
+ * 24 float roll [deg]         28 float pitch [deg]
+ * 32 float setpoint [deg]     36 float error [deg]
+ * 40 short azimuth pulse      42 short elevation pulse  44 short polarity pulse  46 short reserved
+ * 48 float azimuth [deg]      52 float elevation [deg]
+ * 56 long  reserved
+ * </pre>
+ * Mutable and reused on both ends.
+ */
+public class TelemetryFrame {
+    public static final int MAGIC = 0x454D4554;     //"EMET"
+    public static final short VERSION = 1;
+    public static final int LENGTH = 64;
+    public static final int FLAG_TRACKING = 0x01;
+
+    long sequence;
+    long time;
+    private int flags;
+    private float roll, pitch;
+    private float setpoint, error;
+    private int azimuthPulse, elevationPulse, polarityPulse;
+    private float azimuth, elevation;
+
+    public void setAttitude(double roll, double pitch) {
+        this.roll = (float) roll;
+        this.pitch = (float) pitch;
+    }
+
+    public void setTracking(boolean tracking, double setpoint, double error) {
+        this.flags = tracking ? flags | FLAG_TRACKING : flags & ~FLAG_TRACKING;
+        this.setpoint = (float) setpoint;
+        this.error = (float) error;
+    }
+
+    public void setPulses(int azimuth, int elevation, int polarity) {
+        this.azimuthPulse = azimuth;
+        this.elevationPulse = elevation;
+        this.polarityPulse = polarity;
+    }
+
+    public void setPosition(double azimuth, double elevation) {
+        this.azimuth = (float) azimuth;
+        this.elevation = (float) elevation;
+    }
+
+    void encode(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) flags)
+                .putLong(sequence).putLong(time)
+                .putFloat(roll).putFloat(pitch)
+                .putFloat(setpoint).putFloat(error)
+                .putShort((short) azimuthPulse).putShort((short) elevationPulse).putShort((short) polarityPulse)
+                .putShort((short) 0)
+                .putFloat(azimuth).putFloat(elevation)
+                .putLong(0);
+    }
+
+    void decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < LENGTH) {
+            throw new IOException("short telemetry datagram: " + buffer.remaining() + " bytes");
+        }
+        int magic = buffer.getInt();
+        short version = buffer.getShort();
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException("not a telemetry datagram, magic=" + Integer.toHexString(magic) + " version=" + version);
+        }
+        flags = buffer.getShort();
+        sequence = buffer.getLong();
+        time = buffer.getLong();
+        roll = buffer.getFloat();
+        pitch = buffer.getFloat();
+        setpoint = buffer.getFloat();
+        error = buffer.getFloat();
+        azimuthPulse = buffer.getShort() & 0xFFFF;
+        elevationPulse = buffer.getShort() & 0xFFFF;
+        polarityPulse = buffer.getShort() & 0xFFFF;
+        buffer.getShort();
+        azimuth = buffer.getFloat();
+        elevation = buffer.getFloat();
+        buffer.getLong();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return wall clock time [ms] at which the frame was sent
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public boolean isTracking() {
+        return (flags & FLAG_TRACKING) != 0;
+    }
+
+    public float getRoll() {
+        return roll;
+    }
+
+    public float getPitch() {
+        return pitch;
+    }
+
+    public float getSetpoint() {
+        return setpoint;
+    }
+
+    public float getError() {
+        return error;
+    }
+
+    public int getAzimuthPulse() {
+        return azimuthPulse;
+    }
+
+    public int getElevationPulse() {
+        return elevationPulse;
+    }
+
+    public int getPolarityPulse() {
+        return polarityPulse;
+    }
+
+    public float getAzimuth() {
+        return azimuth;
+    }
+
+    public float getElevation() {
+        return elevation;
+    }
+
+    @Override
+    public String toString() {
+        return "TelemetryFrame{seq=" + sequence + ", tracking=" + isTracking() + ", roll=" + roll + ", pitch=" + pitch
+                + ", setpoint=" + setpoint + ", error=" + error + ", pulses=" + azimuthPulse + "/" + elevationPulse
+                + "/" + polarityPulse + ", az=" + azimuth + ", el=" + elevation + "}";
+    }
+}
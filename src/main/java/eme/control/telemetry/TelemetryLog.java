@@ -0,0 +1,204 @@
+package eme.control.telemetry;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Telemetry records kept as primitives in a preallocated ring; a "telemetry-log" thread formats and writes
+ * them to the "telemetry" log4j logger in batches. Recording never blocks and never allocates: when the
+ * ring is full the record is dropped and counted.
+ */
+public class TelemetryLog implements Runnable {
+    private static final Logger log = Logger.getLogger(TelemetryLog.class);
+    private static final Logger out = Logger.getLogger("telemetry");
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_FLUSH_MS = 250;
+
+    /**
+     * Record kinds, with the names of their up to three values.
+     */
+    public enum EVENT {
+        TRACK("setpoint", "measured", "pulse"),
+        POSITION("pulse", null, null),
+        SERVO("gpio", "pulse", null),
+        OVERRUN("late_us", null, null);
+
+        final String a, b, c;
+
+        EVENT(String a, String b, String c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+    }
+
+    private static final EVENT[] EVENTS = EVENT.values();
+
+    private final int mask;
+    private final long flushNanos;
+    private final long[] time;
+    private final int[] event;
+    private final double[] a, b, c;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedDropped;
+
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile boolean running;
+    private Thread thread;
+
+    public TelemetryLog() {
+        this(DEFAULT_CAPACITY, DEFAULT_FLUSH_MS);
+    }
+
+    /**
+     * @param capacity records held before dropping, rounded up to a power of two
+     */
+    public TelemetryLog(int capacity, int flushMs) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMs);
+        time = new long[size];
+        event = new int[size];
+        a = new double[size];
+        b = new double[size];
+        c = new double[size];
+        published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "telemetry-log");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean record(EVENT type, double valueA) {
+        return record(type, valueA, 0, 0);
+    }
+
+    public boolean record(EVENT type, double valueA, double valueB) {
+        return record(type, valueA, valueB, 0);
+    }
+
+    /**
+     * Safe from any thread.
+     *
+     * @return false if the ring was full and the record dropped
+     */
+    public boolean record(EVENT type, double valueA, double valueB, double valueC) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int i = (int) sequence & mask;
+        time[i] = System.currentTimeMillis();
+        event[i] = type.ordinal();
+        a[i] = valueA;
+        b[i] = valueB;
+        c[i] = valueC;
+        published.lazySet(i, sequence);
+        return true;
+    }
+
+    public void run() {
+        long next = System.nanoTime();
+        while (running) {
+            drain();
+            next += flushNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            } else {
+                next = System.nanoTime();
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Formats everything published so far into one log4j call.
+     */
+    private void drain() {
+        long sequence = consumed;
+        line.setLength(0);
+        while (published.get((int) sequence & mask) == sequence) {
+            int i = (int) sequence & mask;
+            EVENT type = EVENTS[event[i]];
+            if (line.length() > 0) {
+                line.append('\n');
+            }
+            line.append(time[i]).append(' ').append(type.name());
+            append(type.a, a[i]);
+            append(type.b, b[i]);
+            append(type.c, c[i]);
+            sequence++;
+            consumed = sequence;
+        }
+
+        long lost = dropped.get();
+        if (lost != reportedDropped) {
+            log.warn("drain: " + (lost - reportedDropped) + " records dropped, consumer behind");
+            reportedDropped = lost;
+        }
+        if (line.length() > 0) {
+            out.info(line);
+        }
+    }
+
+    private void append(String name, double value) {
+        if (name == null) {
+            return;
+        }
+        line.append(' ').append(name).append('=');
+        if (value == (long) value) {
+            line.append((long) value);
+        } else {
+            line.append(value);
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return records waiting for the consumer
+     */
+    public long getBacklog() {
+        return claimed.get() - consumed;
+    }
+}
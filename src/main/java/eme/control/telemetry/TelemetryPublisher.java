@@ -0,0 +1,122 @@
+package eme.control.telemetry;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multicasts a {@link TelemetryFrame} at a fixed rate from one "telemetry-udp" thread. The frame and the
+ * direct buffer are reused, and one datagram serves every listener, so the cost does not depend on how many
+ * dashboards watch. Receivers spot loss from the sequence numbers, see {@link TelemetryReceiver}.
+ */
+public class TelemetryPublisher implements Runnable {
+    private static final Logger log = Logger.getLogger(TelemetryPublisher.class);
+
+    public static final String DEFAULT_GROUP = "239.255.73.1";     //organisation local scope
+    public static final int DEFAULT_PORT = 4534;
+    public static final int DEFAULT_RATE_HZ = 10;
+
+    private final TelemetrySource source;
+    private final InetSocketAddress group;
+    private final DatagramChannel channel;
+    private final long periodNanos;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TelemetryFrame.LENGTH);
+    private final TelemetryFrame frame = new TelemetryFrame();
+
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long sent;
+    private volatile long failures;
+
+    /**
+     * @param ttl multicast hops, 1 keeps the datagrams on the local network
+     */
+    public TelemetryPublisher(TelemetrySource source, InetSocketAddress group, int rateHz, int ttl) throws IOException {
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("rate must be positive, was " + rateHz);
+        }
+        this.source = source;
+        this.group = group;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / rateHz;
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "telemetry-udp");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("start: telemetry to " + group + " every " + periodNanos / 1000 + "us");
+    }
+
+    public synchronized void stop() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    public void run() {
+        long next = System.nanoTime();
+        while (running) {
+            publish();
+            next += periodNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            } else {
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    private void publish() {
+        try {
+            source.fill(frame);
+        } catch (RuntimeException e) {
+            if (failures++ % 100 == 0) {
+                log.warn("publish: telemetry source failed", e);
+            }
+            return;
+        }
+        frame.sequence = sent;
+        frame.time = System.currentTimeMillis();
+        buffer.clear();
+        frame.encode(buffer);
+        buffer.flip();
+        try {
+            channel.send(buffer, group);
+            sent++;
+        } catch (IOException e) {
+            if (failures++ % 100 == 0) {
+                log.warn("publish: send to " + group + " failed", e);
+            }
+        }
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,119 @@
+package eme.control.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Enumeration;
+
+/**
+ * Joins the telemetry group and decodes frames sent by {@link TelemetryPublisher}, counting frames lost
+ * or reordered on the way. Not thread safe, meant for one reading thread per receiver.
+ */
+public class TelemetryReceiver implements Closeable {
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TelemetryFrame.LENGTH * 2);
+    private long expected = -1;
+    private long received;
+    private long lost;
+    private long invalid;
+    private long reordered;
+
+    public TelemetryReceiver() throws IOException {
+        this(TelemetryPublisher.DEFAULT_GROUP, TelemetryPublisher.DEFAULT_PORT, null);
+    }
+
+    /**
+     * @param networkInterface where to join, null for the first multicast capable interface that is up
+     */
+    public TelemetryReceiver(String group, int port, NetworkInterface networkInterface) throws IOException {
+        NetworkInterface nif = networkInterface != null ? networkInterface : defaultInterface();
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(new InetSocketAddress(port));
+        channel.join(InetAddress.getByName(group), nif);
+    }
+
+    static NetworkInterface defaultInterface() throws SocketException {
+        NetworkInterface loopback = null;
+        Enumeration<NetworkInterface> all = NetworkInterface.getNetworkInterfaces();
+        while (all.hasMoreElements()) {
+            NetworkInterface nif = all.nextElement();
+            if (!nif.isUp() || !nif.supportsMulticast()) {
+                continue;
+            }
+            if (!nif.isLoopback()) {
+                return nif;
+            }
+            loopback = nif;
+        }
+        if (loopback == null) {
+            throw new SocketException("no multicast capable network interface");
+        }
+        return loopback;
+    }
+
+    /**
+     * Blocks until a valid frame arrives.
+     */
+    public TelemetryFrame receive(TelemetryFrame target) throws IOException {
+        while (true) {
+            buffer.clear();
+            channel.receive(buffer);
+            buffer.flip();
+            try {
+                target.decode(buffer);
+            } catch (IOException e) {
+                invalid++;
+                continue;
+            }
+            received++;
+            long sequence = target.getSequence();
+            if (sequence == 0 || expected < 0) {
+                expected = sequence + 1;            //first frame, or the publisher restarted
+            } else if (sequence >= expected) {
+                lost += sequence - expected;
+                expected = sequence + 1;
+            } else if (lost > 0) {
+                lost--;                             //late frame, counted as lost before
+                reordered++;
+            }
+            return target;
+        }
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return frames missing from the sequence so far
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * @return datagrams on the port which were not telemetry frames
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * @return frames which arrived after a later one
+     */
+    public long getReordered() {
+        return reordered;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
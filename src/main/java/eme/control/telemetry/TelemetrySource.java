@@ -0,0 +1,8 @@
+package eme.control.telemetry;
+
+/**
+ * Fills a frame with the current state; called on the publisher thread, so it should only read cached values.
+ */
+public interface TelemetrySource {
+    void fill(TelemetryFrame frame);
+}
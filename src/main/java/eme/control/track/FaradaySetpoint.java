@@ -0,0 +1,30 @@
+package eme.control.track;
+
+/**
+ * Polarity setpoint: the reference angle corrected by the Faraday rotation reported by whatever
+ * measures the polarisation of the received signal. Until a rotation is reported the reference is held.
+ */
+public class FaradaySetpoint implements SetpointSource {
+    private final double reference;
+    private volatile double rotation;
+
+    public FaradaySetpoint(double reference) {
+        this.reference = reference;
+    }
+
+    /**
+     * @param rotation Faraday rotation [deg], may be called from any thread
+     */
+    public void setFaradayRotation(double rotation) {
+        this.rotation = rotation;
+    }
+
+    public double getSetpoint() {
+        return reference + rotation;
+    }
+
+    @Override
+    public String toString() {
+        return "FaradaySetpoint{reference=" + reference + ", rotation=" + rotation + "}";
+    }
+}
@@ -0,0 +1,25 @@
+package eme.control.track;
+
+import eme.control.ephemeris.HorizontalPosition;
+
+/**
+ * Pre-set direction, e.g. a geostationary satellite.
+ */
+public class FixedReference implements ReferenceSource {
+    private final double azimuth;
+    private final double elevation;
+
+    public FixedReference(double azimuth, double elevation) {
+        this.azimuth = azimuth;
+        this.elevation = elevation;
+    }
+
+    public void position(long millis, HorizontalPosition target) {
+        target.set(azimuth, elevation, 0, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "FixedReference{az=" + azimuth + ", el=" + elevation + "}";
+    }
+}
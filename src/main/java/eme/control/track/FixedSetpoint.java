@@ -0,0 +1,18 @@
+package eme.control.track;
+
+public class FixedSetpoint implements SetpointSource {
+    private final double setpoint;
+
+    public FixedSetpoint(double setpoint) {
+        this.setpoint = setpoint;
+    }
+
+    public double getSetpoint() {
+        return setpoint;
+    }
+
+    @Override
+    public String toString() {
+        return "FixedSetpoint{" + setpoint + "}";
+    }
+}
@@ -0,0 +1,108 @@
+package eme.control.track;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manual slewing while a button is held: every period the pulse moves by the current speed, which ramps
+ * from a slow start up to the axis limit the longer the jog lasts. Runs on a shared scheduler and commands
+ * through the same {@link ServoOutput} as tracking.
+ */
+public class Jog implements Runnable {
+    private static final Logger log = Logger.getLogger(Jog.class);
+
+    public static final int PERIOD_MS = 20;     //one servo frame
+
+    private final ScheduledExecutorService scheduler;
+    private final ServoOutput output;
+    private final int minPulse, maxPulse;
+    private final double startSpeed, maxSpeed;
+    private final double rampNanos;
+
+    private ScheduledFuture<?> task;
+    private int direction;
+    private long started, last;
+    private double pulse;
+    private volatile int commanded;
+
+    /**
+     * @param startSpeed speed right after the jog starts [us/s]
+     * @param maxSpeed   speed reached after rampMs [us/s]
+     */
+    public Jog(ScheduledExecutorService scheduler, ServoOutput output, int minPulse, int maxPulse,
+               double startSpeed, double maxSpeed, int rampMs) {
+        this.scheduler = scheduler;
+        this.output = output;
+        this.minPulse = minPulse;
+        this.maxPulse = maxPulse;
+        this.startSpeed = startSpeed;
+        this.maxSpeed = Math.max(startSpeed, maxSpeed);
+        this.rampNanos = TimeUnit.MILLISECONDS.toNanos(rampMs);
+    }
+
+    /**
+     * @param direction +1 towards the maximum pulse, -1 towards the minimum
+     */
+    public synchronized void start(int fromPulse, int direction) {
+        if (task != null) {
+            return;
+        }
+        this.direction = direction < 0 ? -1 : 1;
+        this.pulse = fromPulse;
+        this.commanded = fromPulse;
+        this.started = System.nanoTime();
+        this.last = started;
+        task = scheduler.scheduleAtFixedRate(this, PERIOD_MS, PERIOD_MS, TimeUnit.MILLISECONDS);
+        log.debug("start: from pulse=" + fromPulse + ", direction=" + this.direction);
+    }
+
+    /**
+     * @return the last commanded pulse
+     */
+    public synchronized int stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+            log.debug("stop: at pulse=" + commanded);
+        }
+        return commanded;
+    }
+
+    public synchronized void run() {
+        if (task == null) {
+            return;     //stopped while this run was already due
+        }
+        long now = System.nanoTime();
+        double ramp = Math.min(1, (now - started) / rampNanos);
+        double speed = startSpeed + (maxSpeed - startSpeed) * ramp;
+        pulse += direction * speed * (now - last) / 1e9;
+        last = now;
+        if (pulse <= minPulse || pulse >= maxPulse) {
+            pulse = Math.max(minPulse, Math.min(maxPulse, pulse));
+        }
+        int next = (int) Math.round(pulse);
+        if (next != commanded) {
+            try {
+                output.setPulse(next);
+                commanded = next;
+            } catch (IOException e) {
+                log.warn("run: jog command failed", e);
+            }
+        }
+        if (next == minPulse || next == maxPulse) {
+            stop();     //at the end of travel
+        }
+    }
+
+    public synchronized boolean isJogging() {
+        return task != null;
+    }
+
+    public int getPulse() {
+        return commanded;
+    }
+}
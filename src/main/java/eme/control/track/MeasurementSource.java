@@ -0,0 +1,10 @@
+package eme.control.track;
+
+import java.io.IOException;
+
+/**
+ * Provides the currently measured angle, e.g. polled roll or fused attitude.
+ */
+public interface MeasurementSource {
+    double read() throws IOException;
+}
@@ -0,0 +1,36 @@
+package eme.control.track;
+
+import eme.control.ephemeris.EphemerisTable;
+import eme.control.ephemeris.HorizontalPosition;
+import eme.control.ephemeris.MoonEphemeris;
+import eme.control.ephemeris.Station;
+
+/**
+ * Moon position from a session {@link EphemerisTable}; a new table is built when a query falls outside the current one.
+ */
+public class MoonReference implements ReferenceSource {
+    public static final int DEFAULT_SESSION_HOURS = 12;
+
+    private final MoonEphemeris ephemeris;
+    private final int sessionHours;
+    private volatile EphemerisTable table;
+
+    public MoonReference(Station station) {
+        this(station, DEFAULT_SESSION_HOURS);
+    }
+
+    public MoonReference(Station station, int sessionHours) {
+        this.ephemeris = new MoonEphemeris(station);
+        this.sessionHours = sessionHours;
+    }
+
+    public void position(long millis, HorizontalPosition target) {
+        EphemerisTable current = table;
+        if (current == null || !current.covers(millis)) {
+            current = EphemerisTable.build(ephemeris, millis, sessionHours,
+                    EphemerisTable.DEFAULT_SEGMENT_MINUTES, EphemerisTable.DEFAULT_DEGREE);
+            table = current;
+        }
+        current.lookup(millis, target);
+    }
+}
@@ -0,0 +1,47 @@
+package eme.control.track;
+
+/**
+ * Travel of the az/el mount. Azimuth is in continuous mount coordinates, so a mount turning from
+ * -90 to 450 deg can follow a pass across north without unwinding.
+ */
+public class MountLimits {
+    private final double azimuthMin, azimuthMax;
+    private final double elevationMin, elevationMax;
+
+    public MountLimits(double azimuthMin, double azimuthMax, double elevationMin, double elevationMax) {
+        if (azimuthMax - azimuthMin < 360) {
+            throw new IllegalArgumentException("azimuth travel " + azimuthMin + ".." + azimuthMax + " shorter than 360 deg");
+        }
+        if (elevationMin >= elevationMax) {
+            throw new IllegalArgumentException("elevation travel " + elevationMin + ".." + elevationMax + " is empty");
+        }
+        this.azimuthMin = azimuthMin;
+        this.azimuthMax = azimuthMax;
+        this.elevationMin = elevationMin;
+        this.elevationMax = elevationMax;
+    }
+
+    public boolean containsAzimuth(double azimuth) {
+        return azimuth >= azimuthMin && azimuth <= azimuthMax;
+    }
+
+    public double clampElevation(double elevation) {
+        return Math.max(elevationMin, Math.min(elevationMax, elevation));
+    }
+
+    public double getAzimuthMin() {
+        return azimuthMin;
+    }
+
+    public double getAzimuthMax() {
+        return azimuthMax;
+    }
+
+    public double getElevationMin() {
+        return elevationMin;
+    }
+
+    public double getElevationMax() {
+        return elevationMax;
+    }
+}
@@ -0,0 +1,182 @@
+package eme.control.track;
+
+import eme.control.dev.output.servo.Axis;
+import eme.control.dev.output.servo.ServoAxis;
+import eme.control.dev.output.servo.ServoDriver;
+import eme.control.record.FlightRecorder;
+
+/**
+ * Coordinated azimuth/elevation/polarity motion.
+ * <p>
+ * Every tick takes one setpoint vector (pulse per {@link Axis}). When the vector changes, a straight line move
+ * is planned from the current position so that all axes start and finish together, its length given by the
+ * axis that needs most time at its configured speed. Each tick advances the move and posts the pulses of all
+ * axes that changed together through {@link ServoDriver#setPulses(int[], int[], int)}, which sends them as one
+ * batched write. Setpoints are clamped to the configured per axis limits.
+ * <p>
+ * Like the axes it moves, it is meant to be ticked from a single thread (the command bus writer).
+ */
+public class MultiAxisController {
+    private final ServoDriver driver;
+    private final ServoAxis[] axes;
+    private final double tickSeconds;
+
+    private final int[] target;
+    private final double[] start;
+    private final double[] delta;
+    private int steps, step;
+
+    //batch buffers, reused every tick
+    private final int[] gpios;
+    private final int[] pulses;
+    private volatile long batches, commands;
+    private volatile FlightRecorder recorder;
+
+    /**
+     * @param axes   axes indexed by {@link Axis#ordinal()}, null for axes not driven; all must use the driver
+     * @param tickMs period {@link #tick(int[])} is called with
+     */
+    public MultiAxisController(ServoDriver driver, ServoAxis[] axes, int tickMs) {
+        this.driver = driver;
+        this.axes = axes;
+        this.tickSeconds = tickMs / 1000.0;
+        int count = axes.length;
+        target = new int[count];
+        start = new double[count];
+        delta = new double[count];
+        gpios = new int[count];
+        pulses = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (axes[i] != null) {
+                target[i] = axes[i].getPulse();
+            }
+        }
+    }
+
+    /**
+     * Sends the current positions of all axes, e.g. at startup.
+     */
+    public void home() {
+        int count = 0;
+        for (int i = 0; i < axes.length; i++) {
+            if (axes[i] != null) {
+                gpios[count] = axes[i].getConfig().getGpio();
+                pulses[count++] = axes[i].getPulse();
+            }
+        }
+        send(count);
+    }
+
+    /**
+     * Advances the coordinated move one tick towards the setpoint.
+     *
+     * @param setpoint pulse per axis ordinal; entries of axes not configured are ignored
+     */
+    public void tick(int[] setpoint) {
+        if (changed(setpoint)) {
+            plan(setpoint);
+        }
+        if (step >= steps) {
+            return;
+        }
+        step++;
+        double fraction = (double) step / steps;
+        int count = 0;
+        for (int i = 0; i < axes.length; i++) {
+            if (axes[i] == null) {
+                continue;
+            }
+            int pulse = (int) Math.round(start[i] + delta[i] * fraction);
+            if (pulse != axes[i].getPulse()) {
+                gpios[count] = axes[i].getConfig().getGpio();
+                pulses[count++] = axes[i].command(pulse);
+            }
+        }
+        send(count);
+    }
+
+    /**
+     * Ends the move where the axes are now.
+     *
+     * @param setpoint filled with the current positions, to be passed to the next ticks
+     */
+    public void halt(int[] setpoint) {
+        for (int i = 0; i < axes.length; i++) {
+            if (axes[i] != null) {
+                setpoint[i] = target[i] = axes[i].getPulse();
+            }
+        }
+        step = steps;
+    }
+
+    private boolean changed(int[] setpoint) {
+        for (int i = 0; i < axes.length; i++) {
+            if (axes[i] != null && axes[i].getConfig().clamp(setpoint[i]) != target[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void plan(int[] setpoint) {
+        double duration = 0;
+        for (int i = 0; i < axes.length; i++) {
+            if (axes[i] == null) {
+                continue;
+            }
+            //from the commanded pulse, other commands may have moved the axis since the last tick
+            target[i] = axes[i].getConfig().clamp(setpoint[i]);
+            start[i] = axes[i].getPulse();
+            delta[i] = target[i] - start[i];
+            duration = Math.max(duration, Math.abs(delta[i]) / axes[i].getConfig().getMaxSpeed());
+        }
+        steps = Math.max(1, (int) Math.ceil(duration / tickSeconds));
+        step = 0;
+    }
+
+    private void send(int count) {
+        if (count == 0) {
+            return;
+        }
+        driver.setPulses(gpios, pulses, count);
+        FlightRecorder r = recorder;
+        if (r != null) {
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                r.recordMove(now, gpios[i], pulses[i]);
+            }
+        }
+        batches++;
+        commands += count;
+    }
+
+    /**
+     * @param recorder receives every pulse posted as a MOVE record, null to disable
+     */
+    public void setRecorder(FlightRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * @return true while a planned move has not reached its target
+     */
+    public boolean isMoving() {
+        return step < steps;
+    }
+
+    public int getPosition(Axis axis) {
+        return axes[axis.ordinal()].getPulse();
+    }
+
+    public ServoAxis getAxis(Axis axis) {
+        return axes[axis.ordinal()];
+    }
+
+    public long getBatchCount() {
+        return batches;
+    }
+
+    public long getCommandCount() {
+        return commands;
+    }
+}
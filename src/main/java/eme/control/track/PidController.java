@@ -0,0 +1,111 @@
+package eme.control.track;
+
+/**
+ * PID controller with output clamping, output rate limiting and back-calculation anti-windup.
+ * <p>
+ * The integral term holds the absolute output, so {@link #reset(double)} starts the controller
+ * bumplessly from the current actuator position. The derivative acts on the measurement to avoid
+ * kicks when the setpoint changes. Not thread safe, meant to be driven by a single control thread.
+ */
+public class PidController {
+    public enum ACTION { DIRECT, REVERSE }
+
+    private final double kp, ki, kd;
+    private final double outputMin, outputMax;
+    private final double maxRate;
+    private final double sign;
+
+    private double integral;
+    private double output;
+    private double lastMeasurement;
+    private boolean initialized;
+
+    /**
+     * @param kp        proportional gain [output / unit]
+     * @param ki        integral gain [output / (unit * s)]
+     * @param kd        derivative gain [output * s / unit]
+     * @param outputMin lower output clamp
+     * @param outputMax upper output clamp
+     * @param maxRate   largest output change per second, {@link Double#POSITIVE_INFINITY} to disable
+     * @param action    REVERSE when a bigger output decreases the measurement
+     */
+    public PidController(double kp, double ki, double kd, double outputMin, double outputMax, double maxRate,
+                         ACTION action) {
+        if (outputMin >= outputMax) {
+            throw new IllegalArgumentException("output range " + outputMin + ".." + outputMax + " is empty");
+        }
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+        this.outputMin = outputMin;
+        this.outputMax = outputMax;
+        this.maxRate = maxRate;
+        this.sign = action == ACTION.DIRECT ? 1 : -1;
+        reset((outputMin + outputMax) / 2);
+    }
+
+    /**
+     * Restarts the controller holding the given output.
+     */
+    public void reset(double output) {
+        this.output = clamp(output, outputMin, outputMax);
+        this.integral = this.output;
+        this.initialized = false;
+    }
+
+    /**
+     * @param dt time since the previous update [s]
+     * @return new output, within limits and rate limit
+     */
+    public double update(double setpoint, double measurement, double dt) {
+        return update(setpoint, measurement, dt, 0);
+    }
+
+    /**
+     * Update with velocity feed-forward: the integral is advanced by the expected output rate, so a moving
+     * setpoint is followed without first building up error.
+     *
+     * @param feedForward expected output change per second [output/s], e.g. reference rate times output per degree
+     */
+    public double update(double setpoint, double measurement, double dt, double feedForward) {
+        double error = sign * (setpoint - measurement);
+        double derivative = 0;
+        if (initialized && dt > 0) {
+            derivative = -sign * (measurement - lastMeasurement) / dt;
+        }
+        lastMeasurement = measurement;
+        initialized = true;
+
+        double previous = integral;
+        integral += ki * error * dt + feedForward * dt;
+        double proportional = kp * error;
+        double differential = kd * derivative;
+        double wanted = integral + proportional + differential;
+
+        double limited = clamp(wanted, outputMin, outputMax);
+        if (limited != wanted) {
+            //back-calculation: the integral only keeps what the actuator could actually follow
+            integral = limited - proportional - differential;
+        }
+        if (dt > 0 && maxRate != Double.POSITIVE_INFINITY) {
+            double step = maxRate * dt;
+            double slewed = clamp(limited, output - step, output + step);
+            if (slewed != limited) {
+                //still slewing: the integral follows the output but not past it, so it neither winds up
+                //nor swallows the proportional term and stalls the slew
+                integral = clamp(integral, Math.min(previous, slewed), Math.max(previous, slewed));
+            }
+            limited = slewed;
+        }
+        output = limited;
+        return output;
+    }
+
+    public double getOutput() {
+        return output;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,13 @@
+package eme.control.track;
+
+import eme.control.ephemeris.HorizontalPosition;
+
+/**
+ * Where the antenna should point at a given time, with the rate of change used for feed-forward.
+ */
+public interface ReferenceSource {
+    /**
+     * @param millis UTC [ms]
+     */
+    void position(long millis, HorizontalPosition target);
+}
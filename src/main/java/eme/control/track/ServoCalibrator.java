@@ -0,0 +1,105 @@
+package eme.control.track;
+
+import eme.control.dev.output.servo.ServoCalibration;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * Measures the pulse to angle curve of a servo axis: steps the pulse across the range, waits for the
+ * measured angle to settle and averages it at every point.
+ * <p>
+ * The range is swept up and then down and both readings of a point are averaged, which cancels the
+ * backlash of the gearing. Blocks for the whole sweep; interrupt the thread to abort.
+ */
+public class ServoCalibrator {
+    private static final Logger log = Logger.getLogger(ServoCalibrator.class);
+
+    public static final double STABLE_DEGREES = 0.2;    //settled when consecutive averages differ less
+    public static final int MAX_SETTLE_WINDOWS = 20;
+
+    private final ServoOutput output;
+    private final MeasurementSource measurement;
+    private final long settleMs;
+    private final int samples;
+    private final long sampleIntervalMs;
+
+    /**
+     * @param settleMs         wait after every step before reading [ms]
+     * @param samples          readings averaged per window
+     * @param sampleIntervalMs time between readings [ms]
+     */
+    public ServoCalibrator(ServoOutput output, MeasurementSource measurement, long settleMs, int samples,
+                           long sampleIntervalMs) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("at least one sample per point, was " + samples);
+        }
+        this.output = output;
+        this.measurement = measurement;
+        this.settleMs = settleMs;
+        this.samples = samples;
+        this.sampleIntervalMs = sampleIntervalMs;
+    }
+
+    /**
+     * @param step pulse increment between points [us], the last point is maxPulse
+     * @throws IOException when the measured curve is not monotonic, e.g. the sensor does not follow the axis
+     */
+    public ServoCalibration calibrate(int minPulse, int maxPulse, int step) throws IOException, InterruptedException {
+        if (minPulse >= maxPulse || step <= 0) {
+            throw new IllegalArgumentException("pulse range " + minPulse + ".." + maxPulse + " step " + step);
+        }
+        int count = (maxPulse - minPulse + step - 1) / step + 1;
+        int[] pulses = new int[count];
+        for (int i = 0; i < count; i++) {
+            pulses[i] = Math.min(minPulse + i * step, maxPulse);
+        }
+        log.info("calibrate: " + count + " points, pulse=" + minPulse + ".." + maxPulse);
+
+        double[] up = new double[count];
+        double[] down = new double[count];
+        for (int i = 0; i < count; i++) {
+            up[i] = measure(pulses[i]);
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            down[i] = measure(pulses[i]);
+        }
+
+        double[] angles = new double[count];
+        double backlash = 0;
+        for (int i = 0; i < count; i++) {
+            angles[i] = (up[i] + down[i]) / 2;
+            backlash = Math.max(backlash, Math.abs(up[i] - down[i]));
+            log.debug("calibrate: pulse=" + pulses[i] + " up=" + up[i] + " down=" + down[i]);
+        }
+        log.info("calibrate: largest up/down difference " + String.format("%.2f", backlash) + " deg");
+        try {
+            return new ServoCalibration(pulses, angles);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("calibration failed: " + e.getMessage(), e);
+        }
+    }
+
+    private double measure(int pulse) throws IOException, InterruptedException {
+        output.setPulse(pulse);
+        Thread.sleep(settleMs);
+        double previous = average();
+        for (int i = 0; i < MAX_SETTLE_WINDOWS; i++) {
+            double current = average();
+            if (Math.abs(current - previous) < STABLE_DEGREES) {
+                return (current + previous) / 2;
+            }
+            previous = current;
+        }
+        throw new IOException("angle did not settle at pulse " + pulse + ", last " + previous);
+    }
+
+    private double average() throws IOException, InterruptedException {
+        double sum = 0;
+        for (int i = 0; i < samples; i++) {
+            sum += measurement.read();
+            Thread.sleep(sampleIntervalMs);
+        }
+        return sum / samples;
+    }
+}
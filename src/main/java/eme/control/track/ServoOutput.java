@@ -0,0 +1,10 @@
+package eme.control.track;
+
+import java.io.IOException;
+
+public interface ServoOutput {
+    /**
+     * @param pulse servo pulse duration [us]
+     */
+    void setPulse(int pulse) throws IOException;
+}
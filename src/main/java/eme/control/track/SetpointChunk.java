@@ -0,0 +1,66 @@
+package eme.control.track;
+
+/**
+ * A run of time stamped az/el setpoints with feed-forward rates, kept in primitive arrays and refilled in place.
+ */
+public class SetpointChunk {
+    final long[] times;
+    final double[] azimuth;
+    final double[] elevation;
+    final double[] azimuthRate;
+    final double[] elevationRate;
+    int size;
+
+    public SetpointChunk(int capacity) {
+        times = new long[capacity];
+        azimuth = new double[capacity];
+        elevation = new double[capacity];
+        azimuthRate = new double[capacity];
+        elevationRate = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return times.length;
+    }
+
+    public long getTime(int i) {
+        return times[i];
+    }
+
+    /**
+     * @return mount azimuth [deg], continuous, may be outside 0..360
+     */
+    public double getAzimuth(int i) {
+        return azimuth[i];
+    }
+
+    public double getElevation(int i) {
+        return elevation[i];
+    }
+
+    /**
+     * @return [deg/s]
+     */
+    public double getAzimuthRate(int i) {
+        return azimuthRate[i];
+    }
+
+    /**
+     * @return [deg/s]
+     */
+    public double getElevationRate(int i) {
+        return elevationRate[i];
+    }
+
+    public long getStart() {
+        return times[0];
+    }
+
+    public long getEnd() {
+        return times[size - 1];
+    }
+}
@@ -0,0 +1,8 @@
+package eme.control.track;
+
+/**
+ * Provides the angle the control loop should hold. Polled once per control tick, must not block.
+ */
+public interface SetpointSource {
+    double getSetpoint();
+}
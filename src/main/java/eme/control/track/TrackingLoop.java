@@ -0,0 +1,244 @@
+package eme.control.track;
+
+import eme.control.dev.output.servo.ServoCalibration;
+import eme.control.metrics.ControlMetrics;
+import eme.control.record.FlightRecorder;
+import eme.control.telemetry.TelemetryLog;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Closed loop holding the measured angle at the setpoint with a {@link PidController}.
+ * Runs on its own thread at a fixed period and only commands the servo when the rounded pulse changes.
+ */
+public class TrackingLoop implements Runnable {
+    private static final Logger log = Logger.getLogger(TrackingLoop.class);
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final MeasurementSource measurement;
+    private final PidController pid;
+    private final ServoOutput output;
+    private final long periodNanos;
+
+    private volatile SetpointSource setpoint;
+    private volatile ServoCalibration calibration;
+    private volatile SetpointSource feedForward;
+    private volatile double feedForwardGain;
+    private volatile TelemetryLog telemetry;
+    private volatile FlightRecorder recorder;
+    private volatile int recorderGpio;
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    private int lastPulse;
+    private long tickStart;
+    private volatile double lastError;
+    private volatile long tickCount;
+    private volatile long commandCount;
+    private long failures;
+
+    public TrackingLoop(MeasurementSource measurement, SetpointSource setpoint, PidController pid,
+                        ServoOutput output, int periodMs) {
+        this.measurement = measurement;
+        this.setpoint = setpoint;
+        this.pid = pid;
+        this.output = output;
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMs);
+    }
+
+    /**
+     * @param currentPulse where the servo is now, the controller starts from there
+     */
+    public synchronized void start(int currentPulse) {
+        if (running) {
+            return;
+        }
+        awaitPrevious();
+        reset(currentPulse);
+        log.info("start: from pulse=" + currentPulse + ", setpoint=" + setpoint);
+
+        running = true;
+        thread = new Thread(this, "tracking-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the loop and waits for the last tick to finish.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        cancel();
+        awaitPrevious();
+        log.info("stop: ticks=" + tickCount + ", commands=" + commandCount);
+    }
+
+    /**
+     * Asks the loop to stop without waiting for it, safe to call from the EDT.
+     */
+    public void cancel() {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    private void awaitPrevious() {
+        Thread previous = thread;
+        if (previous != null && previous != Thread.currentThread()) {
+            try {
+                previous.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void run() {
+        long last = System.nanoTime();
+        long next = last;
+        FlightRecorder r = recorder;
+        if (r != null) {
+            r.recordCommand(last, recorderGpio, lastPulse);     //where the loop started from, and when
+        }
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                tickStart = now;
+                try {
+                    tick((now - last) / NANOS_PER_SECOND);
+                } catch (IOException e) {
+                    //e.g. the command bus full: the pulse is sent again next tick
+                    if (failures++ % 100 == 0) {
+                        log.warn("run: control tick failed " + failures + " times", e);
+                    }
+                }
+                ControlMetrics.TRACK_ITERATION.recordSince(now);
+                last = now;
+
+                next += periodNanos;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else {
+                    if (-wait >= periodNanos) {
+                        ControlMetrics.LOOP_OVERRUNS.increment();
+                    }
+                    next = System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("run: tracking stopped by a control tick", e);
+        } finally {
+            //so isRunning() tells the truth and start() works again after a failure
+            running = false;
+        }
+    }
+
+    void reset(int currentPulse) {
+        ServoCalibration c = calibration;
+        pid.reset(c == null ? currentPulse : currentPulse - c.pulse(setpoint.getSetpoint()));
+        lastPulse = currentPulse;
+    }
+
+    void tick(double dt) throws IOException {
+        double measured = measurement.read();
+        double target = setpoint.getSetpoint();
+        FlightRecorder r = recorder;
+        long now = tickStart;   //the time dt was taken from, so a replay sees the same dt
+        if (r != null) {
+            r.recordSetpoint(now, target);
+            r.recordMeasurement(now, measured);
+        }
+        lastError = target - measured;
+        SetpointSource rate = feedForward;
+        double ff = rate == null ? 0 : rate.getSetpoint() * feedForwardGain;
+        ServoCalibration c = calibration;
+        double base = c == null ? 0 : c.pulse(target);
+        int pulse = (int) Math.round(base + pid.update(target, measured, dt, ff));
+        tickCount++;
+        TelemetryLog t = telemetry;
+        if (t != null) {
+            t.record(TelemetryLog.EVENT.TRACK, target, measured, pulse);
+        }
+        if (pulse != lastPulse) {
+            output.setPulse(pulse);     //throws when the write was not taken, so the pulse is retried
+            lastPulse = pulse;
+            commandCount++;
+            ControlMetrics.TRACKING_COMMANDS.increment();
+            if (r != null) {
+                r.recordCommand(now, recorderGpio, pulse);
+            }
+        }
+    }
+
+    public void setSetpoint(SetpointSource setpoint) {
+        this.setpoint = setpoint;
+    }
+
+    /**
+     * Commands the calibrated pulse of the setpoint directly, the controller only adds a correction for
+     * what the calibration misses. Build the {@link PidController} with output limits around zero then,
+     * and leave feed-forward off since the calibration already follows a moving setpoint.
+     *
+     * @param calibration pulse to angle curve of the axis, null for the controller to own the whole pulse
+     */
+    public void setCalibration(ServoCalibration calibration) {
+        this.calibration = calibration;
+    }
+
+    /**
+     * @param rate           setpoint rate of change [unit/s], null to disable feed-forward
+     * @param outputPerUnit  output change per unit of setpoint, signed like the mount responds
+     */
+    public void setFeedForward(SetpointSource rate, double outputPerUnit) {
+        this.feedForwardGain = outputPerUnit;
+        this.feedForward = rate;
+    }
+
+    /**
+     * @param telemetry receives one TRACK record per tick, null to disable
+     */
+    public void setTelemetry(TelemetryLog telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * @param recorder receives setpoint, measurement and command of every tick, null to disable
+     * @param gpio     recorded with the commands
+     */
+    public void setRecorder(FlightRecorder recorder, int gpio) {
+        this.recorderGpio = gpio;
+        this.recorder = recorder;
+    }
+
+    public SetpointSource getSetpoint() {
+        return setpoint;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return setpoint minus measurement of the last tick [deg]
+     */
+    public double getLastError() {
+        return lastError;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getCommandCount() {
+        return commandCount;
+    }
+}
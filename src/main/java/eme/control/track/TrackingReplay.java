@@ -0,0 +1,186 @@
+package eme.control.track;
+
+import eme.control.dev.input.accel.Mpu6050Sample;
+import eme.control.dev.input.accel.Mpu6050SampleListener;
+import eme.control.dev.output.servo.ServoCalibration;
+import eme.control.record.FlightRecord;
+import eme.control.record.FlightRecording;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a recording through a {@link TrackingLoop} as fast as it can be read. Time comes from the recorded
+ * timestamps only, so the same recording and gains always give the same commands.
+ * <p>
+ * The recorded measurements came from the mount driven by the recorded commands, so this is open loop:
+ * good for comparing filters and how hard the controller reacts, not for predicting the new mount motion.
+ */
+public class TrackingReplay {
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final PidController pid;
+    private final ServoOutput output;
+    private Mpu6050SampleListener sampleListener;
+    private MeasurementSource measurementOverride;
+    private ServoCalibration calibration;
+
+    private double setpoint;
+    private double measured;
+    private int replayedPulse;
+    private int recordedPulse = -1;
+
+    private long ticks;
+    private long samples;
+    private long recordedCommands;
+    private long replayedCommands;
+    private double squaredError;
+    private double squaredPulseDeviation;
+    private int maxPulseDeviation;
+
+    /**
+     * @param output receives the replayed commands, may be null
+     */
+    public TrackingReplay(PidController pid, ServoOutput output) {
+        this.pid = pid;
+        this.output = output;
+    }
+
+    /**
+     * @param listener gets the recorded samples in order, e.g. an attitude filter under test
+     */
+    public void setSampleListener(Mpu6050SampleListener listener) {
+        this.sampleListener = listener;
+    }
+
+    /**
+     * @param measurement read instead of the recorded measurement at every tick, e.g. the filter fed by
+     *                    {@link #setSampleListener}
+     */
+    public void setMeasurement(MeasurementSource measurement) {
+        this.measurementOverride = measurement;
+    }
+
+    /**
+     * @param calibration replayed like {@link TrackingLoop#setCalibration}, null for a plain controller
+     */
+    public void setCalibration(ServoCalibration calibration) {
+        this.calibration = calibration;
+    }
+
+    public void run(FlightRecording recording) throws IOException {
+        TrackingLoop loop = new TrackingLoop(new MeasurementSource() {
+            public double read() throws IOException {
+                return measurementOverride != null ? measurementOverride.read() : measured;
+            }
+        }, new SetpointSource() {
+            public double getSetpoint() {
+                return setpoint;
+            }
+        }, pid, new ServoOutput() {
+            public void setPulse(int pulse) throws IOException {
+                replayedPulse = pulse;
+                replayedCommands++;
+                if (output != null) {
+                    output.setPulse(pulse);
+                }
+            }
+        }, 1);
+        loop.setCalibration(calibration);
+
+        FlightRecord record = new FlightRecord();
+        Mpu6050Sample sample = new Mpu6050Sample();
+        long lastTick = 0;
+        long startNanos = 0;
+        boolean started = false;
+        while (recording.next(record)) {
+            switch (record.getType()) {
+                case SAMPLE:
+                    samples++;
+                    if (sampleListener != null) {
+                        sample.set(record.getNanos(), record.getAux() & 0xFFFFFFFFL,
+                                (float) record.getValue(0), (float) record.getValue(1), (float) record.getValue(2),
+                                (float) record.getValue(3), (float) record.getValue(4), (float) record.getValue(5),
+                                (float) record.getValue(6));
+                        sampleListener.onSample(sample);
+                    }
+                    break;
+                case OVERFLOW:
+                    if (sampleListener != null) {
+                        sampleListener.onOverflow(record.getAux());
+                    }
+                    break;
+                case SETPOINT:
+                    setpoint = record.getValue();
+                    break;
+                case COMMAND:
+                    recordedPulse = (int) record.getValue();
+                    if (started) {
+                        recordedCommands++;
+                    } else {
+                        startNanos = record.getNanos();     //the loop records its starting pulse
+                    }
+                    break;
+                case MEASUREMENT:
+                    measured = record.getValue();
+                    if (!started) {
+                        replayedPulse = recordedPulse >= 0 ? recordedPulse : (int) Math.round(pid.getOutput());
+                        loop.reset(replayedPulse);
+                        started = true;
+                        //without a start record the first tick only establishes time
+                        lastTick = startNanos != 0 ? startNanos : record.getNanos();
+                    }
+                    if (lastTick != record.getNanos()) {
+                        //both pulses are the outcome of the previous tick here
+                        if (recordedPulse >= 0) {
+                            int deviation = Math.abs(replayedPulse - recordedPulse);
+                            squaredPulseDeviation += (double) deviation * deviation;
+                            maxPulseDeviation = Math.max(maxPulseDeviation, deviation);
+                        }
+                        loop.tick((record.getNanos() - lastTick) / NANOS_PER_SECOND);
+                        ticks++;
+                        double error = loop.getLastError();
+                        squaredError += error * error;
+                    }
+                    lastTick = record.getNanos();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getRecordedCommands() {
+        return recordedCommands;
+    }
+
+    public long getReplayedCommands() {
+        return replayedCommands;
+    }
+
+    /**
+     * @return root mean square of setpoint minus measurement over the replayed ticks [deg]
+     */
+    public double getRmsError() {
+        return ticks == 0 ? 0 : Math.sqrt(squaredError / ticks);
+    }
+
+    /**
+     * @return root mean square difference between replayed and recorded pulse [us]
+     */
+    public double getRmsPulseDeviation() {
+        return ticks == 0 ? 0 : Math.sqrt(squaredPulseDeviation / ticks);
+    }
+
+    public int getMaxPulseDeviation() {
+        return maxPulseDeviation;
+    }
+}
@@ -0,0 +1,148 @@
+package eme.control.track;
+
+/**
+ * Plays back a {@link TrajectoryPlanner} schedule in real time for the control loop: interpolates between
+ * setpoints and exposes azimuth and elevation as {@link SetpointSource}s plus their feed-forward rates.
+ * The next chunk is planned when the current one runs out; two chunks are reused for the whole pass.
+ * The setpoint sources advance the follower to the current time themselves.
+ * <p>
+ * Not thread safe: {@link #advance(long)} and the setpoint sources belong to one control thread. The
+ * interpolated values and rates are volatile, so other threads may read them through the getters.
+ */
+public class TrajectoryFollower {
+    private final TrajectoryPlanner planner;
+    private SetpointChunk current;
+    private SetpointChunk spare;
+    private int index;
+    private boolean bridged;
+
+    private volatile double azimuth, elevation;
+    private volatile double azimuthRate, elevationRate;
+    private volatile boolean finished;
+
+    public TrajectoryFollower(TrajectoryPlanner planner, int chunkPoints) {
+        this.planner = planner;
+        this.current = planner.next(new SetpointChunk(chunkPoints));
+        this.spare = new SetpointChunk(chunkPoints);
+    }
+
+    /**
+     * Moves to the given time. Called from the control thread once per tick, before the setpoints are read.
+     *
+     * @param millis UTC [ms]
+     */
+    public void advance(long millis) {
+        while (millis >= current.getEnd() && planner.hasNext()) {
+            //the previous chunk is kept, its last point bridges the step to the first point of the new one
+            SetpointChunk filled = planner.next(spare);
+            spare = current;
+            current = filled;
+            index = 0;
+            bridged = true;
+        }
+        if (millis >= current.getEnd()) {
+            hold(current, current.size() - 1);
+            finished = true;
+            return;
+        }
+        if (millis < current.getStart()) {
+            if (bridged) {
+                interpolate(spare, spare.size() - 1, current, 0, millis);
+            } else {
+                hold(current, 0);
+            }
+            return;
+        }
+        while (current.getTime(index + 1) <= millis) {
+            index++;
+        }
+        interpolate(current, index, current, index + 1, millis);
+    }
+
+    /**
+     * Between point i of chunk a and the following point j of chunk b.
+     */
+    private void interpolate(SetpointChunk a, int i, SetpointChunk b, int j, long millis) {
+        if (b.getAzimuthRate(j) == 0 && Math.abs(b.getAzimuth(j) - a.getAzimuth(i)) > 180) {
+            //planned unwind: jump to the new branch, the controller's rate limit does the slewing
+            hold(b, j);
+            return;
+        }
+        long t0 = a.getTime(i);
+        double f = (double) (millis - t0) / (b.getTime(j) - t0);
+        azimuth = a.getAzimuth(i) + f * (b.getAzimuth(j) - a.getAzimuth(i));
+        elevation = a.getElevation(i) + f * (b.getElevation(j) - a.getElevation(i));
+        azimuthRate = a.getAzimuthRate(i);
+        elevationRate = a.getElevationRate(i);
+    }
+
+    private void hold(SetpointChunk chunk, int i) {
+        azimuth = chunk.getAzimuth(i);
+        elevation = chunk.getElevation(i);
+        azimuthRate = chunk.getAzimuthRate(i);
+        elevationRate = chunk.getElevationRate(i);
+    }
+
+    public SetpointSource azimuthSetpoint() {
+        return new SetpointSource() {
+            public double getSetpoint() {
+                advance(System.currentTimeMillis());
+                return azimuth;
+            }
+        };
+    }
+
+    public SetpointSource elevationSetpoint() {
+        return new SetpointSource() {
+            public double getSetpoint() {
+                advance(System.currentTimeMillis());
+                return elevation;
+            }
+        };
+    }
+
+    /**
+     * Feed-forward for {@link TrackingLoop#setFeedForward(SetpointSource, double)}.
+     */
+    public SetpointSource azimuthRate() {
+        return new SetpointSource() {
+            public double getSetpoint() {
+                return azimuthRate;
+            }
+        };
+    }
+
+    public SetpointSource elevationRate() {
+        return new SetpointSource() {
+            public double getSetpoint() {
+                return elevationRate;
+            }
+        };
+    }
+
+    public double getAzimuth() {
+        return azimuth;
+    }
+
+    public double getElevation() {
+        return elevation;
+    }
+
+    /**
+     * @return feed-forward [deg/s]
+     */
+    public double getAzimuthRate() {
+        return azimuthRate;
+    }
+
+    /**
+     * @return feed-forward [deg/s]
+     */
+    public double getElevationRate() {
+        return elevationRate;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+}
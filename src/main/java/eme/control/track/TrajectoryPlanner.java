@@ -0,0 +1,167 @@
+package eme.control.track;
+
+import eme.control.ephemeris.HorizontalPosition;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns a {@link ReferenceSource} into a time parameterised setpoint schedule for a whole pass, produced
+ * lazily chunk by chunk so only one chunk is ever held in memory.
+ * <p>
+ * Azimuth is unwrapped into continuous mount coordinates. Before the first chunk the pass is scanned coarsely
+ * and the 360 deg branch is chosen so the whole pass stays within the mount's azimuth travel. If no branch
+ * fits, unwinds are planned at the points where the limit would be hit, the mount then slews around by
+ * 360 deg in one move instead of running into the stop. Elevation is clamped to the mount travel; while it is
+ * clamped (e.g. the moon below the horizon) its feed-forward rate is zero.
+ */
+public class TrajectoryPlanner {
+    private static final Logger log = Logger.getLogger(TrajectoryPlanner.class);
+
+    private static final long SCAN_STEP_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_UNWINDS = 16;
+
+    private final ReferenceSource reference;
+    private final MountLimits limits;
+    private final long end;
+    private final long stepMillis;
+    private final HorizontalPosition position = new HorizontalPosition();
+
+    //planned branch changes: from unwindTimes[i] on the azimuth offset is unwindOffsets[i]
+    private final long[] unwindTimes = new long[MAX_UNWINDS];
+    private final double[] unwindOffsets = new double[MAX_UNWINDS];
+    private int unwindCount;
+    private int nextUnwind;
+    private double offset;
+
+    private long next;
+    private double unwrapped;
+    private boolean first = true;
+
+    /**
+     * @param start      UTC [ms] of the first setpoint
+     * @param end        UTC [ms] of the pass end
+     * @param stepMillis spacing of the setpoints
+     */
+    public TrajectoryPlanner(ReferenceSource reference, MountLimits limits, long start, long end, int stepMillis) {
+        if (end <= start) {
+            throw new IllegalArgumentException("pass end " + end + " not after start " + start);
+        }
+        this.reference = reference;
+        this.limits = limits;
+        this.end = end;
+        this.stepMillis = stepMillis;
+        this.next = start;
+        planBranches(start);
+    }
+
+    /**
+     * Walks the pass at SCAN_STEP and chooses the azimuth offset (multiple of 360) for every part of it.
+     */
+    private void planBranches(long start) {
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        double path = Double.NaN;
+        for (long t = start; ; t = Math.min(t + SCAN_STEP_MILLIS, end)) {
+            reference.position(t, position);
+            path = Double.isNaN(path) ? position.getAzimuth() : unwrap(path, position.getAzimuth());
+            min = Math.min(min, path);
+            max = Math.max(max, path);
+            if (t == end) {
+                break;
+            }
+        }
+
+        Double fitting = null;
+        for (int k = -2; k <= 2; k++) {
+            double candidate = k * 360;
+            if (limits.containsAzimuth(min + candidate) && limits.containsAzimuth(max + candidate)) {
+                //prefer the branch closest to the middle of the travel
+                double middle = (limits.getAzimuthMin() + limits.getAzimuthMax()) / 2;
+                if (fitting == null || Math.abs((min + max) / 2 + candidate - middle)
+                        < Math.abs((min + max) / 2 + fitting - middle)) {
+                    fitting = candidate;
+                }
+            }
+        }
+        if (fitting != null) {
+            offset = fitting;
+            log.info("planBranches: pass fits the azimuth travel with offset " + offset);
+            return;
+        }
+
+        //no single branch: start on one that holds the beginning, unwind whenever a limit would be crossed
+        reference.position(start, position);
+        //lowest branch above the start of the travel, travel is at least 360 deg so it holds the azimuth
+        offset = 360 * Math.ceil((limits.getAzimuthMin() - position.getAzimuth()) / 360);
+        if (!limits.containsAzimuth(position.getAzimuth() + offset)) {
+            throw new IllegalArgumentException("azimuth " + position.getAzimuth() + " outside travel "
+                    + limits.getAzimuthMin() + ".." + limits.getAzimuthMax() + " on every branch");
+        }
+        double current = offset;
+        path = position.getAzimuth();
+        //up to and including the end, the last step may be shorter
+        for (long t = Math.min(start + SCAN_STEP_MILLIS, end), last = start; unwindCount < MAX_UNWINDS;
+             last = t, t = Math.min(t + SCAN_STEP_MILLIS, end)) {
+            double previous = path;
+            reference.position(t, position);
+            path = unwrap(path, position.getAzimuth());
+            if (!limits.containsAzimuth(path + current)) {
+                current += path + current > limits.getAzimuthMax() ? -360 : 360;
+                //switch a scan step early when the new branch allows, so the slew around ends before the limit
+                unwindTimes[unwindCount] = limits.containsAzimuth(previous + current) ? last : t;
+                unwindOffsets[unwindCount++] = current;
+            }
+            if (t == end) {
+                break;
+            }
+        }
+        log.info("planBranches: pass needs " + unwindCount + " unwinds, starting with offset " + offset);
+    }
+
+    public boolean hasNext() {
+        return next <= end;
+    }
+
+    /**
+     * Fills the chunk with the next setpoints of the pass.
+     *
+     * @return the same chunk, holding between 1 and capacity points
+     */
+    public SetpointChunk next(SetpointChunk chunk) {
+        if (!hasNext()) {
+            throw new IllegalStateException("pass completed");
+        }
+        int size = 0;
+        while (size < chunk.capacity() && next <= end) {
+            reference.position(next, position);
+            unwrapped = first ? position.getAzimuth() : unwrap(unwrapped, position.getAzimuth());
+            first = false;
+
+            double azimuthRate = position.getAzimuthRate();
+            if (nextUnwind < unwindCount
+                    && (next >= unwindTimes[nextUnwind] || !limits.containsAzimuth(unwrapped + offset))) {
+                offset = unwindOffsets[nextUnwind++];
+                azimuthRate = 0;
+            }
+            double elevation = limits.clampElevation(position.getElevation());
+
+            chunk.times[size] = next;
+            chunk.azimuth[size] = unwrapped + offset;
+            chunk.elevation[size] = elevation;
+            chunk.azimuthRate[size] = azimuthRate;
+            chunk.elevationRate[size] = elevation == position.getElevation() ? position.getElevationRate() : 0;
+            size++;
+            next += stepMillis;
+        }
+        chunk.size = size;
+        return chunk;
+    }
+
+    private static double unwrap(double previous, double azimuth) {
+        return azimuth + 360 * Math.round((previous - azimuth) / 360);
+    }
+
+    public int getUnwindCount() {
+        return unwindCount;
+    }
+}
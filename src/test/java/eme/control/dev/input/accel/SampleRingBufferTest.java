@@ -0,0 +1,172 @@
+package eme.control.dev.input.accel;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SampleRingBufferTest {
+    private final Mpu6050Sample sample = new Mpu6050Sample();
+    private final Mpu6050Sample read = new Mpu6050Sample();
+
+    private void publish(SampleRingBuffer ring, long n) {
+        //every field derived from n, so a sample mixing two writes is easy to spot
+        sample.set(n * 10, n, n, n + 1, n + 2, -n, -n - 1, -n - 2, n / 2f);
+        ring.onSample(sample);
+    }
+
+    private static void assertIntact(Mpu6050Sample s) {
+        long n = s.getSequence();
+        assertEquals("timestamp of sample " + n, n * 10, s.getTimestamp());
+        assertEquals("accX of sample " + n, (float) n, s.getAccX(), 0);
+        assertEquals("accZ of sample " + n, (float) (n + 2), s.getAccZ(), 0);
+        assertEquals("gyroX of sample " + n, (float) -n, s.getGyroX(), 0);
+        assertEquals("gyroZ of sample " + n, (float) (-n - 2), s.getGyroZ(), 0);
+        assertEquals("temperature of sample " + n, n / 2f, s.getTemperature(), 0);
+    }
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new SampleRingBuffer(5).getCapacity());
+        assertEquals(8, new SampleRingBuffer(8).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacityBelowTwo() {
+        new SampleRingBuffer(1);
+    }
+
+    @Test
+    public void pollReturnsSamplesInOrder() {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        SampleRingBuffer.Cursor cursor = ring.newCursor("test");
+        assertFalse(cursor.poll(read));
+
+        for (int n = 0; n < 5; n++) {
+            publish(ring, n);
+        }
+        assertEquals(5, cursor.available());
+        for (int n = 0; n < 5; n++) {
+            assertTrue(cursor.poll(read));
+            assertEquals(n, read.getSequence());
+            assertIntact(read);
+        }
+        assertFalse(cursor.poll(read));
+        assertEquals(0, cursor.getSkipped());
+    }
+
+    @Test
+    public void newCursorStartsAtNewestSample() {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        for (int n = 0; n < 3; n++) {
+            publish(ring, n);
+        }
+        SampleRingBuffer.Cursor cursor = ring.newCursor("late");
+        assertTrue("the newest sample is readable at once", cursor.pollLatest(read));
+        assertEquals(2, read.getSequence());
+        assertFalse(cursor.poll(read));
+
+        publish(ring, 3);
+        assertTrue(cursor.poll(read));
+        assertEquals(3, read.getSequence());
+    }
+
+    @Test
+    public void slowCursorSkipsOverwrittenSamples() {
+        SampleRingBuffer ring = new SampleRingBuffer(4);
+        SampleRingBuffer.Cursor cursor = ring.newCursor("slow");
+        for (int n = 0; n < 10; n++) {
+            publish(ring, n);
+        }
+        assertEquals(3, cursor.available());
+        assertTrue(cursor.poll(read));
+        //slot of sample 6 is next to be overwritten, 7..9 are still readable
+        assertEquals(7, read.getSequence());
+        assertEquals(7, cursor.getSkipped());
+        assertTrue(cursor.poll(read));
+        assertTrue(cursor.poll(read));
+        assertEquals(9, read.getSequence());
+        assertFalse(cursor.poll(read));
+    }
+
+    @Test
+    public void pollLatestCountsSkippedSamples() {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        SampleRingBuffer.Cursor cursor = ring.newCursor("gui");
+        for (int n = 0; n < 6; n++) {
+            publish(ring, n);
+        }
+        assertTrue(cursor.pollLatest(read));
+        assertEquals(5, read.getSequence());
+        assertEquals(5, cursor.getSkipped());
+        assertFalse(cursor.pollLatest(read));
+    }
+
+    @Test
+    public void cursorsReadIndependently() {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        SampleRingBuffer.Cursor first = ring.newCursor("first");
+        SampleRingBuffer.Cursor second = ring.newCursor("second");
+        publish(ring, 0);
+        publish(ring, 1);
+        assertTrue(first.poll(read));
+        assertTrue(first.poll(read));
+        assertTrue(second.poll(read));
+        assertEquals(0, read.getSequence());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentReadersNeverSeeTornSamples() throws InterruptedException {
+        //small ring so the producer laps the readers all the time
+        final SampleRingBuffer ring = new SampleRingBuffer(4);
+        final int samples = 200000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                Mpu6050Sample s = new Mpu6050Sample();
+                for (long n = 0; n < samples; n++) {
+                    s.set(n * 10, n, n, n + 1, n + 2, -n, -n - 1, -n - 2, n / 2f);
+                    ring.onSample(s);
+                    if (n % 64 == 0) {
+                        Thread.yield();
+                    }
+                }
+            }
+        }, "producer");
+        Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            final boolean latest = i == 1;
+            readers[i] = new Thread(new Runnable() {
+                public void run() {
+                    SampleRingBuffer.Cursor cursor = ring.newCursor(Thread.currentThread().getName());
+                    Mpu6050Sample s = new Mpu6050Sample();
+                    long last = -1;
+                    try {
+                        while (last < samples - 1) {
+                            if (latest ? cursor.pollLatest(s) : cursor.poll(s)) {
+                                assertIntact(s);
+                                assertTrue("sequence went back from " + last + " to " + s.getSequence(),
+                                        s.getSequence() > last);
+                                last = s.getSequence();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, latest ? "latest-reader" : "reader");
+            readers[i].start();
+        }
+        producer.start();
+        producer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(samples, ring.getPublishedCount());
+    }
+}
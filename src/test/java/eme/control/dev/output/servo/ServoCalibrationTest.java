@@ -0,0 +1,131 @@
+package eme.control.dev.output.servo;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ServoCalibrationTest {
+    //tables hold floats
+    private static final double EPSILON = 1e-4;
+
+    //bent curve: 10 deg per 100 us below 1000 us, 12.5 deg per 100 us above
+    private final ServoCalibration rising = new ServoCalibration(new int[]{600, 1000, 1800}, new double[]{-40, 0, 100});
+    private final ServoCalibration falling = new ServoCalibration(new int[]{500, 1200, 1900}, new double[]{90, 0, -90});
+
+    @Test
+    public void angleInterpolatesBetweenPoints() {
+        assertEquals(-40, rising.angle(600), EPSILON);
+        assertEquals(-20, rising.angle(800), EPSILON);
+        assertEquals(0, rising.angle(1000), EPSILON);
+        assertEquals(50, rising.angle(1400), EPSILON);
+        assertEquals(0.125, rising.angle(1001), EPSILON);
+        assertEquals(0.0625, rising.angle(1000.5), EPSILON);
+    }
+
+    @Test
+    public void pulseInvertsAngle() {
+        assertEquals(800, rising.pulse(-20), EPSILON);
+        assertEquals(1400, rising.pulse(50), EPSILON);
+        for (double angle = -40; angle <= 100; angle += 0.37) {
+            assertEquals("angle " + angle, angle, rising.angle(rising.pulse(angle)), 1e-3);
+        }
+        for (int pulse = 600; pulse <= 1800; pulse += 7) {
+            assertEquals("pulse " + pulse, pulse, rising.pulse(rising.angle(pulse)), 1e-2);
+        }
+    }
+
+    @Test
+    public void clampsToTheCalibratedRange() {
+        assertEquals(-40, rising.angle(100), 0);
+        assertEquals(100, rising.angle(5000), 0);
+        assertEquals(600, rising.pulse(-100), 0);
+        assertEquals(1800, rising.pulse(200), 0);
+        assertEquals(-40, rising.getMinAngle(), 0);
+        assertEquals(100, rising.getMaxAngle(), 0);
+    }
+
+    @Test
+    public void fallingCurveIsReversed() {
+        assertFalse(rising.isReversed());
+        assertTrue(falling.isReversed());
+        assertEquals(-90, falling.getMinAngle(), 0);
+        assertEquals(90, falling.getMaxAngle(), 0);
+        assertTrue(falling.getDegreesPerMicrosecond() < 0);
+
+        assertEquals(45, falling.angle(850), EPSILON);
+        assertEquals(850, falling.pulseFor(45));
+        assertEquals(1200, falling.pulseFor(0));
+        assertEquals(1900, falling.pulseFor(-90));
+        assertEquals(500, falling.pulseFor(120));
+    }
+
+    @Test
+    public void pulseForRoundsToTheServoResolution() {
+        assertEquals(1001, rising.pulseFor(0.1));
+        assertEquals(1000, rising.pulseFor(0.05));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCurveThatTurnsBack() {
+        new ServoCalibration(new int[]{500, 1000, 1500}, new double[]{0, 50, 40});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFlatCurve() {
+        new ServoCalibration(new int[]{500, 1000, 1500}, new double[]{0, 50, 50});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPulsesNotAscending() {
+        new ServoCalibration(new int[]{500, 1500, 1000}, new double[]{0, 50, 100});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSinglePoint() {
+        new ServoCalibration(new int[]{500}, new double[]{0});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingAngle() {
+        new ServoCalibration(new int[]{500, 1000}, new double[]{0});
+    }
+
+    @Test
+    public void storedCalibrationLoadsAgain() {
+        Properties properties = new Properties();
+        falling.store(Axis.ELEVATION, properties);
+        ServoCalibration[] loaded = ServoCalibration.load(properties);
+
+        assertEquals(Axis.values().length, loaded.length);
+        assertNull(loaded[Axis.AZIMUTH.ordinal()]);
+        ServoCalibration elevation = loaded[Axis.ELEVATION.ordinal()];
+        assertEquals(3, elevation.getPointCount());
+        assertEquals(500, elevation.getMinPulse());
+        assertEquals(1900, elevation.getMaxPulse());
+        assertTrue(elevation.isReversed());
+        for (int pulse = 500; pulse <= 1900; pulse += 50) {
+            assertEquals(falling.angle(pulse), elevation.angle(pulse), 0);
+        }
+    }
+
+    @Test
+    public void loadsHandWrittenPoints() {
+        Properties properties = new Properties();
+        properties.setProperty("calibration.AZIMUTH.points", " 500 : -10.5 , 1500:80 ");
+        ServoCalibration azimuth = ServoCalibration.load(properties)[Axis.AZIMUTH.ordinal()];
+        assertEquals(-10.5, azimuth.angle(500), EPSILON);
+        assertEquals(80, azimuth.angle(1500), EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void loadRejectsMalformedPoint() {
+        Properties properties = new Properties();
+        properties.setProperty("calibration.AZIMUTH.points", "500:0,1000");
+        ServoCalibration.load(properties);
+    }
+}
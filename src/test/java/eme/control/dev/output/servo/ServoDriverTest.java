@@ -0,0 +1,132 @@
+package eme.control.dev.output.servo;
+
+import eme.control.sim.PigpiodSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the writer against {@link PigpiodSimulator} on the loopback interface.
+ */
+public class ServoDriverTest {
+    private static final int GPIO = 17;
+    private static final int OTHER_GPIO = 18;
+    private static final long TIMEOUT_MS = 5000;
+
+    private PigpiodSimulator pigpiod;
+    private MessageSender sender;
+    private ServoDriver driver;
+
+    @Before
+    public void setUp() throws IOException {
+        pigpiod = new PigpiodSimulator(0, 2000, 0);
+        pigpiod.start();
+        sender = new MessageSender("localhost", pigpiod.getPort(), GPIO);
+        driver = new ServoDriver(sender);
+        driver.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        driver.stop();
+        sender.close();
+        pigpiod.stop();
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void await(String what, Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.holds()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("timed out waiting for " + what);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitPulse(final int gpio, final int pulse) throws InterruptedException {
+        await("pulse " + pulse + " on gpio " + gpio, new Condition() {
+            public boolean holds() {
+                Integer current = pigpiod.getPulse(gpio);
+                return current != null && current == pulse;
+            }
+        });
+    }
+
+    private void awaitReplies() throws InterruptedException {
+        await("every reply", new Condition() {
+            public boolean holds() {
+                return sender.getInFlight() == 0;
+            }
+        });
+    }
+
+    @Test(timeout = 10000)
+    public void latestTargetWins() throws InterruptedException {
+        for (int pulse = 1000; pulse <= 1500; pulse += 5) {
+            driver.setPulse(GPIO, pulse);
+        }
+        awaitPulse(GPIO, 1500);
+        awaitReplies();
+        assertEquals(101, driver.getPostedCount());
+        assertTrue("every target sent: " + driver.getSentCount(), driver.getSentCount() < driver.getPostedCount());
+        assertTrue(driver.getSupersededCount() > 0);
+        assertEquals(1500, driver.getPulse(GPIO));
+    }
+
+    @Test(timeout = 10000)
+    public void duplicateIsNotSent() throws InterruptedException {
+        driver.setPulse(GPIO, 1200);
+        awaitPulse(GPIO, 1200);
+        awaitReplies();
+        long sent = driver.getSentCount();
+
+        driver.setPulse(GPIO, 1200);
+        await("the duplicate dropped", new Condition() {
+            public boolean holds() {
+                return driver.getDuplicateCount() == 1;
+            }
+        });
+        assertEquals(sent, driver.getSentCount());
+    }
+
+    @Test(timeout = 10000)
+    public void rejectedPulseIsRetriedUntilReplaced() throws InterruptedException {
+        //pigpiod refuses pulses outside 500..2500
+        driver.setPulse(GPIO, 3000);
+        await("the rejected pulse sent again", new Condition() {
+            public boolean holds() {
+                return driver.getFailureCount() >= 2;
+            }
+        });
+        driver.setPulse(GPIO, 1300);
+        awaitPulse(GPIO, 1300);
+        awaitReplies();
+        long failures = driver.getFailureCount();
+        Thread.sleep(3 * ServoDriver.SERVO_FRAME_MS);
+        assertEquals("accepted pulse retried", failures, driver.getFailureCount());
+    }
+
+    @Test(timeout = 10000)
+    public void linkedTargetsGoInOneBatch() throws InterruptedException {
+        driver.setPulses(new int[]{GPIO, OTHER_GPIO}, new int[]{1100, 1700}, 2);
+        awaitPulse(GPIO, 1100);
+        awaitPulse(OTHER_GPIO, 1700);
+        awaitReplies();
+        assertEquals(2, driver.getSentCount());
+        assertEquals(1, driver.getBatchCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownGpio() {
+        driver.setPulse(ServoDriver.MAX_GPIO + 1, 1500);
+    }
+}
@@ -0,0 +1,97 @@
+package eme.control.ephemeris;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the Chebyshev table against the Almanac series it was fitted on.
+ */
+public class EphemerisTableTest {
+    private static final long START = 1705276800000L;      //2024-01-15 00:00 UTC
+    private static final int HOURS = 24;
+    private static final double POSITION_TOLERANCE = 1e-4;  //deg
+    private static final double RATE_TOLERANCE = 1e-6;      //deg/s
+
+    private final MoonEphemeris ephemeris = new MoonEphemeris(new Station(52.0, 13.0, 100));
+    private final HorizontalPosition table = new HorizontalPosition();
+    private final HorizontalPosition series = new HorizontalPosition();
+    private EphemerisTable ephemerisTable;
+
+    @Before
+    public void build() {
+        ephemerisTable = EphemerisTable.build(ephemeris, START, HOURS, EphemerisTable.DEFAULT_SEGMENT_MINUTES,
+                EphemerisTable.DEFAULT_DEGREE);
+    }
+
+    private static double azimuthDifference(double a, double b) {
+        return ((a - b) % 360 + 540) % 360 - 180;
+    }
+
+    @Test
+    public void positionMatchesTheSeries() {
+        boolean crossedNorth = false;
+        double lastAzimuth = Double.NaN;
+        //odd step, so the samples fall anywhere within the segments
+        for (long millis = START; millis <= ephemerisTable.getEnd(); millis += 7 * 60000 + 13) {
+            ephemerisTable.lookup(millis, table);
+            ephemeris.compute(millis, series);
+            assertEquals("azimuth at " + millis, 0, azimuthDifference(table.getAzimuth(), series.getAzimuth()),
+                    POSITION_TOLERANCE);
+            assertEquals("elevation at " + millis, series.getElevation(), table.getElevation(), POSITION_TOLERANCE);
+            assertTrue("azimuth " + table.getAzimuth() + " not normalized",
+                    table.getAzimuth() >= 0 && table.getAzimuth() < 360);
+            crossedNorth |= Math.abs(series.getAzimuth() - lastAzimuth) > 180;
+            lastAzimuth = series.getAzimuth();
+        }
+        assertTrue("a day of samples should pass north once", crossedNorth);
+    }
+
+    @Test
+    public void ratesMatchTheSeriesDerivative() {
+        HorizontalPosition before = new HorizontalPosition();
+        HorizontalPosition after = new HorizontalPosition();
+        for (long millis = START + 1000; millis < ephemerisTable.getEnd(); millis += 11 * 60000 + 7) {
+            ephemerisTable.lookup(millis, table);
+            ephemeris.compute(millis - 1000, before);
+            ephemeris.compute(millis + 1000, after);
+            double azimuthRate = azimuthDifference(after.getAzimuth(), before.getAzimuth()) / 2;
+            double elevationRate = (after.getElevation() - before.getElevation()) / 2;
+            assertEquals("azimuth rate at " + millis, azimuthRate, table.getAzimuthRate(), RATE_TOLERANCE);
+            assertEquals("elevation rate at " + millis, elevationRate, table.getElevationRate(), RATE_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void continuousAcrossSegmentBoundaries() {
+        long boundary = START + 60000L * EphemerisTable.DEFAULT_SEGMENT_MINUTES;
+        HorizontalPosition next = new HorizontalPosition();
+        ephemerisTable.lookup(boundary - 1, table);
+        ephemerisTable.lookup(boundary, next);
+        assertEquals(0, azimuthDifference(next.getAzimuth(), table.getAzimuth()), POSITION_TOLERANCE);
+        assertEquals(table.getElevation(), next.getElevation(), POSITION_TOLERANCE);
+    }
+
+    @Test
+    public void coversTheSession() {
+        assertEquals(START, ephemerisTable.getStart());
+        assertEquals(START + HOURS * 3600000L, ephemerisTable.getEnd());
+        assertTrue(ephemerisTable.covers(START));
+        assertTrue(ephemerisTable.covers(ephemerisTable.getEnd()));
+        assertFalse(ephemerisTable.covers(START - 1));
+        assertFalse(ephemerisTable.covers(ephemerisTable.getEnd() + 1));
+
+        //the end itself belongs to the last segment
+        ephemerisTable.lookup(ephemerisTable.getEnd(), table);
+        ephemeris.compute(ephemerisTable.getEnd(), series);
+        assertEquals(series.getElevation(), table.getElevation(), POSITION_TOLERANCE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lookupOutsideTheSessionFails() {
+        ephemerisTable.lookup(ephemerisTable.getEnd() + 1, table);
+    }
+}
@@ -0,0 +1,201 @@
+package eme.control.remote;
+
+import eme.control.ephemeris.HorizontalPosition;
+import eme.control.track.MountLimits;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Talks to the server over the loopback interface like gpredict or rotctl would.
+ */
+public class RotctldServerTest {
+    private final FakeRotator rotator = new FakeRotator();
+    private RotctldServer server;
+    private Socket socket;
+    private BufferedReader in;
+    private OutputStream out;
+
+    private static class FakeRotator implements Rotator {
+        volatile double azimuth = 123.456789, elevation = -1.5;
+        volatile double requestedAzimuth = Double.NaN, requestedElevation = Double.NaN;
+        volatile boolean accept = true;
+        volatile int stops, parks;
+
+        public void getPosition(HorizontalPosition target) {
+            target.set(azimuth, elevation, 0, 0);
+        }
+
+        public boolean setPosition(double azimuth, double elevation) {
+            requestedAzimuth = azimuth;
+            requestedElevation = elevation;
+            return accept;
+        }
+
+        public void stop() {
+            stops++;
+        }
+
+        public void park() {
+            parks++;
+        }
+
+        public MountLimits getLimits() {
+            return new MountLimits(-90, 450, 0, 90);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new RotctldServer(rotator, new InetSocketAddress("localhost", 0));
+        server.start();
+        socket = new Socket("localhost", server.getPort());
+        socket.setSoTimeout(5000);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        out = socket.getOutputStream();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        socket.close();
+        server.stop();
+    }
+
+    private void send(String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    @Test
+    public void getPosition() throws IOException {
+        send("p");
+        assertEquals("123.456789", in.readLine());
+        assertEquals("-1.500000", in.readLine());
+        send("\\get_pos");
+        assertEquals("123.456789", in.readLine());
+        assertEquals("-1.500000", in.readLine());
+    }
+
+    @Test
+    public void extendedGetPosition() throws IOException {
+        send("+p");
+        assertEquals("get_pos:", in.readLine());
+        assertEquals("Azimuth: 123.456789", in.readLine());
+        assertEquals("Elevation: -1.500000", in.readLine());
+        assertEquals("RPRT 0", in.readLine());
+    }
+
+    @Test
+    public void setPosition() throws IOException {
+        send("P 180.5 45.25");
+        assertEquals("RPRT 0", in.readLine());
+        assertEquals(180.5, rotator.requestedAzimuth, 0);
+        assertEquals(45.25, rotator.requestedElevation, 0);
+
+        send("\\set_pos  90   10\r");
+        assertEquals("RPRT 0", in.readLine());
+        assertEquals(90, rotator.requestedAzimuth, 0);
+        assertEquals(10, rotator.requestedElevation, 0);
+
+        send("+P 1 2");
+        assertEquals("set_pos:", in.readLine());
+        assertEquals("RPRT 0", in.readLine());
+    }
+
+    @Test
+    public void rejectedOrMalformedSetPosition() throws IOException {
+        rotator.accept = false;
+        send("P 500 45");
+        assertEquals("RPRT -1", in.readLine());
+
+        rotator.accept = true;
+        send("P north 45");
+        assertEquals("RPRT -1", in.readLine());
+        send("P 180");
+        assertEquals("RPRT -1", in.readLine());
+        send("P 180 45 0");
+        assertEquals("RPRT -1", in.readLine());
+        assertEquals(500, rotator.requestedAzimuth, 0);
+    }
+
+    @Test
+    public void stopAndPark() throws IOException {
+        send("S");
+        assertEquals("RPRT 0", in.readLine());
+        send("K");
+        assertEquals("RPRT 0", in.readLine());
+        send("\\park");
+        assertEquals("RPRT 0", in.readLine());
+        assertEquals(1, rotator.stops);
+        assertEquals(2, rotator.parks);
+    }
+
+    @Test
+    public void dumpState() throws IOException {
+        send("_");
+        assertEquals("EME tracker", in.readLine());
+        send("\\dump_state");
+        assertEquals("1", in.readLine());
+        assertEquals("0", in.readLine());
+        assertEquals("min_az=-90.000000", in.readLine());
+        assertEquals("max_az=450.000000", in.readLine());
+        assertEquals("min_el=0.000000", in.readLine());
+        assertEquals("max_el=90.000000", in.readLine());
+        assertEquals("south_zero=0", in.readLine());
+        assertEquals("rot_type=AzEl", in.readLine());
+        assertEquals("done", in.readLine());
+    }
+
+    @Test
+    public void unknownCommandIsNotImplemented() throws IOException {
+        send("x");
+        assertEquals("RPRT -4", in.readLine());
+        send("\\set_level 1");
+        assertEquals("RPRT -4", in.readLine());
+        //empty lines are ignored, the next command still gets its answer
+        send("");
+        send("S");
+        assertEquals("RPRT 0", in.readLine());
+    }
+
+    @Test
+    public void pipelinedCommandsAnswerInOrder() throws IOException {
+        send("S\np\nK");
+        assertEquals("RPRT 0", in.readLine());
+        assertEquals("123.456789", in.readLine());
+        assertEquals("-1.500000", in.readLine());
+        assertEquals("RPRT 0", in.readLine());
+    }
+
+    @Test
+    public void quitClosesTheConnection() throws IOException {
+        send("q");
+        assertNull(in.readLine());
+    }
+
+    @Test
+    public void fixedPrintsLikePrintf() {
+        double[] values = {0, 1, -1, 0.5, 123.456789, -0.000001, 359.9999996, 1e-7, -1e-7, 12345678.25};
+        for (double value : values) {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            RotctldServer.fixed(buffer, value);
+            String printed = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+            //printf prints -0.000000 for tiny negatives, rotctl clients parse both the same
+            String expected = String.format(Locale.ROOT, "%f", value).replace("-0.000000", "0.000000");
+            assertEquals("value " + value, expected, printed);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package eme.control.track;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PidControllerTest {
+    private static final double EPSILON = 1e-9;
+    private static final double NO_RATE_LIMIT = Double.POSITIVE_INFINITY;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyOutputRange() {
+        new PidController(1, 0, 0, 10, 10, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+    }
+
+    @Test
+    public void startsInTheMiddleOfTheOutputRange() {
+        PidController pid = new PidController(1, 0, 0, 500, 2500, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        assertEquals(1500, pid.getOutput(), EPSILON);
+    }
+
+    @Test
+    public void resetIsBumpless() {
+        PidController pid = new PidController(2, 1, 0.5, 500, 2500, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        pid.reset(1300);
+        assertEquals(1300, pid.update(10, 10, 0.02), EPSILON);
+        assertEquals(1300, pid.update(10, 10, 0.02), EPSILON);
+    }
+
+    @Test
+    public void resetClampsToTheOutputRange() {
+        PidController pid = new PidController(1, 0, 0, 500, 2500, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        pid.reset(3000);
+        assertEquals(2500, pid.getOutput(), EPSILON);
+    }
+
+    @Test
+    public void proportionalFollowsTheAction() {
+        PidController direct = new PidController(10, 0, 0, -100, 100, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        PidController reverse = new PidController(10, 0, 0, -100, 100, NO_RATE_LIMIT, PidController.ACTION.REVERSE);
+        assertEquals(20, direct.update(5, 3, 0.1), EPSILON);
+        assertEquals(-20, reverse.update(5, 3, 0.1), EPSILON);
+    }
+
+    @Test
+    public void integralRemovesSteadyError() {
+        PidController pid = new PidController(0, 2, 0, -100, 100, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        pid.reset(0);
+        for (int i = 0; i < 10; i++) {
+            pid.update(1, 0, 0.5);
+        }
+        assertEquals(10, pid.getOutput(), EPSILON);
+    }
+
+    @Test
+    public void outputIsClamped() {
+        PidController pid = new PidController(100, 0, 0, -50, 50, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        assertEquals(50, pid.update(10, 0, 0.1), EPSILON);
+        assertEquals(-50, pid.update(-10, 0, 0.1), EPSILON);
+    }
+
+    @Test
+    public void integralDoesNotWindUpWhileSaturated() {
+        PidController pid = new PidController(1, 10, 0, -100, 100, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        pid.reset(0);
+        //a long time against the limit, e.g. the mount blocked
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(100, pid.update(500, 0, 0.1), EPSILON);
+        }
+        //without anti-windup the integral would hold the output at the limit for minutes
+        double output = pid.update(0, 1, 0.1);
+        assertTrue("output still saturated: " + output, output < 100);
+    }
+
+    @Test
+    public void outputRateIsLimited() {
+        PidController pid = new PidController(1000, 0, 0, -1000, 1000, 50, PidController.ACTION.DIRECT);
+        pid.reset(0);
+        assertEquals(5, pid.update(10, 0, 0.1), EPSILON);
+        assertEquals(10, pid.update(10, 0, 0.1), EPSILON);
+        assertEquals(5, pid.update(-10, 0, 0.1), EPSILON);
+    }
+
+    @Test
+    public void rateLimitDoesNotWindUp() {
+        PidController pid = new PidController(0, 100, 0, -1000, 1000, 10, PidController.ACTION.DIRECT);
+        pid.reset(0);
+        for (int i = 0; i < 10; i++) {
+            pid.update(10, 0, 0.1);
+        }
+        assertEquals(10, pid.getOutput(), EPSILON);
+        //only what the rate limit let through was integrated, so it turns at once
+        double output = pid.update(0, 10, 0.1);
+        assertTrue("output kept rising: " + output, output < 10);
+    }
+
+    @Test
+    public void integralKeepsWhatTheRateLimitedSlewReached() {
+        PidController pid = new PidController(1, 100, 0, -1000, 1000, 10, PidController.ACTION.DIRECT);
+        pid.reset(0);
+        for (int i = 0; i < 10; i++) {
+            pid.update(10, 0, 0.1);
+        }
+        assertEquals(10, pid.getOutput(), EPSILON);
+        //on target now: the output stays where the slew brought it instead of falling back
+        assertEquals(10, pid.update(0, 0, 0.1), EPSILON);
+    }
+
+    @Test
+    public void clampedSlewDoesNotWindUp() {
+        PidController pid = new PidController(0, 100, 0, -20, 20, 10, PidController.ACTION.DIRECT);
+        pid.reset(0);
+        for (int i = 0; i < 15; i++) {
+            pid.update(100, 0, 0.1);
+        }
+        assertEquals(15, pid.getOutput(), EPSILON);
+        double output = pid.update(0, 1, 0.1);
+        assertTrue("output kept rising: " + output, output < 15);
+    }
+
+    @Test
+    public void derivativeActsOnMeasurementOnly() {
+        PidController pid = new PidController(0, 0, 1, -100, 100, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        pid.reset(0);
+        pid.update(0, 0, 0.1);
+        assertEquals("a setpoint step gives no kick", 0, pid.update(50, 0, 0.1), EPSILON);
+        assertEquals(-10, pid.update(50, 1, 0.1), EPSILON);
+    }
+
+    @Test
+    public void feedForwardFollowsARampWithoutError() {
+        PidController pid = new PidController(0, 0, 0, -100, 100, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        pid.reset(0);
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(5 * i, pid.update(0, 0, 0.5, 10), EPSILON);
+        }
+    }
+}
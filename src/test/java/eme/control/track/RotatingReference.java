@@ -0,0 +1,42 @@
+package eme.control.track;
+
+import eme.control.ephemeris.HorizontalPosition;
+
+/**
+ * Target turning at a constant azimuth rate, reported 0..360 like an ephemeris does.
+ */
+class RotatingReference implements ReferenceSource {
+    private final long start;
+    private final double azimuth;
+    private final double azimuthRate;
+    private final double elevation;
+    private final double elevationRate;
+
+    /**
+     * @param azimuthRate   [deg/s]
+     * @param elevationRate [deg/s]
+     */
+    RotatingReference(long start, double azimuth, double azimuthRate, double elevation, double elevationRate) {
+        this.start = start;
+        this.azimuth = azimuth;
+        this.azimuthRate = azimuthRate;
+        this.elevation = elevation;
+        this.elevationRate = elevationRate;
+    }
+
+    /**
+     * @return the azimuth without wrapping at north
+     */
+    double continuousAzimuth(long millis) {
+        return azimuth + azimuthRate * (millis - start) / 1000.0;
+    }
+
+    double elevation(long millis) {
+        return elevation + elevationRate * (millis - start) / 1000.0;
+    }
+
+    public void position(long millis, HorizontalPosition target) {
+        double wrapped = continuousAzimuth(millis) % 360;
+        target.set(wrapped < 0 ? wrapped + 360 : wrapped, elevation(millis), azimuthRate, elevationRate);
+    }
+}
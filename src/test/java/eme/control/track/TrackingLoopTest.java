@@ -0,0 +1,143 @@
+package eme.control.track;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrackingLoopTest {
+    private static final double NO_RATE_LIMIT = Double.POSITIVE_INFINITY;
+
+    private volatile double setpoint;
+    private volatile double measured;
+    private volatile RuntimeException measurementFailure;
+    private int rejections;
+    private final List<Integer> pulses = new ArrayList<Integer>();
+    private TrackingLoop loop;
+
+    private final MeasurementSource measurement = new MeasurementSource() {
+        public double read() {
+            RuntimeException e = measurementFailure;
+            if (e != null) {
+                throw e;
+            }
+            return measured;
+        }
+    };
+
+    private final SetpointSource target = new SetpointSource() {
+        public double getSetpoint() {
+            return setpoint;
+        }
+    };
+
+    private final ServoOutput output = new ServoOutput() {
+        public void setPulse(int pulse) throws IOException {
+            if (rejections > 0) {
+                rejections--;
+                throw new IOException("bus full");
+            }
+            pulses.add(pulse);
+        }
+    };
+
+    private TrackingLoop loop(double kp) {
+        PidController pid = new PidController(kp, 0, 0, 500, 2500, NO_RATE_LIMIT, PidController.ACTION.DIRECT);
+        loop = new TrackingLoop(measurement, target, pid, output, 10);
+        return loop;
+    }
+
+    @After
+    public void stopLoop() {
+        if (loop != null) {
+            loop.stop();
+        }
+    }
+
+    @Test
+    public void commandsOnlyWhenTheRoundedPulseChanges() throws IOException {
+        TrackingLoop loop = loop(100);
+        loop.reset(1200);
+        loop.tick(0.01);
+        assertTrue("no error, no command", pulses.isEmpty());
+
+        setpoint = 1;
+        loop.tick(0.01);
+        loop.tick(0.01);
+        setpoint = 1.001;
+        loop.tick(0.01);
+        assertEquals(1, pulses.size());
+        assertEquals(1300, (int) pulses.get(0));
+        assertEquals(1, loop.getCommandCount());
+        assertEquals(4, loop.getTickCount());
+        assertEquals(1.001, loop.getLastError(), 1e-9);
+    }
+
+    @Test
+    public void rejectedPulseIsSentAgain() throws IOException {
+        TrackingLoop loop = loop(100);
+        loop.reset(1200);
+        setpoint = 1;
+        rejections = 1;
+        try {
+            loop.tick(0.01);
+        } catch (IOException e) {
+            //the bus did not take it
+        }
+        assertTrue(pulses.isEmpty());
+        loop.tick(0.01);
+        assertEquals(1, pulses.size());
+        assertEquals(1300, (int) pulses.get(0));
+        assertEquals(1, loop.getCommandCount());
+    }
+
+    @Test
+    public void feedForwardFollowsTheTrajectoryRate() throws IOException {
+        long start = 1705276800000L;
+        RotatingReference reference = new RotatingReference(start, 100, 0.5, 30, 0);
+        TrajectoryFollower follower = new TrajectoryFollower(new TrajectoryPlanner(reference,
+                new MountLimits(0, 360, 0, 90), start, start + 60000, 1000), 8);
+        follower.advance(start + 500);
+
+        TrackingLoop loop = loop(0);
+        loop.setFeedForward(follower.azimuthRate(), 20);
+        loop.reset(1200);
+        //0.5 deg/s at 20 us/deg moves the pulse 10 us per second without any error
+        loop.tick(1);
+        loop.tick(1);
+        assertEquals(2, pulses.size());
+        assertEquals(1210, (int) pulses.get(0));
+        assertEquals(1220, (int) pulses.get(1));
+
+        loop.setFeedForward(null, 0);
+        loop.tick(1);
+        assertEquals(2, pulses.size());
+    }
+
+    @Test(timeout = 5000)
+    public void runtimeExceptionStopsTheLoop() throws InterruptedException {
+        TrackingLoop loop = loop(100);
+        measurementFailure = new IllegalStateException("sensor gone");
+        loop.start(1200);
+        while (loop.isRunning()) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, loop.getTickCount());
+
+        //start() works again once the cause is gone
+        measurementFailure = null;
+        loop.start(1200);
+        assertTrue(loop.isRunning());
+        while (loop.getTickCount() == 0) {
+            Thread.sleep(1);
+        }
+        loop.stop();
+        assertFalse(loop.isRunning());
+    }
+}
@@ -0,0 +1,81 @@
+package eme.control.track;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrajectoryFollowerTest {
+    private static final long START = 1705276800000L;
+    private static final int STEP_MS = 1000;
+    private static final double EPSILON = 1e-9;
+
+    private static final MountLimits FULL_CIRCLE = new MountLimits(0, 360, 0, 90);
+
+    private static TrajectoryFollower follower(RotatingReference reference, long duration, int chunkPoints) {
+        return new TrajectoryFollower(new TrajectoryPlanner(reference, FULL_CIRCLE, START, START + duration, STEP_MS),
+                chunkPoints);
+    }
+
+    @Test
+    public void interpolatesBetweenSetpoints() {
+        RotatingReference reference = new RotatingReference(START, 100, 0.1, 30, 0.02);
+        TrajectoryFollower follower = follower(reference, 60000, 8);
+        follower.advance(START + 2500);
+        assertEquals(100.25, follower.getAzimuth(), EPSILON);
+        assertEquals(30.05, follower.getElevation(), EPSILON);
+        assertEquals(0.1, follower.getAzimuthRate(), EPSILON);
+        assertEquals(0.02, follower.getElevationRate(), EPSILON);
+        assertEquals(follower.getAzimuthRate(), follower.azimuthRate().getSetpoint(), 0);
+        assertEquals(follower.getElevationRate(), follower.elevationRate().getSetpoint(), 0);
+    }
+
+    @Test
+    public void followsAcrossChunks() {
+        RotatingReference reference = new RotatingReference(START, 100, 0.1, 30, 0);
+        //4 points per chunk, so the pass takes many chunk changes
+        TrajectoryFollower follower = follower(reference, 60000, 4);
+        for (long millis = START; millis <= START + 60000; millis += 137) {
+            follower.advance(millis);
+            assertEquals("azimuth at " + (millis - START), reference.continuousAzimuth(millis), follower.getAzimuth(),
+                    1e-6);
+            assertFalse(follower.isFinished());
+        }
+        follower.advance(START + 60000);
+        assertEquals(106, follower.getAzimuth(), EPSILON);
+        assertTrue(follower.isFinished());
+    }
+
+    @Test
+    public void holdsTheEndsOfThePass() {
+        RotatingReference reference = new RotatingReference(START, 100, 0.1, 30, 0);
+        TrajectoryFollower follower = follower(reference, 10000, 4);
+        follower.advance(START - 5000);
+        assertEquals(100, follower.getAzimuth(), EPSILON);
+        assertFalse(follower.isFinished());
+
+        follower.advance(START + 20000);
+        assertEquals(101, follower.getAzimuth(), EPSILON);
+        assertTrue(follower.isFinished());
+    }
+
+    @Test
+    public void unwindJumpsToTheNewBranch() {
+        RotatingReference reference = new RotatingReference(START, 300, 0.12, 30, 0);
+        TrajectoryFollower follower = follower(reference, 1000000, 16);
+        int jumps = 0;
+        double last = Double.NaN;
+        for (long millis = START; millis <= START + 1000000; millis += 250) {
+            follower.advance(millis);
+            double azimuth = follower.getAzimuth();
+            assertTrue("azimuth " + azimuth + " outside travel at " + (millis - START),
+                    FULL_CIRCLE.containsAzimuth(azimuth));
+            if (!Double.isNaN(last) && Math.abs(azimuth - last) > 180) {
+                jumps++;
+            }
+            last = azimuth;
+        }
+        assertEquals(1, jumps);
+    }
+}
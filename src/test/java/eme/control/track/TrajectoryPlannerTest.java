@@ -0,0 +1,131 @@
+package eme.control.track;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TrajectoryPlannerTest {
+    private static final long START = 1705276800000L;
+    private static final int STEP_MS = 1000;
+    private static final double EPSILON = 1e-9;
+
+    private static final MountLimits FULL_CIRCLE = new MountLimits(0, 360, 0, 90);
+    private static final MountLimits WIDE = new MountLimits(-180, 540, 0, 90);
+
+    /**
+     * Plans the whole pass and returns the number of branch jumps, checking every point on the way.
+     */
+    private static int walk(TrajectoryPlanner planner, RotatingReference reference, MountLimits limits) {
+        SetpointChunk chunk = new SetpointChunk(16);
+        int jumps = 0;
+        long expectedTime = START;
+        double last = Double.NaN;
+        while (planner.hasNext()) {
+            planner.next(chunk);
+            for (int i = 0; i < chunk.size(); i++) {
+                assertEquals(expectedTime, chunk.getTime(i));
+                double azimuth = chunk.getAzimuth(i);
+                assertTrue("azimuth " + azimuth + " outside travel", limits.containsAzimuth(azimuth));
+                //on the branch of the reference, whatever the offset
+                double branch = (azimuth - reference.continuousAzimuth(expectedTime)) / 360;
+                assertEquals("azimuth " + azimuth + " off the reference", Math.round(branch), branch, EPSILON);
+                if (!Double.isNaN(last) && Math.abs(azimuth - last) > 180) {
+                    jumps++;
+                    assertEquals("no feed-forward across an unwind", 0, chunk.getAzimuthRate(i), 0);
+                }
+                last = azimuth;
+                expectedTime += STEP_MS;
+            }
+        }
+        return jumps;
+    }
+
+    @Test
+    public void passWithinTravelNeedsNoUnwind() {
+        RotatingReference reference = new RotatingReference(START, 100, 0.1, 30, 0);
+        TrajectoryPlanner planner = new TrajectoryPlanner(reference, FULL_CIRCLE, START, START + 1000000, STEP_MS);
+        assertEquals(0, planner.getUnwindCount());
+        assertEquals(0, walk(planner, reference, FULL_CIRCLE));
+    }
+
+    @Test
+    public void passAcrossNorthFitsWideTravel() {
+        RotatingReference reference = new RotatingReference(START, 300, 0.12, 30, 0);
+        TrajectoryPlanner planner = new TrajectoryPlanner(reference, WIDE, START, START + 1000000, STEP_MS);
+        assertEquals(0, planner.getUnwindCount());
+        assertEquals(0, walk(planner, reference, WIDE));
+    }
+
+    @Test
+    public void passAcrossNorthUnwindsOnFullCircleTravel() {
+        RotatingReference reference = new RotatingReference(START, 300, 0.12, 30, 0);
+        TrajectoryPlanner planner = new TrajectoryPlanner(reference, FULL_CIRCLE, START, START + 1000000, STEP_MS);
+        assertEquals(1, planner.getUnwindCount());
+        assertEquals(1, walk(planner, reference, FULL_CIRCLE));
+    }
+
+    @Test
+    public void counterClockwisePassUnwindsTheOtherWay() {
+        RotatingReference reference = new RotatingReference(START, 60, -0.12, 30, 0);
+        TrajectoryPlanner planner = new TrajectoryPlanner(reference, FULL_CIRCLE, START, START + 1000000, STEP_MS);
+        assertEquals(1, planner.getUnwindCount());
+        assertEquals(1, walk(planner, reference, FULL_CIRCLE));
+    }
+
+    @Test
+    public void passLongerThanTravelUnwindsEveryTurn() {
+        //two full turns in 24 minutes
+        RotatingReference reference = new RotatingReference(START, 10, 0.5, 30, 0);
+        TrajectoryPlanner planner = new TrajectoryPlanner(reference, FULL_CIRCLE, START, START + 1440000, STEP_MS);
+        assertEquals(2, planner.getUnwindCount());
+        assertEquals(2, walk(planner, reference, FULL_CIRCLE));
+    }
+
+    @Test
+    public void elevationIsClampedWithoutFeedForward() {
+        RotatingReference reference = new RotatingReference(START, 100, 0.01, -5, 0.01);
+        TrajectoryPlanner planner = new TrajectoryPlanner(reference, FULL_CIRCLE, START, START + 1000000, STEP_MS);
+        SetpointChunk chunk = planner.next(new SetpointChunk(8));
+        for (int i = 0; i < chunk.size(); i++) {
+            assertEquals(0, chunk.getElevation(i), 0);
+            assertEquals(0, chunk.getElevationRate(i), 0);
+            assertEquals(0.01, chunk.getAzimuthRate(i), 0);
+        }
+        //above the horizon the rate comes back
+        planner = new TrajectoryPlanner(new RotatingReference(START, 100, 0.01, 5, 0.01), FULL_CIRCLE,
+                START, START + 1000000, STEP_MS);
+        chunk = planner.next(chunk);
+        assertEquals(5, chunk.getElevation(0), EPSILON);
+        assertEquals(0.01, chunk.getElevationRate(0), 0);
+    }
+
+    @Test
+    public void chunksEndAtThePassEnd() {
+        RotatingReference reference = new RotatingReference(START, 100, 0.1, 30, 0);
+        TrajectoryPlanner planner = new TrajectoryPlanner(reference, FULL_CIRCLE, START, START + 9500, STEP_MS);
+        SetpointChunk chunk = new SetpointChunk(4);
+        int points = 0;
+        while (planner.hasNext()) {
+            points += planner.next(chunk).size();
+        }
+        assertEquals(10, points);
+        assertEquals(START + 9000, chunk.getEnd());
+        assertFalse(planner.hasNext());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nextAfterThePassFails() {
+        TrajectoryPlanner planner = new TrajectoryPlanner(new FixedReference(100, 30), FULL_CIRCLE,
+                START, START + 1000, STEP_MS);
+        SetpointChunk chunk = new SetpointChunk(4);
+        planner.next(chunk);
+        planner.next(chunk);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPass() {
+        new TrajectoryPlanner(new FixedReference(100, 30), FULL_CIRCLE, START, START, STEP_MS);
+    }
+}